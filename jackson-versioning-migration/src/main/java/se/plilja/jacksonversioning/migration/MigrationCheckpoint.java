@@ -0,0 +1,146 @@
+/*
+ * The MIT License
+ * Copyright © 2020 Patrik Lilja
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package se.plilja.jacksonversioning.migration;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Properties;
+
+/**
+ * Position of a migration after the last chunk that was completely written to the output. The files migrated are
+ * recorded with the position, so that a checkpoint isn't used to resume the migration of other files.
+ */
+class MigrationCheckpoint {
+    private static final String INPUT = "input";
+    private static final String INPUT_SIZE = "inputSize";
+    private static final String OUTPUT = "output";
+    private static final String INPUT_OFFSET = "inputOffset";
+    private static final String OUTPUT_OFFSET = "outputOffset";
+    private static final String RECORDS = "records";
+
+    private final String input;
+    private final long inputSize;
+    private final String output;
+    private final long inputOffset;
+    private final long outputOffset;
+    private final long records;
+
+    MigrationCheckpoint(Path input, long inputSize, Path output, long inputOffset, long outputOffset, long records) {
+        this(normalize(input), inputSize, normalize(output), inputOffset, outputOffset, records);
+    }
+
+    private MigrationCheckpoint(String input, long inputSize, String output, long inputOffset, long outputOffset, long records) {
+        this.input = input;
+        this.inputSize = inputSize;
+        this.output = output;
+        this.inputOffset = inputOffset;
+        this.outputOffset = outputOffset;
+        this.records = records;
+    }
+
+    long getInputOffset() {
+        return inputOffset;
+    }
+
+    long getOutputOffset() {
+        return outputOffset;
+    }
+
+    long getRecords() {
+        return records;
+    }
+
+    /**
+     * Check that the checkpoint was written when migrating the given files, and that the output hasn't been truncated
+     * since.
+     */
+    void verify(Path file, Path input, long inputSize, Path output, long outputSize) throws IOException {
+        if (!this.input.equals(normalize(input)) || this.inputSize != inputSize || !this.output.equals(normalize(output))) {
+            throw new IOException(String.format("Checkpoint %s was written when migrating %s of %d bytes to %s",
+                    file, this.input, this.inputSize, this.output));
+        }
+        if (outputSize < outputOffset) {
+            throw new IOException(String.format("Output %s has %d bytes, checkpoint %s was written after %d bytes",
+                    output, outputSize, file, outputOffset));
+        }
+    }
+
+    /**
+     * @return the checkpoint stored in the file, or null if there is no such file
+     */
+    static MigrationCheckpoint read(Path file) throws IOException {
+        if (!Files.exists(file)) {
+            return null;
+        }
+        Properties properties = new Properties();
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.ISO_8859_1)) {
+            properties.load(reader);
+        }
+        try {
+            return new MigrationCheckpoint(
+                    require(properties, INPUT),
+                    Long.parseLong(require(properties, INPUT_SIZE)),
+                    require(properties, OUTPUT),
+                    Long.parseLong(require(properties, INPUT_OFFSET)),
+                    Long.parseLong(require(properties, OUTPUT_OFFSET)),
+                    Long.parseLong(require(properties, RECORDS)));
+        } catch (IllegalArgumentException e) {
+            throw new IOException(String.format("Invalid checkpoint %s", file), e);
+        }
+    }
+
+    private static String require(Properties properties, String name) {
+        String value = properties.getProperty(name);
+        if (value == null) {
+            throw new IllegalArgumentException(String.format("Missing %s", name));
+        }
+        return value;
+    }
+
+    private static String normalize(Path path) {
+        return path.toAbsolutePath().normalize().toString();
+    }
+
+    /**
+     * Replace the file atomically, so that an interrupted write leaves the previous checkpoint.
+     */
+    void write(Path file) throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty(INPUT, input);
+        properties.setProperty(INPUT_SIZE, Long.toString(inputSize));
+        properties.setProperty(OUTPUT, output);
+        properties.setProperty(INPUT_OFFSET, Long.toString(inputOffset));
+        properties.setProperty(OUTPUT_OFFSET, Long.toString(outputOffset));
+        properties.setProperty(RECORDS, Long.toString(records));
+        Path temporaryFile = file.resolveSibling(file.getFileName() + ".tmp");
+        try (Writer writer = Files.newBufferedWriter(temporaryFile, StandardCharsets.ISO_8859_1)) {
+            properties.store(writer, null);
+        }
+        Files.move(temporaryFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
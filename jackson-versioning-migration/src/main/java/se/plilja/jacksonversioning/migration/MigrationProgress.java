@@ -0,0 +1,86 @@
+/*
+ * The MIT License
+ * Copyright © 2020 Patrik Lilja
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package se.plilja.jacksonversioning.migration;
+
+import java.time.Duration;
+
+/**
+ * Progress of a {@link NdjsonMigration}. Counts include the records migrated before a resumed migration
+ * was interrupted, the throughput only covers the current run.
+ */
+public class MigrationProgress {
+    private final long records;
+    private final long bytesRead;
+    private final long totalBytes;
+    private final long recordsThisRun;
+    private final long bytesReadThisRun;
+    private final Duration elapsed;
+
+    MigrationProgress(long records, long bytesRead, long totalBytes, long recordsThisRun, long bytesReadThisRun, Duration elapsed) {
+        this.records = records;
+        this.bytesRead = bytesRead;
+        this.totalBytes = totalBytes;
+        this.recordsThisRun = recordsThisRun;
+        this.bytesReadThisRun = bytesReadThisRun;
+        this.elapsed = elapsed;
+    }
+
+    public long getRecords() {
+        return records;
+    }
+
+    public long getBytesRead() {
+        return bytesRead;
+    }
+
+    public long getTotalBytes() {
+        return totalBytes;
+    }
+
+    public Duration getElapsed() {
+        return elapsed;
+    }
+
+    public double getRecordsPerSecond() {
+        return perSecond(recordsThisRun);
+    }
+
+    public double getBytesPerSecond() {
+        return perSecond(bytesReadThisRun);
+    }
+
+    public boolean isComplete() {
+        return bytesRead == totalBytes;
+    }
+
+    private double perSecond(long count) {
+        long nanos = Math.max(elapsed.toNanos(), 1);
+        return count * 1_000_000_000.0 / nanos;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d records, %d of %d bytes, %.0f records/s, %.1f MB/s",
+                records, bytesRead, totalBytes, getRecordsPerSecond(), getBytesPerSecond() / (1024 * 1024));
+    }
+}
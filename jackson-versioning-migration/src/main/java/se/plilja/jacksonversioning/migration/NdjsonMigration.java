@@ -0,0 +1,292 @@
+/*
+ * The MIT License
+ * Copyright © 2020 Patrik Lilja
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package se.plilja.jacksonversioning.migration;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import se.plilja.jacksonversioning.JsonVersioned;
+import se.plilja.jacksonversioning.VersionTranscoder;
+import se.plilja.jacksonversioning.VersionedConverterRepository;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+/**
+ * Migrates files of newline delimited json records of a {@link JsonVersioned} type from one version to
+ * another using the converters of the type.
+ * <p>
+ * The input is read in large chunks that are split on line boundaries and converted by a pool of worker
+ * threads. Converted chunks are written in input order, so the output has the same records in the same
+ * order as the input. Blank lines are dropped.
+ * <p>
+ * With a checkpoint file the position of the last completely written chunk is recorded, and an interrupted
+ * migration continues from that position when started again with the same files. Resuming fails if the checkpoint
+ * was written for other files, or if the input has changed size or the output has been truncated since. The
+ * checkpoint file is removed when the migration completes.
+ */
+public class NdjsonMigration<V extends Comparable<V>> {
+    private static final int DEFAULT_CHUNK_SIZE = 4 * 1024 * 1024;
+
+    private final ObjectMapper mapper;
+    private final Type type;
+    private final V fromVersion;
+    private final V toVersion;
+    private VersionedConverterRepository<V> versionedConverterRepository = VersionedConverterRepository.reflective();
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private int chunkSize = DEFAULT_CHUNK_SIZE;
+    private Path checkpointFile;
+    private Consumer<MigrationProgress> progressListener = (progress) -> {
+    };
+
+    /**
+     * @param mapper      mapper used to read and write the records
+     * @param type        type of the records
+     * @param fromVersion version of the records in the input
+     * @param toVersion   version of the records in the output
+     */
+    public NdjsonMigration(ObjectMapper mapper, Type type, V fromVersion, V toVersion) {
+        this.mapper = mapper;
+        this.type = type;
+        this.fromVersion = fromVersion;
+        this.toVersion = toVersion;
+    }
+
+    public NdjsonMigration<V> withConverterRepository(VersionedConverterRepository<V> versionedConverterRepository) {
+        this.versionedConverterRepository = versionedConverterRepository;
+        return this;
+    }
+
+    /**
+     * @param threads number of threads converting records, defaults to the number of processors
+     */
+    public NdjsonMigration<V> withThreads(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException(String.format("Threads must be positive, was %d", threads));
+        }
+        this.threads = threads;
+        return this;
+    }
+
+    /**
+     * @param chunkSize number of bytes read and converted at a time, chunks are grown to fit records that are larger
+     */
+    public NdjsonMigration<V> withChunkSize(int chunkSize) {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException(String.format("Chunk size must be positive, was %d", chunkSize));
+        }
+        this.chunkSize = chunkSize;
+        return this;
+    }
+
+    public NdjsonMigration<V> withCheckpointFile(Path checkpointFile) {
+        this.checkpointFile = checkpointFile;
+        return this;
+    }
+
+    /**
+     * @param progressListener called by the migrating thread every time a chunk has been written
+     */
+    public NdjsonMigration<V> withProgressListener(Consumer<MigrationProgress> progressListener) {
+        this.progressListener = progressListener;
+        return this;
+    }
+
+    /**
+     * @return the progress at completion
+     */
+    public MigrationProgress migrate(Path input, Path output) throws IOException {
+        VersionTranscoder<V> transcoder = new VersionTranscoder<>(mapper, versionedConverterRepository);
+        MigrationCheckpoint checkpoint = checkpointFile != null ? MigrationCheckpoint.read(checkpointFile) : null;
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        MigrationProgress progress;
+        try (FileChannel in = FileChannel.open(input, StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(output, StandardOpenOption.WRITE, StandardOpenOption.CREATE)) {
+            long totalBytes = in.size();
+            if (checkpoint != null) {
+                checkpoint.verify(checkpointFile, input, totalBytes, output, out.size());
+            } else {
+                checkpoint = new MigrationCheckpoint(input, totalBytes, output, 0, 0, 0);
+            }
+            // output written after the checkpoint belongs to chunks that will be converted again
+            out.truncate(checkpoint.getOutputOffset());
+
+            long startTime = System.nanoTime();
+            long inputOffset = checkpoint.getInputOffset();
+            long outputOffset = checkpoint.getOutputOffset();
+            long records = checkpoint.getRecords();
+            long readOffset = inputOffset;
+            progress = new MigrationProgress(records, inputOffset, totalBytes, 0, 0, Duration.ZERO);
+            Deque<Future<MigratedChunk>> pending = new ArrayDeque<>();
+            while (readOffset < totalBytes || !pending.isEmpty()) {
+                // keep the workers busy while the oldest chunk is being waited for
+                while (readOffset < totalBytes && pending.size() < 2 * threads) {
+                    Chunk chunk = readChunk(in, readOffset, totalBytes);
+                    readOffset += chunk.length;
+                    pending.add(executor.submit(() -> migrateChunk(chunk, transcoder)));
+                }
+
+                MigratedChunk migrated = await(pending.poll());
+                ByteBuffer buffer = ByteBuffer.wrap(migrated.output.toByteArray());
+                while (buffer.hasRemaining()) {
+                    outputOffset += out.write(buffer, outputOffset);
+                }
+                inputOffset += migrated.inputLength;
+                records += migrated.records;
+
+                if (checkpointFile != null) {
+                    out.force(false);
+                    new MigrationCheckpoint(input, totalBytes, output, inputOffset, outputOffset, records).write(checkpointFile);
+                }
+                progress = new MigrationProgress(records, inputOffset, totalBytes, records - checkpoint.getRecords(),
+                        inputOffset - checkpoint.getInputOffset(), Duration.ofNanos(System.nanoTime() - startTime));
+                progressListener.accept(progress);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        if (checkpointFile != null) {
+            Files.deleteIfExists(checkpointFile);
+        }
+        return progress;
+    }
+
+    /**
+     * Read from the offset up to and including the last line break that fits in a chunk, or to the end of
+     * the input.
+     */
+    private Chunk readChunk(FileChannel in, long offset, long totalBytes) throws IOException {
+        int size = (int) Math.min(chunkSize, totalBytes - offset);
+        while (true) {
+            byte[] bytes = new byte[size];
+            ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            while (buffer.hasRemaining()) {
+                if (in.read(buffer, offset + buffer.position()) < 0) {
+                    throw new IOException(String.format("Unexpected end of input at byte offset %d", offset + buffer.position()));
+                }
+            }
+            if (offset + size == totalBytes) {
+                return new Chunk(offset, bytes, size);
+            }
+            for (int i = size - 1; i >= 0; i--) {
+                if (bytes[i] == '\n') {
+                    return new Chunk(offset, bytes, i + 1);
+                }
+            }
+            // a single record larger than the chunk size
+            size = (int) Math.min(2L * size, Math.min(totalBytes - offset, Integer.MAX_VALUE - 8));
+        }
+    }
+
+    private MigratedChunk migrateChunk(Chunk chunk, VersionTranscoder<V> transcoder) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream(chunk.length + chunk.length / 4);
+        long records = 0;
+        int lineStart = 0;
+        for (int i = 0; i <= chunk.length; i++) {
+            if (i == chunk.length || chunk.bytes[i] == '\n') {
+                if (migrateRecord(chunk, lineStart, i, transcoder, output)) {
+                    records++;
+                }
+                lineStart = i + 1;
+            }
+        }
+        return new MigratedChunk(chunk.length, records, output);
+    }
+
+    private boolean migrateRecord(Chunk chunk, int start, int end, VersionTranscoder<V> transcoder, ByteArrayOutputStream output) throws IOException {
+        while (end > start && Character.isWhitespace(chunk.bytes[end - 1])) {
+            end--;
+        }
+        while (start < end && Character.isWhitespace(chunk.bytes[start])) {
+            start++;
+        }
+        if (start == end) {
+            return false;
+        }
+        try {
+            JsonNode record = mapper.readTree(chunk.bytes, start, end - start);
+            output.write(mapper.writeValueAsBytes(transcoder.transcode(record, type, fromVersion, toVersion)));
+            output.write('\n');
+            return true;
+        } catch (IOException e) {
+            throw new IOException(String.format("Failed to migrate the record at byte offset %d", chunk.offset + start), e);
+        }
+    }
+
+    private static MigratedChunk await(Future<MigratedChunk> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while migrating", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else {
+                throw new IllegalStateException(cause);
+            }
+        }
+    }
+
+    private static class Chunk {
+        private final long offset;
+        private final byte[] bytes;
+        private final int length;
+
+        Chunk(long offset, byte[] bytes, int length) {
+            this.offset = offset;
+            this.bytes = bytes;
+            this.length = length;
+        }
+    }
+
+    private static class MigratedChunk {
+        private final int inputLength;
+        private final long records;
+        private final ByteArrayOutputStream output;
+
+        MigratedChunk(int inputLength, long records, ByteArrayOutputStream output) {
+            this.inputLength = inputLength;
+            this.records = records;
+            this.output = output;
+        }
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * The MIT License
+ * Copyright © 2020 Patrik Lilja
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package se.plilja.jacksonversioning.migration;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import se.plilja.jacksonversioning.EnumVersionsDescription;
+import se.plilja.jacksonversioning.VersionsDescription;
+
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Command line interface of {@link NdjsonMigration} for records whose versions are described by an enum.
+ * The model classes, their converters and the version enum must be on the class path.
+ */
+public class NdjsonMigrationCommand {
+    private static final String USAGE = "Usage: NdjsonMigrationCommand --type <class> --versions <enum class> --from <version> --to <version>"
+            + " [--threads <count>] [--chunk-size <bytes>] [--checkpoint <file>] <input> <output>";
+    private static final long PROGRESS_INTERVAL_NANOS = 1_000_000_000L;
+
+    public static void main(String[] args) {
+        System.exit(run(args, System.out, System.err));
+    }
+
+    /**
+     * @return exit code of the command
+     */
+    static int run(String[] args, PrintStream out, PrintStream err) {
+        Map<String, String> options = new HashMap<>();
+        List<String> files = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].startsWith("--") && i + 1 < args.length) {
+                options.put(args[i].substring(2), args[++i]);
+            } else {
+                files.add(args[i]);
+            }
+        }
+        if (files.size() != 2 || !options.keySet().containsAll(List.of("type", "versions", "from", "to"))) {
+            err.println(USAGE);
+            return 2;
+        }
+
+        try {
+            NdjsonMigration<?> migration = createMigration(options, err);
+            MigrationProgress progress = migration.migrate(Paths.get(files.get(0)), Paths.get(files.get(1)));
+            out.println(String.format("Migrated %s in %d ms", progress, progress.getElapsed().toMillis()));
+            return 0;
+        } catch (IllegalArgumentException | ClassNotFoundException e) {
+            err.println(e.getMessage());
+            err.println(USAGE);
+            return 2;
+        } catch (Exception e) {
+            err.println("Migration failed: " + e.getMessage());
+            if (e.getCause() != null) {
+                err.println("Caused by: " + e.getCause().getMessage());
+            }
+            return 1;
+        }
+    }
+
+    private static <V extends Enum<V>> NdjsonMigration<V> createMigration(Map<String, String> options, PrintStream err) throws ClassNotFoundException {
+        Class<?> type = Class.forName(options.get("type"));
+        Class<?> versionClass = Class.forName(options.get("versions"));
+        if (!versionClass.isEnum()) {
+            throw new IllegalArgumentException(String.format("%s is not an enum", versionClass.getName()));
+        }
+        VersionsDescription<V> versions = new EnumVersionsDescription<>((Class<V>) versionClass);
+        NdjsonMigration<V> migration = new NdjsonMigration<>(new ObjectMapper(), type, parseVersion(versions, options.get("from")), parseVersion(versions, options.get("to")))
+                .withProgressListener(new ProgressPrinter(err));
+        if (options.containsKey("threads")) {
+            migration.withThreads(Integer.parseInt(options.get("threads")));
+        }
+        if (options.containsKey("chunk-size")) {
+            migration.withChunkSize(Integer.parseInt(options.get("chunk-size")));
+        }
+        if (options.containsKey("checkpoint")) {
+            migration.withCheckpointFile(Paths.get(options.get("checkpoint")));
+        }
+        return migration;
+    }
+
+    private static <V extends Comparable<V>> V parseVersion(VersionsDescription<V> versions, String value) {
+        V result = versions.fromString(value);
+        if (result == null) {
+            throw new IllegalArgumentException(String.format("Unknown version %s", value));
+        }
+        return result;
+    }
+
+    /**
+     * Prints the progress at most once a second.
+     */
+    private static class ProgressPrinter implements Consumer<MigrationProgress> {
+        private final PrintStream err;
+        private long lastPrinted = System.nanoTime();
+
+        ProgressPrinter(PrintStream err) {
+            this.err = err;
+        }
+
+        @Override
+        public void accept(MigrationProgress progress) {
+            long now = System.nanoTime();
+            if (now - lastPrinted >= PROGRESS_INTERVAL_NANOS) {
+                lastPrinted = now;
+                err.println(progress);
+            }
+        }
+    }
+}
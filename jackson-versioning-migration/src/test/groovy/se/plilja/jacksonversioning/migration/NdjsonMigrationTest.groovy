@@ -0,0 +1,253 @@
+/**
+ * The MIT License
+ * Copyright © 2020 Patrik Lilja
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package se.plilja.jacksonversioning.migration
+
+import com.fasterxml.jackson.databind.ObjectMapper
+import se.plilja.jacksonversioning.AbstractVersionConverter
+import se.plilja.jacksonversioning.JsonVersioned
+import spock.lang.Specification
+
+import java.nio.file.Files
+import java.nio.file.Path
+
+class NdjsonMigrationTest extends Specification {
+
+    Path directory = Files.createTempDirectory("migration")
+
+    def mapper = new ObjectMapper()
+
+    def cleanup() {
+        directory.toFile().deleteDir()
+    }
+
+    enum Versions {
+        V1, V2, V3
+    }
+
+    @JsonVersioned(converterClass = CarConverter)
+    static class Car {
+        String make
+        int yearMade
+        Person owner
+    }
+
+    @JsonVersioned(converterClass = PersonConverter)
+    static class Person {
+        String firstName
+    }
+
+    static class CarConverter extends AbstractVersionConverter<Versions> {
+        CarConverter() {
+            super(Car.class)
+            attributeRenamed(Versions.V3, "company", "make")
+            attributeAdded(Versions.V2, "yearMade", { data -> 2020 })
+        }
+    }
+
+    static class PersonConverter extends AbstractVersionConverter<Versions> {
+        PersonConverter() {
+            super(Person.class)
+            attributeRenamed(Versions.V2, "name", "firstName")
+        }
+    }
+
+    def input() {
+        def input = directory.resolve("cars.ndjson")
+        input.text = (0..<200).collect { '{"company":"make' + it + '","owner":{"name":"owner' + it + '"}}' }.join("\n") + "\n"
+        return input
+    }
+
+    def expectedOutput() {
+        return (0..<200).collect { '{"owner":{"firstName":"owner' + it + '"},"yearMade":2020,"make":"make' + it + '"}\n' }.join()
+    }
+
+    def 'records are converted by several threads and written in order'() {
+        given:
+        def output = directory.resolve("out.ndjson")
+        def progress = []
+
+        when:
+        def result = new NdjsonMigration<>(mapper, Car, Versions.V1, Versions.V3)
+                .withThreads(4)
+                .withChunkSize(256)
+                .withProgressListener({ progress << it })
+                .migrate(input(), output)
+
+        then:
+        output.text == expectedOutput()
+        result.records == 200
+        result.complete
+        progress.size() > 10
+        progress*.records == progress*.records.sort()
+    }
+
+    def 'records larger than the chunk size are read whole'() {
+        given:
+        def output = directory.resolve("out.ndjson")
+
+        when:
+        new NdjsonMigration<>(mapper, Car, Versions.V1, Versions.V3)
+                .withChunkSize(8)
+                .migrate(input(), output)
+
+        then:
+        output.text == expectedOutput()
+    }
+
+    def 'blank lines and a missing final line break are accepted'() {
+        given:
+        def input = directory.resolve("in.ndjson")
+        input.text = '{"company":"volvo"}\r\n\n  \n{"company":"saab"}'
+        def output = directory.resolve("out.ndjson")
+
+        when:
+        def result = new NdjsonMigration<>(mapper, Car, Versions.V2, Versions.V3).migrate(input, output)
+
+        then:
+        output.text == '{"make":"volvo"}\n{"make":"saab"}\n'
+        result.records == 2
+    }
+
+    def 'an interrupted migration continues from the checkpoint'() {
+        given:
+        def input = input()
+        def output = directory.resolve("out.ndjson")
+        def checkpoint = directory.resolve("migration.checkpoint")
+        def chunks = 0
+
+        when:
+        new NdjsonMigration<>(mapper, Car, Versions.V1, Versions.V3)
+                .withThreads(2)
+                .withChunkSize(512)
+                .withCheckpointFile(checkpoint)
+                .withProgressListener({ if (++chunks == 3) throw new IllegalStateException("interrupted") })
+                .migrate(input, output)
+
+        then:
+        thrown(IllegalStateException)
+        Files.exists(checkpoint)
+
+        when:
+        // output written after the last checkpoint is discarded when resuming
+        output.append("garbage")
+        def result = new NdjsonMigration<>(mapper, Car, Versions.V1, Versions.V3)
+                .withThreads(2)
+                .withChunkSize(512)
+                .withCheckpointFile(checkpoint)
+                .migrate(input, output)
+
+        then:
+        output.text == expectedOutput()
+        result.records == 200
+        !Files.exists(checkpoint)
+    }
+
+    def 'a checkpoint written when migrating other files is rejected'() {
+        given:
+        def input = input()
+        def checkpoint = directory.resolve("migration.checkpoint")
+        new MigrationCheckpoint(input, Files.size(input), directory.resolve("other.ndjson"), 512, 600, 10).write(checkpoint)
+
+        when:
+        new NdjsonMigration<>(mapper, Car, Versions.V1, Versions.V3)
+                .withCheckpointFile(checkpoint)
+                .migrate(input, directory.resolve("out.ndjson"))
+
+        then:
+        def e = thrown(IOException)
+        e.message.startsWith("Checkpoint $checkpoint was written when migrating $input")
+    }
+
+    def 'a migration is not resumed into truncated output'() {
+        given:
+        def input = input()
+        def output = directory.resolve("out.ndjson")
+        def checkpoint = directory.resolve("migration.checkpoint")
+        def chunks = 0
+
+        when:
+        new NdjsonMigration<>(mapper, Car, Versions.V1, Versions.V3)
+                .withChunkSize(512)
+                .withCheckpointFile(checkpoint)
+                .withProgressListener({ if (++chunks == 3) throw new IllegalStateException("interrupted") })
+                .migrate(input, output)
+
+        then:
+        thrown(IllegalStateException)
+
+        when:
+        output.text = ''
+        new NdjsonMigration<>(mapper, Car, Versions.V1, Versions.V3)
+                .withChunkSize(512)
+                .withCheckpointFile(checkpoint)
+                .migrate(input, output)
+
+        then:
+        def e = thrown(IOException)
+        e.message.startsWith("Output $output has 0 bytes")
+    }
+
+    def 'failing records are reported with their offset'() {
+        given:
+        def input = directory.resolve("in.ndjson")
+        input.text = '{"company":"volvo"}\n{"company":\n'
+
+        when:
+        new NdjsonMigration<>(mapper, Car, Versions.V2, Versions.V3).migrate(input, directory.resolve("out.ndjson"))
+
+        then:
+        def e = thrown(IOException)
+        e.message == 'Failed to migrate the record at byte offset 20'
+    }
+
+    def 'migration can be run from the command line'() {
+        given:
+        def output = directory.resolve("out.ndjson")
+        def out = new ByteArrayOutputStream()
+        def err = new ByteArrayOutputStream()
+
+        when:
+        def exitCode = NdjsonMigrationCommand.run(["--type", Car.name, "--versions", Versions.name, "--from", "V1", "--to", "V3",
+                                                   "--threads", "2", input().toString(), output.toString()] as String[],
+                new PrintStream(out), new PrintStream(err))
+
+        then:
+        exitCode == 0
+        output.text == expectedOutput()
+        out.toString().startsWith("Migrated 200 records")
+    }
+
+    def 'the command line reports unknown versions'() {
+        given:
+        def err = new ByteArrayOutputStream()
+
+        when:
+        def exitCode = NdjsonMigrationCommand.run(["--type", Car.name, "--versions", Versions.name, "--from", "V0", "--to", "V3",
+                                                   "in.ndjson", "out.ndjson"] as String[],
+                new PrintStream(new ByteArrayOutputStream()), new PrintStream(err))
+
+        then:
+        exitCode == 2
+        err.toString().startsWith("Unknown version V0")
+    }
+}
@@ -0,0 +1,172 @@
+/*
+ * The MIT License
+ * Copyright © 2020 Patrik Lilja
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package se.plilja.jacksonversioning;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.InvalidMediaTypeException;
+import org.springframework.http.MediaType;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import org.springframework.web.server.ResponseStatusException;
+
+import javax.servlet.http.HttpServletRequest;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Resolves the version from a parameter of the media types of a request, for example
+ * {@code Accept: application/vnd.acme+json;version=3}. Responses are written in the version of the accepted media
+ * type with the highest quality having the parameter, request bodies are read in the version of their content type
+ * or of the accepted media type if the content type has no version. A version bound to the
+ * {@link VersionContextHolder} stands in for the accepted media types in both directions.
+ * <p>
+ * Recently used header values are memoized, since the same few header values are typically sent over and
+ * over again.
+ */
+class MediaTypeParameterVersionResolutionStrategy<V extends Comparable<V>> implements VersionResolutionStrategy<V>, RequestVersionResolver<V> {
+    private final String parameterName;
+    private final VersionsDescription<V> versionsDescription;
+    // null when nothing is memoized
+    private final BoundedConcurrentCache<String, Resolution<V>> resolutions;
+
+    MediaTypeParameterVersionResolutionStrategy(String parameterName, VersionsDescription<V> versionsDescription, int maxCachedHeaders) {
+        if (maxCachedHeaders < 0) {
+            throw new IllegalArgumentException("maxCachedHeaders must not be negative");
+        }
+        this.parameterName = parameterName;
+        this.versionsDescription = versionsDescription;
+        // the cache holds at least two entries, a single memoized header is rounded up
+        this.resolutions = maxCachedHeaders == 0 ? null : new BoundedConcurrentCache<>(Math.max(maxCachedHeaders, 2));
+    }
+
+    @Override
+    public V getSerializeToVersion(ObjectNode object) {
+        V version = VersionContextHolder.getVersion(versionsDescription);
+        if (version != null) {
+            return version;
+        }
+        HttpServletRequest request = currentRequest();
+        return request == null ? null : resolve(request);
+    }
+
+    @Override
+    public V getDeserializeToVersion(ObjectNode object) {
+        HttpServletRequest request = currentRequest();
+        if (request != null) {
+            String contentType = request.getHeader(HttpHeaders.CONTENT_TYPE);
+            if (contentType != null) {
+                Resolution<V> resolution = resolution(contentType);
+                if (resolution.version != null || resolution.error != null) {
+                    return resolution.get();
+                }
+            }
+        }
+        return getSerializeToVersion(object);
+    }
+
+    @Override
+    public boolean isIndependentOfModelData() {
+        return true;
+    }
+
+    /**
+     * @return the version of the accepted media types
+     */
+    @Override
+    public V resolve(HttpServletRequest request) {
+        String accept = request.getHeader(HttpHeaders.ACCEPT);
+        if (accept == null) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, String.format("Missing API version media type parameter %s", parameterName));
+        }
+        Resolution<V> resolution = resolution(accept);
+        if (resolution.version == null && resolution.error == null) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, String.format("Missing API version media type parameter %s", parameterName));
+        }
+        return resolution.get();
+    }
+
+    private HttpServletRequest currentRequest() {
+        RequestAttributes requestAttributes = RequestContextHolder.getRequestAttributes();
+        if (requestAttributes instanceof ServletRequestAttributes) {
+            return ((ServletRequestAttributes) requestAttributes).getRequest();
+        } else {
+            return null;
+        }
+    }
+
+    private Resolution<V> resolution(String header) {
+        if (resolutions == null) {
+            return parse(header);
+        }
+        Resolution<V> result = resolutions.get(header);
+        if (result == null) {
+            result = parse(header);
+            resolutions.put(header, result);
+        }
+        return result;
+    }
+
+    private Resolution<V> parse(String header) {
+        List<MediaType> mediaTypes;
+        try {
+            mediaTypes = new ArrayList<>(MediaType.parseMediaTypes(header));
+        } catch (InvalidMediaTypeException e) {
+            return new Resolution<>(null, String.format("Invalid media type %s", header));
+        }
+        MediaType.sortByQualityValue(mediaTypes);
+        for (MediaType mediaType : mediaTypes) {
+            String parameter = mediaType.getParameter(parameterName);
+            if (parameter != null) {
+                V version = versionsDescription.fromString(parameter);
+                if (version == null) {
+                    return new Resolution<>(null, String.format("Unknown API version %s", parameter));
+                }
+                return new Resolution<>(version, null);
+            }
+        }
+        return new Resolution<>(null, null);
+    }
+
+    /**
+     * The version of a header value, or the reason it has none. Both are null when the parameter is missing.
+     */
+    private static class Resolution<V> {
+        private final V version;
+        private final String error;
+
+        Resolution(V version, String error) {
+            this.version = version;
+            this.error = error;
+        }
+
+        V get() {
+            if (error != null) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, error);
+            }
+            return version;
+        }
+    }
+}
@@ -31,7 +31,7 @@ import org.springframework.web.server.ResponseStatusException;
 
 import javax.servlet.http.HttpServletRequest;
 
-class RequestHeaderVersionResolutionStrategy<V extends Comparable<V>> implements VersionResolutionStrategy<V> {
+class RequestHeaderVersionResolutionStrategy<V extends Comparable<V>> implements VersionResolutionStrategy<V>, RequestVersionResolver<V> {
     private final String headerName;
     private final VersionsDescription<V> versionsDescription;
 
@@ -50,21 +50,34 @@ class RequestHeaderVersionResolutionStrategy<V extends Comparable<V>> implements
         return getParameter();
     }
 
+    @Override
+    public boolean isIndependentOfModelData() {
+        return true;
+    }
+
     private V getParameter() {
+        V version = VersionContextHolder.getVersion(versionsDescription);
+        if (version != null) {
+            return version;
+        }
         RequestAttributes requestAttributes = RequestContextHolder.getRequestAttributes();
         if (requestAttributes instanceof ServletRequestAttributes) {
-            HttpServletRequest request = ((ServletRequestAttributes) requestAttributes).getRequest();
-            String header = request.getHeader(headerName);
-            if (header == null) {
-                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, String.format("Missing API version request parameter %s", request));
-            }
-            V result = versionsDescription.fromString(header);
-            if (result == null) {
-                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, String.format("Unknown API version %s", header));
-            }
-            return result;
+            return resolve(((ServletRequestAttributes) requestAttributes).getRequest());
         } else {
             return null;
         }
     }
+
+    @Override
+    public V resolve(HttpServletRequest request) {
+        String header = request.getHeader(headerName);
+        if (header == null) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, String.format("Missing API version request parameter %s", request));
+        }
+        V result = versionsDescription.fromString(header);
+        if (result == null) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, String.format("Unknown API version %s", header));
+        }
+        return result;
+    }
 }
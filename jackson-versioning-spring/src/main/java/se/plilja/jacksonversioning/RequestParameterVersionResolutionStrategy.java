@@ -31,7 +31,7 @@ import org.springframework.web.server.ResponseStatusException;
 
 import javax.servlet.http.HttpServletRequest;
 
-class RequestParameterVersionResolutionStrategy<V extends Comparable<V>> implements VersionResolutionStrategy<V> {
+class RequestParameterVersionResolutionStrategy<V extends Comparable<V>> implements VersionResolutionStrategy<V>, RequestVersionResolver<V> {
     private final String requestParameterName;
     private final VersionsDescription<V> versionsDescription;
 
@@ -50,21 +50,34 @@ class RequestParameterVersionResolutionStrategy<V extends Comparable<V>> impleme
         return getParameter();
     }
 
+    @Override
+    public boolean isIndependentOfModelData() {
+        return true;
+    }
+
     private V getParameter() {
+        V version = VersionContextHolder.getVersion(versionsDescription);
+        if (version != null) {
+            return version;
+        }
         RequestAttributes requestAttributes = RequestContextHolder.getRequestAttributes();
         if (requestAttributes instanceof ServletRequestAttributes) {
-            HttpServletRequest request = ((ServletRequestAttributes) requestAttributes).getRequest();
-            String parameter = request.getParameter(requestParameterName);
-            if (parameter == null) {
-                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, String.format("Missing API version request parameter %s", request));
-            }
-            V result = versionsDescription.fromString(parameter);
-            if (result == null) {
-                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, String.format("Unknown API version %s", parameter));
-            }
-            return result;
+            return resolve(((ServletRequestAttributes) requestAttributes).getRequest());
         } else {
             return null;
         }
     }
+
+    @Override
+    public V resolve(HttpServletRequest request) {
+        String parameter = request.getParameter(requestParameterName);
+        if (parameter == null) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, String.format("Missing API version request parameter %s", request));
+        }
+        V result = versionsDescription.fromString(parameter);
+        if (result == null) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, String.format("Unknown API version %s", parameter));
+        }
+        return result;
+    }
 }
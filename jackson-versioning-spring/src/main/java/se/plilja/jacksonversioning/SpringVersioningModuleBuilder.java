@@ -22,6 +22,7 @@
  */
 package se.plilja.jacksonversioning;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.springframework.context.ApplicationContext;
 
 import java.util.Objects;
@@ -35,6 +36,7 @@ public final class SpringVersioningModuleBuilder {
         private final VersionsDescription<V> versionsDescription;
         private VersionedConverterRepository<V> versionedConverterRepository = null;
         private VersionResolutionStrategy<V> versionResolutionStrategy = null;
+        private RequestVersionResolver<V> requestVersionResolver = null;
 
         private InnerBuilder(VersionsDescription<V> versionsDescription) {
             this.versionsDescription = versionsDescription;
@@ -42,13 +44,30 @@ public final class SpringVersioningModuleBuilder {
 
         @Override
         public WithConverterRepository withVersionDeterminedByRequestParameter(String parameterName) {
-            versionResolutionStrategy = new RequestParameterVersionResolutionStrategy<>(parameterName, versionsDescription);
+            RequestParameterVersionResolutionStrategy<V> strategy = new RequestParameterVersionResolutionStrategy<>(parameterName, versionsDescription);
+            versionResolutionStrategy = strategy;
+            requestVersionResolver = strategy;
             return this;
         }
 
         @Override
         public WithConverterRepository withVersionDeterminedByRequestHeader(String headerName) {
-            versionResolutionStrategy = new RequestHeaderVersionResolutionStrategy<>(headerName, versionsDescription);
+            RequestHeaderVersionResolutionStrategy<V> strategy = new RequestHeaderVersionResolutionStrategy<>(headerName, versionsDescription);
+            versionResolutionStrategy = strategy;
+            requestVersionResolver = strategy;
+            return this;
+        }
+
+        @Override
+        public WithConverterRepository withVersionDeterminedByMediaTypeParameter(String parameterName) {
+            return withVersionDeterminedByMediaTypeParameter(parameterName, 1000);
+        }
+
+        @Override
+        public WithConverterRepository withVersionDeterminedByMediaTypeParameter(String parameterName, int maxCachedHeaders) {
+            MediaTypeParameterVersionResolutionStrategy<V> strategy = new MediaTypeParameterVersionResolutionStrategy<>(parameterName, versionsDescription, maxCachedHeaders);
+            versionResolutionStrategy = strategy;
+            requestVersionResolver = strategy;
             return this;
         }
 
@@ -71,6 +90,24 @@ public final class SpringVersioningModuleBuilder {
             Objects.requireNonNull(versionResolutionStrategy, "VersionResolutionStrategy must be set before building");
             return new VersioningModule(versionsDescription, versionedConverterRepository, versionResolutionStrategy);
         }
+
+        @Override
+        public VersionPropagationFilter buildVersionPropagationFilter() {
+            Objects.requireNonNull(requestVersionResolver, "VersionResolutionStrategy must be set before building");
+            return new VersionPropagationFilter(requestVersionResolver);
+        }
+
+        @Override
+        public VersionedETags buildVersionedETags() {
+            Objects.requireNonNull(requestVersionResolver, "VersionResolutionStrategy must be set before building");
+            return new VersionedETags(requestVersionResolver);
+        }
+
+        @Override
+        public VersionedETags buildVersionedETags(ObjectMapper objectMapper, long maxEncodedBytes) {
+            Objects.requireNonNull(requestVersionResolver, "VersionResolutionStrategy must be set before building");
+            return new VersionedETags(requestVersionResolver, objectMapper, maxEncodedBytes);
+        }
     }
 
     public static <V extends Enum<V>> WithVersionResolutionStrategy withEnumVersions(Class<V> versionsEnum) {
@@ -85,6 +122,18 @@ public final class SpringVersioningModuleBuilder {
         WithConverterRepository withVersionDeterminedByRequestParameter(String parameterName);
 
         WithConverterRepository withVersionDeterminedByRequestHeader(String headerName);
+
+        /**
+         * Determine the version by a parameter of the accepted media types and the content type, for example
+         * {@code version} in {@code application/vnd.acme+json;version=3}.
+         */
+        WithConverterRepository withVersionDeterminedByMediaTypeParameter(String parameterName);
+
+        /**
+         * @param maxCachedHeaders number of distinct header values whose parsed version is remembered, 0 to remember
+         *                         none, values below two are rounded up
+         */
+        WithConverterRepository withVersionDeterminedByMediaTypeParameter(String parameterName, int maxCachedHeaders);
     }
 
     public interface WithConverterRepository {
@@ -95,6 +144,26 @@ public final class SpringVersioningModuleBuilder {
 
     public interface ReadyForBuilding {
         VersioningModule build();
+
+        /**
+         * Builds a filter binding the version of each request to the threads processing it, register it
+         * together with the module when controllers return {@code DeferredResult}, {@code Callable} or
+         * {@code CompletableFuture}.
+         */
+        VersionPropagationFilter buildVersionPropagationFilter();
+
+        /**
+         * Builds ETags of responses combining a resource revision with the API version of the request.
+         */
+        VersionedETags buildVersionedETags();
+
+        /**
+         * Builds ETags of responses combining a resource revision with the API version of the request, keeping
+         * encoded bodies per resource revision and API version.
+         *
+         * @param maxEncodedBytes maximum total size of the encoded bodies kept
+         */
+        VersionedETags buildVersionedETags(ObjectMapper objectMapper, long maxEncodedBytes);
     }
 }
 
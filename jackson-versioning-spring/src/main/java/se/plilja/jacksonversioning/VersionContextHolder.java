@@ -0,0 +1,74 @@
+/*
+ * The MIT License
+ * Copyright © 2020 Patrik Lilja
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package se.plilja.jacksonversioning;
+
+/**
+ * Holds the API version of the request being processed by the current thread. The version is bound by the
+ * {@link VersionPropagationFilter} and carried over to other threads by the {@link VersionPropagatingTaskDecorator},
+ * the request based strategies use the bound version before looking at the current request.
+ * <p>
+ * The version is held without its type, strategies only use a bound version of the type of their own versions, so
+ * that mappers with different versions can share a thread.
+ */
+public final class VersionContextHolder {
+    private static final ThreadLocal<Object> VERSION = new ThreadLocal<>();
+
+    private VersionContextHolder() {
+        // should not be instantiated
+    }
+
+    /**
+     * @return the version bound to the current thread, or null
+     */
+    public static Object getVersion() {
+        return VERSION.get();
+    }
+
+    /**
+     * @return the version bound to the current thread if it is one of the described versions, otherwise null
+     */
+    @SuppressWarnings("unchecked")
+    public static <V extends Comparable<V>> V getVersion(VersionsDescription<V> versionsDescription) {
+        Object version = VERSION.get();
+        if (version == null || !versionClass(versionsDescription.getCurrentVersion()).isInstance(version)) {
+            return null;
+        }
+        return (V) version;
+    }
+
+    private static Class<?> versionClass(Object version) {
+        // constants of enums with bodies are instances of a subclass of the enum
+        return version instanceof Enum ? ((Enum<?>) version).getDeclaringClass() : version.getClass();
+    }
+
+    /**
+     * @param version version to bind to the current thread, null to unbind
+     */
+    public static void setVersion(Object version) {
+        if (version == null) {
+            VERSION.remove();
+        } else {
+            VERSION.set(version);
+        }
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * The MIT License
+ * Copyright © 2020 Patrik Lilja
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package se.plilja.jacksonversioning;
+
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.context.request.async.CallableProcessingInterceptor;
+import org.springframework.web.context.request.async.WebAsyncUtils;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.server.ResponseStatusException;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.concurrent.Callable;
+
+/**
+ * Resolves the API version once when a request arrives and binds it to the {@link VersionContextHolder} for the
+ * request, for async dispatches of the request and for {@code Callable}s returned by controllers. Responses of
+ * {@code DeferredResult} and {@code CompletableFuture} controllers are then written with the version of the request,
+ * whichever thread writes them.
+ * <p>
+ * Requests with a missing or unknown version are passed on without a bound version, and are rejected by the
+ * {@link VersionResolutionStrategy} as before.
+ */
+public class VersionPropagationFilter extends OncePerRequestFilter {
+    private static final String VERSION_ATTRIBUTE = VersionPropagationFilter.class.getName() + ".VERSION";
+
+    private final RequestVersionResolver<?> requestVersionResolver;
+
+    public VersionPropagationFilter(RequestVersionResolver<?> requestVersionResolver) {
+        this.requestVersionResolver = requestVersionResolver;
+    }
+
+    @Override
+    protected boolean shouldNotFilterAsyncDispatch() {
+        return false;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain) throws ServletException, IOException {
+        Object version = request.getAttribute(VERSION_ATTRIBUTE);
+        if (version == null && !isAsyncDispatch(request)) {
+            version = resolveVersion(request);
+            if (version != null) {
+                request.setAttribute(VERSION_ATTRIBUTE, version);
+                WebAsyncUtils.getAsyncManager(request).registerCallableInterceptor(VERSION_ATTRIBUTE, new VersionBindingInterceptor(version));
+            }
+        }
+
+        Object previous = VersionContextHolder.getVersion();
+        VersionContextHolder.setVersion(version);
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            VersionContextHolder.setVersion(previous);
+        }
+    }
+
+    private Object resolveVersion(HttpServletRequest request) {
+        try {
+            return requestVersionResolver.resolve(request);
+        } catch (ResponseStatusException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Binds the version on the thread executing a {@code Callable} returned by a controller.
+     */
+    private static class VersionBindingInterceptor implements CallableProcessingInterceptor {
+        private final Object version;
+
+        VersionBindingInterceptor(Object version) {
+            this.version = version;
+        }
+
+        @Override
+        public <T> void preProcess(NativeWebRequest request, Callable<T> task) {
+            VersionContextHolder.setVersion(version);
+        }
+
+        @Override
+        public <T> void postProcess(NativeWebRequest request, Callable<T> task, Object concurrentResult) {
+            VersionContextHolder.setVersion(null);
+        }
+    }
+}
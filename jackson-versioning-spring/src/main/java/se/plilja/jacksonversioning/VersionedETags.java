@@ -0,0 +1,187 @@
+/*
+ * The MIT License
+ * Copyright © 2020 Patrik Lilja
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package se.plilja.jacksonversioning;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.InvalidMediaTypeException;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.util.DigestUtils;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Computes ETags of responses from a key identifying the revision of a resource combined with the API version of
+ * the request. Conditional requests for an unchanged revision are answered with 304 Not Modified before the body is
+ * loaded or serialized, which is cheaper than hashing the converted body as a shallow ETag filter does.
+ * <pre>
+ * &#64;GetMapping("/cars/{id}")
+ * ResponseEntity&lt;Car&gt; getCar(&#64;PathVariable long id, ServletWebRequest request) {
+ *     return versionedETags.respond(request, "car-" + id + "-" + carRepository.getRevision(id), () -&gt; carRepository.get(id));
+ * }
+ * </pre>
+ */
+public class VersionedETags {
+    // HandlerMapping.PRODUCIBLE_MEDIA_TYPES_ATTRIBUTE, named here since Spring MVC is not a dependency
+    private static final String PRODUCIBLE_MEDIA_TYPES_ATTRIBUTE = "org.springframework.web.servlet.HandlerMapping.producibleMediaTypes";
+    // produced by handlers that don't declare what they produce
+    private static final List<MediaType> JSON_MEDIA_TYPES = List.of(MediaType.APPLICATION_JSON, new MediaType("application", "*+json"));
+
+    private final RequestVersionResolver<?> requestVersionResolver;
+    private final ObjectMapper objectMapper;
+    private final WeightedLruCache<List<Object>, byte[]> encodedBodies;
+
+    public VersionedETags(RequestVersionResolver<?> requestVersionResolver) {
+        this.requestVersionResolver = requestVersionResolver;
+        this.objectMapper = null;
+        this.encodedBodies = null;
+    }
+
+    /**
+     * @param objectMapper      mapper with the versioning module registered, used to encode the bodies
+     * @param maxEncodedBytes   maximum total size of the encoded bodies kept, the least recently used are evicted
+     */
+    public VersionedETags(RequestVersionResolver<?> requestVersionResolver, ObjectMapper objectMapper, long maxEncodedBytes) {
+        this.requestVersionResolver = requestVersionResolver;
+        this.objectMapper = objectMapper;
+        this.encodedBodies = new WeightedLruCache<>(maxEncodedBytes, (encoded) -> encoded.length);
+    }
+
+    /**
+     * @param resourceRevision key that changes whenever the resource changes, for example an id and a revision number
+     * @return the quoted ETag of the resource revision in the API version of the request
+     */
+    public String getETag(ServletWebRequest request, String resourceRevision) {
+        return eTag(resourceRevision, resolveVersion(request));
+    }
+
+    /**
+     * Answer with 304 Not Modified if the request is conditional on the current ETag, or with the body otherwise.
+     */
+    public <T> ResponseEntity<T> respond(ServletWebRequest request, String resourceRevision, Supplier<T> body) {
+        String eTag = getETag(request, resourceRevision);
+        if (request.checkNotModified(eTag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(eTag).build();
+        }
+        return ResponseEntity.ok().eTag(eTag).body(body.get());
+    }
+
+    /**
+     * Like {@link #respond(ServletWebRequest, String, Supplier)}, but keeps the encoded body per resource revision and API
+     * version, so that requests without a matching ETag are also answered without serializing the body again. The
+     * content type is negotiated from the accepted media types and the media types produced by the handler, as for
+     * bodies written by Spring, among the json media types since the bodies are encoded by the object mapper. Bodies
+     * are kept per content type too. Requires an instance created with an object mapper.
+     */
+    public ResponseEntity<byte[]> respondEncoded(ServletWebRequest request, String resourceRevision, Supplier<?> body) throws JsonProcessingException {
+        if (encodedBodies == null) {
+            throw new IllegalStateException("Encoded bodies are only kept by instances created with an object mapper");
+        }
+        Object version = resolveVersion(request);
+        String eTag = eTag(resourceRevision, version);
+        if (request.checkNotModified(eTag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(eTag).build();
+        }
+        MediaType contentType = negotiateContentType(request);
+        List<Object> key = List.of(resourceRevision, version, contentType);
+        byte[] encoded = encodedBodies.get(key);
+        if (encoded == null) {
+            encoded = objectMapper.writeValueAsBytes(body.get());
+            encodedBodies.put(key, encoded);
+        }
+        return ResponseEntity.ok().eTag(eTag).contentType(contentType).body(encoded);
+    }
+
+    /**
+     * @return the most specific accepted json media type that the handler produces, the way Spring chooses it
+     */
+    @SuppressWarnings("unchecked")
+    private MediaType negotiateContentType(ServletWebRequest request) {
+        List<MediaType> accepted;
+        try {
+            String accept = request.getHeader(HttpHeaders.ACCEPT);
+            accepted = accept == null ? List.of(MediaType.ALL) : MediaType.parseMediaTypes(accept);
+        } catch (InvalidMediaTypeException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+        }
+        Object producible = request.getAttribute(PRODUCIBLE_MEDIA_TYPES_ATTRIBUTE, RequestAttributes.SCOPE_REQUEST);
+        Collection<MediaType> produced = producible instanceof Collection && !((Collection<?>) producible).isEmpty()
+                ? (Collection<MediaType>) producible
+                : JSON_MEDIA_TYPES;
+
+        List<MediaType> candidates = new ArrayList<>();
+        for (MediaType acceptedType : accepted) {
+            for (MediaType producedType : produced) {
+                if (acceptedType.isCompatibleWith(producedType)) {
+                    MediaType qualifiedType = producedType.copyQualityValue(acceptedType);
+                    MediaType candidate = MediaType.SPECIFICITY_COMPARATOR.compare(acceptedType, qualifiedType) <= 0 ? acceptedType : qualifiedType;
+                    if (isJson(candidate)) {
+                        candidates.add(candidate);
+                    }
+                }
+            }
+        }
+        if (candidates.isEmpty()) {
+            throw new ResponseStatusException(HttpStatus.NOT_ACCEPTABLE, String.format("Could not produce any of %s", accepted));
+        }
+        MediaType.sortBySpecificityAndQuality(candidates);
+        for (MediaType candidate : candidates) {
+            if (candidate.isConcrete()) {
+                return candidate.removeQualityValue();
+            }
+        }
+        return MediaType.APPLICATION_JSON;
+    }
+
+    private static boolean isJson(MediaType mediaType) {
+        for (MediaType jsonType : JSON_MEDIA_TYPES) {
+            if (jsonType.isCompatibleWith(mediaType)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private Object resolveVersion(ServletWebRequest request) {
+        Object version = VersionContextHolder.getVersion();
+        if (version != null) {
+            return version;
+        }
+        return requestVersionResolver.resolve(request.getRequest());
+    }
+
+    private static String eTag(String resourceRevision, Object version) {
+        String hash = DigestUtils.md5DigestAsHex((resourceRevision + "\n" + version).getBytes(StandardCharsets.UTF_8));
+        return "\"" + hash + "\"";
+    }
+}
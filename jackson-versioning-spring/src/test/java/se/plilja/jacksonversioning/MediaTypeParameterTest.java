@@ -0,0 +1,165 @@
+/*
+ * The MIT License
+ * Copyright © 2020 Patrik Lilja
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package se.plilja.jacksonversioning;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import org.springframework.web.servlet.mvc.condition.ProducesRequestCondition;
+
+import java.lang.reflect.Field;
+import org.springframework.web.server.ResponseStatusException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MediaTypeParameterTest {
+    private final MediaTypeParameterVersionResolutionStrategy<ApiVersion> strategy =
+            new MediaTypeParameterVersionResolutionStrategy<>("version", new EnumVersionsDescription<>(ApiVersion.class), 2);
+
+    @AfterEach
+    void tearDown() {
+        RequestContextHolder.resetRequestAttributes();
+        VersionContextHolder.setVersion(null);
+    }
+
+    @Test
+    void versionIsReadFromAcceptedMediaType() {
+        bind("application/vnd.acme+json;version=V2", null);
+
+        assertEquals(ApiVersion.V2, strategy.getSerializeToVersion(null));
+        assertEquals(ApiVersion.V2, strategy.getDeserializeToVersion(null));
+    }
+
+    @Test
+    void acceptedMediaTypeWithHighestQualityIsUsed() {
+        bind("application/json;q=0.5, application/vnd.acme+json;version=V1;q=0.8, application/vnd.acme+json;version=V3", null);
+
+        assertEquals(ApiVersion.V3, strategy.getSerializeToVersion(null));
+    }
+
+    @Test
+    void requestBodiesAreReadInVersionOfContentType() {
+        bind("application/vnd.acme+json;version=V3", "application/vnd.acme+json;version=V1");
+
+        assertEquals(ApiVersion.V3, strategy.getSerializeToVersion(null));
+        assertEquals(ApiVersion.V1, strategy.getDeserializeToVersion(null));
+    }
+
+    @Test
+    void contentTypeWithoutVersionFallsBackToAcceptedMediaType() {
+        bind("application/vnd.acme+json;version=V2", "application/json");
+
+        assertEquals(ApiVersion.V2, strategy.getDeserializeToVersion(null));
+    }
+
+    @Test
+    void missingUnknownAndInvalidVersionsAreBadRequests() {
+        for (String accept : new String[]{"application/json", "application/vnd.acme+json;version=V9", "not a media type"}) {
+            bind(accept, null);
+            ResponseStatusException e = assertThrows(ResponseStatusException.class, () -> strategy.getSerializeToVersion(null));
+            assertEquals(HttpStatus.BAD_REQUEST, e.getStatus());
+        }
+    }
+
+    @Test
+    void headersAreResolvedBeyondCacheSize() {
+        for (int i = 0; i < 5; i++) {
+            for (ApiVersion version : ApiVersion.values()) {
+                bind("application/vnd.acme+json;version=" + version, null);
+                assertEquals(version, strategy.getSerializeToVersion(null));
+            }
+        }
+    }
+
+    @Test
+    void boundVersionStandsInForAcceptedMediaType() {
+        bind("application/vnd.acme+json;version=V2", null);
+        VersionContextHolder.setVersion(ApiVersion.V1);
+
+        assertEquals(ApiVersion.V1, strategy.getSerializeToVersion(null));
+        assertEquals(ApiVersion.V1, strategy.getDeserializeToVersion(null));
+
+        bind("application/vnd.acme+json;version=V2", "application/vnd.acme+json;version=V3");
+        assertEquals(ApiVersion.V3, strategy.getDeserializeToVersion(null));
+
+        RequestContextHolder.resetRequestAttributes();
+        assertEquals(ApiVersion.V1, strategy.getDeserializeToVersion(null));
+    }
+
+    @Test
+    void memoizedHeadersAreBounded() throws ReflectiveOperationException {
+        Field field = MediaTypeParameterVersionResolutionStrategy.class.getDeclaredField("resolutions");
+        field.setAccessible(true);
+        BoundedConcurrentCache<String, ?> resolutions = (BoundedConcurrentCache<String, ?>) field.get(strategy);
+
+        for (int i = 0; i < 100; i++) {
+            bind("application/vnd.acme+json;version=V1;nonce=" + i, null);
+            assertEquals(ApiVersion.V1, strategy.getSerializeToVersion(null));
+        }
+        bind("application/vnd.acme+json;version=V2", null);
+        assertEquals(ApiVersion.V2, strategy.getSerializeToVersion(null));
+
+        assertTrue(resolutions.size() <= 2);
+        assertNotNull(resolutions.get("application/vnd.acme+json;version=V2"));
+    }
+
+    @Test
+    void singleMemoizedHeaderIsAllowed() {
+        MediaTypeParameterVersionResolutionStrategy<ApiVersion> single =
+                new MediaTypeParameterVersionResolutionStrategy<>("version", new EnumVersionsDescription<>(ApiVersion.class), 1);
+        bind("application/vnd.acme+json;version=V3", null);
+
+        assertEquals(ApiVersion.V3, single.getSerializeToVersion(null));
+        assertEquals(ApiVersion.V3, single.getSerializeToVersion(null));
+    }
+
+    @Test
+    void producesConditionsDeclaringTheParameterMatchOnlyThatVersion() {
+        ProducesRequestCondition condition = new ProducesRequestCondition("application/vnd.acme+json;version=V3");
+
+        assertNotNull(condition.getMatchingCondition(request("application/vnd.acme+json;version=V3")));
+        assertNull(condition.getMatchingCondition(request("application/vnd.acme+json;version=V2")));
+    }
+
+    private void bind(String accept, String contentType) {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.addHeader("Accept", accept);
+        if (contentType != null) {
+            request.addHeader("Content-Type", contentType);
+        }
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(request));
+    }
+
+    private static MockHttpServletRequest request(String accept) {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.addHeader("Accept", accept);
+        return request;
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * The MIT License
+ * Copyright © 2020 Patrik Lilja
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package se.plilja.jacksonversioning;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import javax.servlet.DispatcherType;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class VersionPropagationTest {
+    private final RequestHeaderVersionResolutionStrategy<ApiVersion> strategy =
+            new RequestHeaderVersionResolutionStrategy<>("X-API-VERSION", new EnumVersionsDescription<>(ApiVersion.class));
+    private final VersionPropagationFilter filter = new VersionPropagationFilter(strategy);
+
+    @AfterEach
+    void tearDown() {
+        VersionContextHolder.setVersion(null);
+        RequestContextHolder.resetRequestAttributes();
+    }
+
+    @Test
+    void versionIsBoundWhileRequestIsFiltered() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.addHeader("X-API-VERSION", "V2");
+        AtomicReference<ApiVersion> seen = new AtomicReference<>();
+
+        filter.doFilter(request, new MockHttpServletResponse(), (req, res) -> seen.set(strategy.getSerializeToVersion(null)));
+
+        assertEquals(ApiVersion.V2, seen.get());
+        assertNull(VersionContextHolder.getVersion());
+    }
+
+    @Test
+    void versionIsBoundAgainOnAsyncDispatch() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.addHeader("X-API-VERSION", "V1");
+        filter.doFilter(request, new MockHttpServletResponse(), (req, res) -> {
+        });
+
+        // the header is no longer looked at once the version has been resolved
+        request.removeHeader("X-API-VERSION");
+        request.setDispatcherType(DispatcherType.ASYNC);
+        AtomicReference<ApiVersion> seen = new AtomicReference<>();
+        filter.doFilter(request, new MockHttpServletResponse(), (req, res) -> seen.set(strategy.getSerializeToVersion(null)));
+
+        assertEquals(ApiVersion.V1, seen.get());
+    }
+
+    @Test
+    void boundVersionIsPreferredOverRequest() {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.addHeader("X-API-VERSION", "V1");
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(request));
+        VersionContextHolder.setVersion(ApiVersion.V3);
+
+        assertEquals(ApiVersion.V3, strategy.getSerializeToVersion(null));
+    }
+
+    @Test
+    void boundVersionOfAnotherTypeIsIgnored() {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.addHeader("X-API-VERSION", "V1");
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(request));
+        VersionContextHolder.setVersion(SemanticVersion.parse("2.0.0"));
+
+        assertEquals(ApiVersion.V1, strategy.getSerializeToVersion(null));
+    }
+
+    @Test
+    void taskDecoratorCarriesVersionToOtherThreads() throws Exception {
+        VersionContextHolder.setVersion(ApiVersion.V2);
+        AtomicReference<ApiVersion> seen = new AtomicReference<>();
+        Runnable task = new VersionPropagatingTaskDecorator().decorate(() -> seen.set(strategy.getSerializeToVersion(null)));
+        VersionContextHolder.setVersion(null);
+
+        Thread thread = new Thread(task);
+        thread.start();
+        thread.join();
+
+        assertEquals(ApiVersion.V2, seen.get());
+    }
+
+    @Test
+    void unknownVersionIsLeftToTheStrategy() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.addHeader("X-API-VERSION", "V9");
+        AtomicReference<Object> seen = new AtomicReference<>("unset");
+
+        filter.doFilter(request, new MockHttpServletResponse(), (req, res) -> seen.set(VersionContextHolder.getVersion()));
+
+        assertNull(seen.get());
+    }
+}
@@ -0,0 +1,182 @@
+/*
+ * The MIT License
+ * Copyright © 2020 Patrik Lilja
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package se.plilja.jacksonversioning;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.HandlerMapping;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class VersionedETagsTest {
+    private final EnumVersionsDescription<ApiVersion> versionsDescription = new EnumVersionsDescription<>(ApiVersion.class);
+    private final RequestHeaderVersionResolutionStrategy<ApiVersion> strategy = new RequestHeaderVersionResolutionStrategy<>("X-API-VERSION", versionsDescription);
+    private final ObjectMapper objectMapper = new ObjectMapper().registerModule(new VersioningModule(versionsDescription, strategy));
+    private final AtomicInteger loads = new AtomicInteger();
+
+    @AfterEach
+    void tearDown() {
+        RequestContextHolder.resetRequestAttributes();
+    }
+
+    @Test
+    void eTagDependsOnResourceRevisionAndApiVersion() {
+        VersionedETags eTags = new VersionedETags(strategy);
+
+        String v1 = eTags.getETag(request("V1", null), "car-1-1");
+        assertEquals(v1, eTags.getETag(request("V1", null), "car-1-1"));
+        assertNotEquals(v1, eTags.getETag(request("V2", null), "car-1-1"));
+        assertNotEquals(v1, eTags.getETag(request("V1", null), "car-1-2"));
+    }
+
+    @Test
+    void matchingRequestIsAnsweredWithoutLoadingBody() {
+        VersionedETags eTags = new VersionedETags(strategy);
+        String eTag = eTags.getETag(request("V2", null), "car-1-1");
+
+        ResponseEntity<Car> response = eTags.respond(request("V2", eTag), "car-1-1", this::loadCar);
+
+        assertEquals(HttpStatus.NOT_MODIFIED, response.getStatusCode());
+        assertEquals(eTag, response.getHeaders().getETag());
+        assertNull(response.getBody());
+        assertEquals(0, loads.get());
+    }
+
+    @Test
+    void eTagOfOtherApiVersionDoesNotMatch() {
+        VersionedETags eTags = new VersionedETags(strategy);
+        String eTag = eTags.getETag(request("V3", null), "car-1-1");
+
+        ResponseEntity<Car> response = eTags.respond(request("V2", eTag), "car-1-1", this::loadCar);
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals("toyota", response.getBody().getMake());
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    void encodedBodiesAreKeptPerApiVersion() throws Exception {
+        VersionedETags eTags = new VersionedETags(strategy, objectMapper, 10_000);
+
+        ResponseEntity<byte[]> v2 = eTags.respondEncoded(request("V2", null), "car-1-1", this::loadCar);
+        ResponseEntity<byte[]> v2Again = eTags.respondEncoded(request("V2", null), "car-1-1", this::loadCar);
+        ResponseEntity<byte[]> v3 = eTags.respondEncoded(request("V3", null), "car-1-1", this::loadCar);
+
+        assertEquals(2, loads.get());
+        assertEquals(objectMapper.readTree("{\"id\":1,\"model\":null,\"yearMade\":0,\"owner\":null,\"company\":\"toyota\"}"), objectMapper.readTree(v2.getBody()));
+        assertEquals(new String(v2.getBody(), StandardCharsets.UTF_8), new String(v2Again.getBody(), StandardCharsets.UTF_8));
+        assertEquals("toyota", objectMapper.readTree(v3.getBody()).get("make").asText());
+    }
+
+    @Test
+    void encodedBodiesAreSentWithTheNegotiatedMediaType() throws Exception {
+        VersionedETags eTags = new VersionedETags(strategy, objectMapper, 10_000);
+
+        ServletWebRequest request = request("V2", null);
+        request.getRequest().setAttribute(HandlerMapping.PRODUCIBLE_MEDIA_TYPES_ATTRIBUTE, Set.of(MediaType.parseMediaType("application/vnd.acme+json")));
+        ((MockHttpServletRequest) request.getRequest()).addHeader("Accept", "application/vnd.acme+json;version=V2, */*;q=0.1");
+        assertEquals(MediaType.parseMediaType("application/vnd.acme+json;version=V2"),
+                eTags.respondEncoded(request, "car-1-1", this::loadCar).getHeaders().getContentType());
+
+        assertEquals(MediaType.APPLICATION_JSON, eTags.respondEncoded(request("V2", null), "car-1-1", this::loadCar).getHeaders().getContentType());
+
+        ServletWebRequest htmlRequest = request("V2", null);
+        ((MockHttpServletRequest) htmlRequest.getRequest()).addHeader("Accept", "text/html");
+        ResponseStatusException e = assertThrows(ResponseStatusException.class, () -> eTags.respondEncoded(htmlRequest, "car-1-1", this::loadCar));
+        assertEquals(HttpStatus.NOT_ACCEPTABLE, e.getStatus());
+    }
+
+    @Test
+    void encodedBodiesAreOnlySentWithJsonMediaTypes() throws Exception {
+        VersionedETags eTags = new VersionedETags(strategy, objectMapper, 10_000);
+        Set<MediaType> produced = Set.of(MediaType.APPLICATION_XML, MediaType.APPLICATION_JSON, MediaType.parseMediaType("application/vnd.acme+json"));
+
+        ServletWebRequest xmlRequest = request("V2", null);
+        xmlRequest.getRequest().setAttribute(HandlerMapping.PRODUCIBLE_MEDIA_TYPES_ATTRIBUTE, produced);
+        ((MockHttpServletRequest) xmlRequest.getRequest()).addHeader("Accept", "application/xml");
+        ResponseStatusException e = assertThrows(ResponseStatusException.class, () -> eTags.respondEncoded(xmlRequest, "car-1-1", this::loadCar));
+        assertEquals(HttpStatus.NOT_ACCEPTABLE, e.getStatus());
+
+        ServletWebRequest request = request("V2", null);
+        request.getRequest().setAttribute(HandlerMapping.PRODUCIBLE_MEDIA_TYPES_ATTRIBUTE, produced);
+        ((MockHttpServletRequest) request.getRequest()).addHeader("Accept", "application/xml, application/json;q=0.5");
+        assertEquals(MediaType.APPLICATION_JSON, eTags.respondEncoded(request, "car-1-1", this::loadCar).getHeaders().getContentType());
+
+        ServletWebRequest vendorRequest = request("V2", null);
+        vendorRequest.getRequest().setAttribute(HandlerMapping.PRODUCIBLE_MEDIA_TYPES_ATTRIBUTE, produced);
+        ((MockHttpServletRequest) vendorRequest.getRequest()).addHeader("Accept", "application/vnd.acme+json");
+        assertEquals(MediaType.parseMediaType("application/vnd.acme+json"), eTags.respondEncoded(vendorRequest, "car-1-1", this::loadCar).getHeaders().getContentType());
+
+        // kept per content type
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void encodedBodiesAreBoundedByTheirSize() throws Exception {
+        int size = objectMapper.writeValueAsBytes(loadCar()).length;
+        VersionedETags eTags = new VersionedETags(strategy, objectMapper, 2L * size);
+
+        for (int revision = 0; revision < 3; revision++) {
+            eTags.respondEncoded(request("V3", null), "car-1-" + revision, this::loadCar);
+        }
+        eTags.respondEncoded(request("V3", null), "car-1-2", this::loadCar);
+        eTags.respondEncoded(request("V3", null), "car-1-0", this::loadCar);
+
+        assertEquals(1 + 3 + 1, loads.get());
+    }
+
+    private ServletWebRequest request(String version, String ifNoneMatch) {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/cars/1");
+        request.addHeader("X-API-VERSION", version);
+        if (ifNoneMatch != null) {
+            request.addHeader("If-None-Match", ifNoneMatch);
+        }
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(request));
+        return new ServletWebRequest(request, new MockHttpServletResponse());
+    }
+
+    private Car loadCar() {
+        loads.incrementAndGet();
+        Car car = new Car();
+        car.setId(1);
+        car.setMake("toyota");
+        return car;
+    }
+}
@@ -29,20 +29,37 @@ import com.fasterxml.jackson.databind.node.ObjectNode;
 import java.math.BigDecimal;
 import java.math.BigInteger;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.SortedMap;
 import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.BiFunction;
 import java.util.function.Function;
 
+/**
+ * Base class for converters declaring their conversions in the constructor. The conversions are frozen into an
+ * immutable snapshot the first time the converter is used, after which it can be shared between threads without
+ * synchronization. Registering conversions after that fails.
+ */
 public abstract class AbstractVersionConverter<V extends Comparable<V>> implements VersionConverter<V> {
+    private static final int MAX_PROJECTION_PLANS = 256;
     private final SortedMap<V, LinkedList<BiFunction<ObjectNode, JsonNodeFactory, ObjectNode>>> upConverters = new TreeMap<>();
-    private final SortedMap<V, LinkedList<BiFunction<ObjectNode, JsonNodeFactory, ObjectNode>>> downConverters = new TreeMap<>((o1, o2) -> -o1.compareTo(o2));
+    private final SortedMap<V, LinkedList<BiFunction<ObjectNode, JsonNodeFactory, ObjectNode>>> downConverters = new TreeMap<>();
+    private final SortedMap<V, LinkedList<Operation>> downOperations = new TreeMap<>();
+    // plans are keyed by the range of conversion steps, shared by all versions between the same two steps
+    private final Map<Integer, BiFunction<ObjectNode, JsonNodeFactory, ObjectNode>[]> upPlans = new ConcurrentHashMap<>();
+    // keyed by the kept attributes that some conversion writes, bounded since the kept attributes come from callers
+    private final BoundedConcurrentCache<List<Object>, BiFunction<ObjectNode, JsonNodeFactory, ObjectNode>[]> projectionPlans =
+            new BoundedConcurrentCache<>(MAX_PROJECTION_PLANS);
     private final Class<?> targetClass;
     private final List<String> descriptions = new ArrayList<>();
+    private volatile Snapshot<V> snapshot;
 
     public AbstractVersionConverter(Class<?> targetClass) {
         this.targetClass = targetClass;
@@ -50,30 +67,70 @@ public abstract class AbstractVersionConverter<V extends Comparable<V>> implemen
 
     private void addConverter(
             V upVersion,
-            BiFunction<ObjectNode, JsonNodeFactory, ObjectNode> downConverter,
+            Operation downOperation,
             BiFunction<ObjectNode, JsonNodeFactory, ObjectNode> upConverter,
             String description) {
-        upConverters.computeIfAbsent(upVersion, (key) -> new LinkedList<>()).add(upConverter);
-        downConverters.computeIfAbsent(upVersion, (key) -> new LinkedList<>()).addFirst(downConverter);
-        descriptions.add(description);
+        synchronized (this) {
+            if (snapshot != null) {
+                throw new IllegalStateException(String.format("Conversions of class %s can't be registered after the converter has been used", targetClass.getSimpleName()));
+            }
+            upConverters.computeIfAbsent(upVersion, (key) -> new LinkedList<>()).add(upConverter);
+            downConverters.computeIfAbsent(upVersion, (key) -> new LinkedList<>()).addFirst(downOperation.downConverter);
+            downOperations.computeIfAbsent(upVersion, (key) -> new LinkedList<>()).addFirst(downOperation);
+            descriptions.add(description);
+        }
+    }
+
+    /**
+     * Freeze the registered conversions. Called automatically the first time the converter is used, it may be
+     * called at the end of the constructor of a subclass to catch late registrations early.
+     */
+    protected final void freeze() {
+        snapshot();
+    }
+
+    private Snapshot<V> snapshot() {
+        Snapshot<V> result = snapshot;
+        if (result == null) {
+            synchronized (this) {
+                result = snapshot;
+                if (result == null) {
+                    result = new Snapshot<>(upConverters, downConverters, downOperations, descriptions);
+                    snapshot = result;
+                    upConverters.clear();
+                    downConverters.clear();
+                    downOperations.clear();
+                }
+            }
+        }
+        return result;
     }
 
     protected void attributeAdded(V upModelVersion, String attributeName, Function<ObjectNode, Object> valueProvider) {
         addConverter(
                 upModelVersion,
-                (modelData, nodeFactory) -> {
+                new Operation(OperationKind.ADDED, attributeName, null, Collections.emptySet(), (modelData, nodeFactory) -> {
                     modelData.remove(attributeName);
                     return modelData;
-                },
+                }),
                 setFromValue(attributeName, valueProvider),
                 String.format("Attribute %s was added to class %s", attributeName, targetClass.getSimpleName())
         );
     }
 
     protected void attributeRemoved(V upModelVersion, String attributeName, Function<ObjectNode, Object> valueProvider) {
+        attributeRemoved(upModelVersion, attributeName, null, valueProvider);
+    }
+
+    /**
+     * @param readAttributes the attributes read by the value provider, letting conversions for a
+     *                       {@link #convertDown(ObjectNode, Comparable, Comparable, JsonNodeFactory, Set) projection}
+     *                       skip the value provider when the attribute isn't needed
+     */
+    protected void attributeRemoved(V upModelVersion, String attributeName, Set<String> readAttributes, Function<ObjectNode, Object> valueProvider) {
         addConverter(
                 upModelVersion,
-                setFromValue(attributeName, valueProvider),
+                new Operation(OperationKind.REMOVED, attributeName, null, readAttributes, setFromValue(attributeName, valueProvider)),
                 (modelData, nodeFactory) -> {
                     modelData.remove(attributeName);
                     return modelData;
@@ -83,12 +140,21 @@ public abstract class AbstractVersionConverter<V extends Comparable<V>> implemen
     }
 
     protected void attributeModified(V upModelVersion, String attributeName, BiFunction<ObjectNode, JsonNode, Object> valueDownModifier, BiFunction<ObjectNode, JsonNode, Object> valueUpModifier) {
+        attributeModified(upModelVersion, attributeName, null, valueDownModifier, valueUpModifier);
+    }
+
+    /**
+     * @param readAttributes the attributes read by the modifiers besides the modified one, letting conversions for a
+     *                       {@link #convertDown(ObjectNode, Comparable, Comparable, JsonNodeFactory, Set) projection}
+     *                       skip the modifiers when the attribute isn't needed
+     */
+    protected void attributeModified(V upModelVersion, String attributeName, Set<String> readAttributes, BiFunction<ObjectNode, JsonNode, Object> valueDownModifier, BiFunction<ObjectNode, JsonNode, Object> valueUpModifier) {
         addConverter(
                 upModelVersion,
-                setFromValue(attributeName, (modelData) -> {
+                new Operation(OperationKind.MODIFIED, attributeName, null, readAttributes == null ? null : union(readAttributes, attributeName), setFromValue(attributeName, (modelData) -> {
                     JsonNode jsonNode = modelData.get(attributeName);
                     return valueDownModifier.apply(modelData, jsonNode);
-                }),
+                })),
                 setFromValue(attributeName, (modelData) -> {
                     JsonNode jsonNode = modelData.get(attributeName);
                     return valueUpModifier.apply(modelData, jsonNode);
@@ -97,6 +163,12 @@ public abstract class AbstractVersionConverter<V extends Comparable<V>> implemen
         );
     }
 
+    private static Set<String> union(Set<String> attributes, String attribute) {
+        Set<String> result = new HashSet<>(attributes);
+        result.add(attribute);
+        return result;
+    }
+
     private BiFunction<ObjectNode, JsonNodeFactory, ObjectNode> setFromValue(String attributeName, Function<ObjectNode, Object> defaultValueSupplier) {
         return (ObjectNode modelData, JsonNodeFactory nodeFactory) -> {
             Object defaultValue = defaultValueSupplier.apply(modelData);
@@ -134,12 +206,12 @@ public abstract class AbstractVersionConverter<V extends Comparable<V>> implemen
     protected void attributeRenamed(V upModelVersion, String oldAttributeName, String newAttributeName) {
         addConverter(
                 upModelVersion,
-                (modelData, nodeFactory) -> {
+                new Operation(OperationKind.RENAMED, oldAttributeName, newAttributeName, Collections.singleton(newAttributeName), (modelData, nodeFactory) -> {
                     JsonNode jsonNode = modelData.get(newAttributeName);
                     modelData.set(oldAttributeName, jsonNode);
                     modelData.remove(newAttributeName);
                     return modelData;
-                },
+                }),
                 (modelData, nodeFactory) -> {
                     JsonNode jsonNode = modelData.get(oldAttributeName);
                     modelData.set(newAttributeName, jsonNode);
@@ -150,32 +222,367 @@ public abstract class AbstractVersionConverter<V extends Comparable<V>> implemen
         );
     }
 
-    // TODO use for something or remove !!!
+    /**
+     * The attributes are moved into a new object attribute, for example street and city into an address. Converting
+     * down moves them back out of the object. Attributes missing from the data are left out.
+     */
+    protected void attributesNested(V upModelVersion, String objectAttributeName, String... attributeNames) {
+        List<String> names = List.of(attributeNames);
+        addConverter(
+                upModelVersion,
+                new Operation(OperationKind.NESTED, objectAttributeName, null, union(Set.copyOf(names), objectAttributeName), Collections.singleton(objectAttributeName), flatten(objectAttributeName, names)),
+                nest(objectAttributeName, names),
+                String.format("Attributes %s on class %s were nested into %s", names, targetClass.getSimpleName(), objectAttributeName)
+        );
+    }
+
+    /**
+     * The attributes of an object attribute are moved out of it, for example street and city out of an address.
+     * Converting down moves them back into a new object. Other attributes of the object are dropped.
+     */
+    protected void attributesFlattened(V upModelVersion, String objectAttributeName, String... attributeNames) {
+        List<String> names = List.of(attributeNames);
+        addConverter(
+                upModelVersion,
+                new Operation(OperationKind.FLATTENED, objectAttributeName, null, union(Set.copyOf(names), objectAttributeName), Set.copyOf(names), nest(objectAttributeName, names)),
+                flatten(objectAttributeName, names),
+                String.format("Attributes %s on class %s were flattened out of %s", names, targetClass.getSimpleName(), objectAttributeName)
+        );
+    }
+
+    /**
+     * A text attribute is split on a separator into new attributes, for example name into firstName and lastName.
+     * The last new attribute gets the remainder of the text, and attributes without a part are set to null.
+     * Converting down joins the new attributes with the separator.
+     */
+    protected void attributeSplit(V upModelVersion, String attributeName, String separator, String... newAttributeNames) {
+        List<String> names = List.of(newAttributeNames);
+        addConverter(
+                upModelVersion,
+                new Operation(OperationKind.SPLIT, attributeName, null, union(Set.copyOf(names), attributeName), Set.copyOf(names), join(names, separator, attributeName)),
+                split(attributeName, separator, names),
+                String.format("Attribute %s on class %s was split into %s", attributeName, targetClass.getSimpleName(), names)
+        );
+    }
+
+    /**
+     * Text attributes are joined with a separator into a new attribute, for example firstName and lastName into name.
+     * Converting down splits the new attribute on the separator, the last attribute getting the remainder of the text.
+     */
+    protected void attributesMerged(V upModelVersion, String newAttributeName, String separator, String... attributeNames) {
+        List<String> names = List.of(attributeNames);
+        addConverter(
+                upModelVersion,
+                new Operation(OperationKind.MERGED, newAttributeName, null, union(Set.copyOf(names), newAttributeName), Collections.singleton(newAttributeName), split(newAttributeName, separator, names)),
+                join(names, separator, newAttributeName),
+                String.format("Attributes %s on class %s were merged into %s", names, targetClass.getSimpleName(), newAttributeName)
+        );
+    }
+
+    private static BiFunction<ObjectNode, JsonNodeFactory, ObjectNode> nest(String objectAttributeName, List<String> attributeNames) {
+        return (modelData, nodeFactory) -> {
+            ObjectNode object = nodeFactory.objectNode();
+            for (String attributeName : attributeNames) {
+                JsonNode value = modelData.remove(attributeName);
+                if (value != null) {
+                    object.set(attributeName, value);
+                }
+            }
+            modelData.set(objectAttributeName, object);
+            return modelData;
+        };
+    }
+
+    private static BiFunction<ObjectNode, JsonNodeFactory, ObjectNode> flatten(String objectAttributeName, List<String> attributeNames) {
+        return (modelData, nodeFactory) -> {
+            JsonNode object = modelData.remove(objectAttributeName);
+            if (object instanceof ObjectNode) {
+                for (String attributeName : attributeNames) {
+                    JsonNode value = ((ObjectNode) object).remove(attributeName);
+                    if (value != null) {
+                        modelData.set(attributeName, value);
+                    }
+                }
+            }
+            return modelData;
+        };
+    }
+
+    private static BiFunction<ObjectNode, JsonNodeFactory, ObjectNode> split(String attributeName, String separator, List<String> newAttributeNames) {
+        return (modelData, nodeFactory) -> {
+            JsonNode value = modelData.remove(attributeName);
+            if (value == null) {
+                return modelData;
+            }
+            String text = value.isNull() ? null : value.asText();
+            int start = 0;
+            for (int i = 0; i < newAttributeNames.size(); i++) {
+                if (text == null || start > text.length()) {
+                    modelData.set(newAttributeNames.get(i), nodeFactory.nullNode());
+                    continue;
+                }
+                int end = i == newAttributeNames.size() - 1 ? -1 : text.indexOf(separator, start);
+                if (end < 0) {
+                    modelData.set(newAttributeNames.get(i), nodeFactory.textNode(text.substring(start)));
+                    start = text.length() + 1;
+                } else {
+                    modelData.set(newAttributeNames.get(i), nodeFactory.textNode(text.substring(start, end)));
+                    start = end + separator.length();
+                }
+            }
+            return modelData;
+        };
+    }
+
+    private static BiFunction<ObjectNode, JsonNodeFactory, ObjectNode> join(List<String> attributeNames, String separator, String newAttributeName) {
+        return (modelData, nodeFactory) -> {
+            StringBuilder text = null;
+            boolean present = false;
+            for (String attributeName : attributeNames) {
+                JsonNode value = modelData.remove(attributeName);
+                present |= value != null;
+                if (value != null && !value.isNull()) {
+                    if (text == null) {
+                        text = new StringBuilder();
+                    } else {
+                        text.append(separator);
+                    }
+                    text.append(value.asText());
+                }
+            }
+            if (present) {
+                modelData.set(newAttributeName, text == null ? nodeFactory.nullNode() : nodeFactory.textNode(text.toString()));
+            }
+            return modelData;
+        };
+    }
+
+    /**
+     * @return the operations applied by {@link #convertDown}, in the order they are applied
+     */
+    List<Operation> getDownOperations(V fromVersion, V toVersion) {
+        Snapshot<V> snapshot = snapshot();
+        List<Operation> result = new ArrayList<>();
+        for (int i = snapshot.indexAfter(fromVersion) - 1; i >= snapshot.indexAfter(toVersion); i--) {
+            result.addAll(Arrays.asList(snapshot.downOperations[i]));
+        }
+        return result;
+    }
+
+    /**
+     * @return descriptions of the registered conversions, in the order they were registered
+     */
     public List<String> describe() {
-        return Collections.unmodifiableList(descriptions);
+        return snapshot().descriptions;
     }
 
     @Override
     public void convertDown(ObjectNode modelData, V fromVersion, V toVersion, JsonNodeFactory nodeFactory) {
-        for (List<BiFunction<ObjectNode, JsonNodeFactory, ObjectNode>> converters : downConverters.subMap(fromVersion, toVersion).values()) {
-            for (BiFunction<ObjectNode, JsonNodeFactory, ObjectNode> converter : converters) {
+        Snapshot<V> snapshot = snapshot();
+        for (int i = snapshot.indexAfter(fromVersion) - 1; i >= snapshot.indexAfter(toVersion); i--) {
+            for (BiFunction<ObjectNode, JsonNodeFactory, ObjectNode> converter : snapshot.downConverters[i]) {
                 converter.apply(modelData, nodeFactory);
             }
         }
     }
 
+    /**
+     * Converts using only the operations that affect the kept attributes, directly or through the attributes read by
+     * other such operations. Operations reading attributes that weren't declared are assumed to read all of them.
+     */
+    @Override
+    public void convertDown(ObjectNode modelData, V fromVersion, V toVersion, JsonNodeFactory nodeFactory, Set<String> attributes) {
+        for (BiFunction<ObjectNode, JsonNodeFactory, ObjectNode> converter : projectionPlan(fromVersion, toVersion, attributes)) {
+            converter.apply(modelData, nodeFactory);
+        }
+        modelData.retain(attributes);
+    }
+
+    private BiFunction<ObjectNode, JsonNodeFactory, ObjectNode>[] projectionPlan(V fromVersion, V toVersion, Set<String> attributes) {
+        Snapshot<V> snapshot = snapshot();
+        // attributes that no conversion writes don't affect the plan
+        Set<String> written = new HashSet<>(attributes);
+        written.retainAll(snapshot.writtenAttributes);
+        if (written.isEmpty()) {
+            return new BiFunction[0];
+        }
+        List<Object> key = List.of(snapshot.rangeKey(fromVersion, toVersion), written);
+        BiFunction<ObjectNode, JsonNodeFactory, ObjectNode>[] cached = projectionPlans.get(key);
+        if (cached != null) {
+            return cached;
+        }
+        List<Operation> operations = getDownOperations(fromVersion, toVersion);
+        LinkedList<BiFunction<ObjectNode, JsonNodeFactory, ObjectNode>> plan = new LinkedList<>();
+        Set<String> needed = new HashSet<>(written);
+        boolean neededAll = false;
+        for (int i = operations.size() - 1; i >= 0; i--) {
+            Operation operation = operations.get(i);
+            if (neededAll || operation.writesAnyOf(needed)) {
+                plan.addFirst(operation.downConverter);
+                if (operation.readAttributes == null) {
+                    neededAll = true;
+                } else {
+                    needed.addAll(operation.readAttributes);
+                }
+            }
+        }
+        BiFunction<ObjectNode, JsonNodeFactory, ObjectNode>[] result = plan.toArray(new BiFunction[0]);
+        projectionPlans.put(key, result);
+        return result;
+    }
+
     @Override
     public void convertUp(ObjectNode modelData, V fromVersion, V toVersion, JsonNodeFactory nodeFactory) {
-        for (Map.Entry<V, LinkedList<BiFunction<ObjectNode, JsonNodeFactory, ObjectNode>>> entry : upConverters.tailMap(fromVersion).entrySet()) {
-            if (entry.getKey() == fromVersion) {
-                continue;
+        Snapshot<V> snapshot = snapshot();
+        for (int i = snapshot.indexAfter(fromVersion); i < snapshot.indexAfter(toVersion); i++) {
+            for (BiFunction<ObjectNode, JsonNodeFactory, ObjectNode> converter : snapshot.upConverters[i]) {
+                converter.apply(modelData, nodeFactory);
             }
-            if (entry.getKey().compareTo(toVersion) > 0) {
-                break;
+        }
+    }
+
+    /**
+     * Applies one conversion step at a time to all of the objects, using the steps of
+     * {@link #convertUp(ObjectNode, Comparable, Comparable, JsonNodeFactory)} collected into a plan that is
+     * reused for every batch converted between the same versions.
+     */
+    @Override
+    public void convertUp(List<ObjectNode> modelData, V fromVersion, V toVersion, JsonNodeFactory nodeFactory) {
+        for (BiFunction<ObjectNode, JsonNodeFactory, ObjectNode> converter : upPlan(fromVersion, toVersion)) {
+            for (ObjectNode objectData : modelData) {
+                converter.apply(objectData, nodeFactory);
             }
-            for (BiFunction<ObjectNode, JsonNodeFactory, ObjectNode> converter : entry.getValue()) {
-                converter.apply(modelData, nodeFactory);
+        }
+    }
+
+    private BiFunction<ObjectNode, JsonNodeFactory, ObjectNode>[] upPlan(V fromVersion, V toVersion) {
+        Snapshot<V> snapshot = snapshot();
+        return upPlans.computeIfAbsent(snapshot.rangeKey(fromVersion, toVersion), (key) -> {
+            List<BiFunction<ObjectNode, JsonNodeFactory, ObjectNode>> plan = new ArrayList<>();
+            for (int i = snapshot.indexAfter(fromVersion); i < snapshot.indexAfter(toVersion); i++) {
+                plan.addAll(Arrays.asList(snapshot.upConverters[i]));
+            }
+            return plan.toArray(new BiFunction[0]);
+        });
+    }
+
+    /**
+     * The registered conversions in arrays indexed by the version they convert up to, in ascending order.
+     */
+    private static class Snapshot<V extends Comparable<V>> {
+        private final List<V> versions;
+        private final BiFunction<ObjectNode, JsonNodeFactory, ObjectNode>[][] upConverters;
+        // in the order they are applied when converting down
+        private final BiFunction<ObjectNode, JsonNodeFactory, ObjectNode>[][] downConverters;
+        private final Operation[][] downOperations;
+        // written by any of the conversions
+        private final Set<String> writtenAttributes = new HashSet<>();
+        private final List<String> descriptions;
+
+        Snapshot(
+                SortedMap<V, LinkedList<BiFunction<ObjectNode, JsonNodeFactory, ObjectNode>>> upConverters,
+                SortedMap<V, LinkedList<BiFunction<ObjectNode, JsonNodeFactory, ObjectNode>>> downConverters,
+                SortedMap<V, LinkedList<Operation>> downOperations,
+                List<String> descriptions) {
+            this.versions = List.copyOf(upConverters.keySet());
+            this.upConverters = new BiFunction[versions.size()][];
+            this.downConverters = new BiFunction[versions.size()][];
+            this.downOperations = new Operation[versions.size()][];
+            for (int i = 0; i < versions.size(); i++) {
+                this.upConverters[i] = upConverters.get(versions.get(i)).toArray(new BiFunction[0]);
+                this.downConverters[i] = downConverters.get(versions.get(i)).toArray(new BiFunction[0]);
+                this.downOperations[i] = downOperations.get(versions.get(i)).toArray(new Operation[0]);
+                for (Operation operation : this.downOperations[i]) {
+                    writtenAttributes.addAll(operation.writtenAttributes);
+                }
+            }
+            this.descriptions = List.copyOf(descriptions);
+        }
+
+        /**
+         * @return a key identifying the conversion steps between the given versions, in either direction
+         */
+        int rangeKey(V fromVersion, V toVersion) {
+            return indexAfter(fromVersion) * (versions.size() + 1) + indexAfter(toVersion);
+        }
+
+        /**
+         * @return index of the first version newer than the given version
+         */
+        int indexAfter(V version) {
+            int low = 0;
+            int high = versions.size();
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (versions.get(middle).compareTo(version) <= 0) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+    }
+
+    enum OperationKind {
+        ADDED, REMOVED, MODIFIED, RENAMED, NESTED, FLATTENED, SPLIT, MERGED
+    }
+
+    /**
+     * Description of a registered conversion, for converting without a tree when the operation allows it.
+     */
+    static class Operation {
+        private final OperationKind kind;
+        private final String attributeName;
+        private final String newAttributeName;
+        private final Set<String> writtenAttributes;
+        // null when unknown
+        private final Set<String> readAttributes;
+        private final BiFunction<ObjectNode, JsonNodeFactory, ObjectNode> downConverter;
+
+        Operation(OperationKind kind, String attributeName, String newAttributeName, Set<String> readAttributes,
+                  BiFunction<ObjectNode, JsonNodeFactory, ObjectNode> downConverter) {
+            this(kind, attributeName, newAttributeName,
+                    newAttributeName == null ? Collections.singleton(attributeName) : union(Collections.singleton(attributeName), newAttributeName), readAttributes,
+                    downConverter);
+        }
+
+        Operation(OperationKind kind, String attributeName, String newAttributeName, Set<String> writtenAttributes, Set<String> readAttributes,
+                  BiFunction<ObjectNode, JsonNodeFactory, ObjectNode> downConverter) {
+            this.kind = kind;
+            this.attributeName = attributeName;
+            this.newAttributeName = newAttributeName;
+            this.writtenAttributes = writtenAttributes;
+            this.readAttributes = readAttributes;
+            this.downConverter = downConverter;
+        }
+
+        OperationKind getKind() {
+            return kind;
+        }
+
+        /**
+         * @return name of the attribute, the old name for renamed attributes and the object or the joined attribute
+         * of structural operations
+         */
+        String getAttributeName() {
+            return attributeName;
+        }
+
+        /**
+         * @return new name of renamed attributes
+         */
+        String getNewAttributeName() {
+            return newAttributeName;
+        }
+
+        private boolean writesAnyOf(Set<String> attributes) {
+            for (String attribute : writtenAttributes) {
+                if (attributes.contains(attribute)) {
+                    return true;
+                }
             }
+            return false;
         }
     }
 }
@@ -0,0 +1,274 @@
+/*
+ * The MIT License
+ * Copyright © 2020 Patrik Lilja
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package se.plilja.jacksonversioning;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Chooses between converting a tree and streaming with version specific bean serializers and deserializers, per
+ * type, version and direction. Both engines are timed for a warm-up window, after which the faster one is used.
+ * Types whose converters can't be expressed as version specific beans, because they add or modify attributes,
+ * always use the tree.
+ * <p>
+ * While warming up, values are written with the tree, and both engines are timed writing the value to a buffer.
+ * Streaming is only chosen for serialization if it wrote the same value as the tree for every value of the warm-up,
+ * the fields of objects possibly in another order.
+ * Values read are buffered before timing either engine on the buffered input, which gives the same value.
+ *
+ * @see VersioningModule#withAdaptiveConversion(AdaptiveConversion)
+ */
+public class AdaptiveConversion {
+    public enum Engine {
+        TREE, STREAMING
+    }
+
+    public enum Direction {
+        SERIALIZATION, DESERIALIZATION
+    }
+
+    private final int warmUpSamples;
+    private final Map<List<Object>, Statistics> statistics = new ConcurrentHashMap<>();
+
+    public AdaptiveConversion() {
+        this(100);
+    }
+
+    /**
+     * @param warmUpSamples number of conversions timed with each engine before choosing
+     */
+    public AdaptiveConversion(int warmUpSamples) {
+        if (warmUpSamples < 1) {
+            throw new IllegalArgumentException("warmUpSamples must be positive");
+        }
+        this.warmUpSamples = warmUpSamples;
+    }
+
+    Statistics getStatistics(Class<?> type, Object version, Direction direction) {
+        return statistics.computeIfAbsent(List.of(type, version, direction), (key) -> new Statistics(type, version, direction));
+    }
+
+    /**
+     * @return whether the buffers hold the same value, the fields of objects compared regardless of their order
+     */
+    static boolean isSameOutput(TokenBuffer first, TokenBuffer second) throws IOException {
+        try (JsonParser firstParser = first.asParser(); JsonParser secondParser = second.asParser()) {
+            return Objects.equals(readValue(firstParser, firstParser.nextToken()), readValue(secondParser, secondParser.nextToken()));
+        }
+    }
+
+    /**
+     * @return the value starting at the token, objects as maps and other values as lists
+     */
+    private static Object readValue(JsonParser parser, JsonToken token) throws IOException {
+        if (token == null) {
+            return null;
+        }
+        switch (token) {
+            case START_OBJECT:
+                Map<String, Object> fields = new HashMap<>();
+                boolean duplicate = false;
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String name = parser.getCurrentName();
+                    duplicate |= fields.put(name, readValue(parser, parser.nextToken())) != null;
+                }
+                // output with duplicate fields is never the same as any other
+                return duplicate ? new Object() : fields;
+            case START_ARRAY:
+                List<Object> elements = new ArrayList<>();
+                for (JsonToken element = parser.nextToken(); element != JsonToken.END_ARRAY; element = parser.nextToken()) {
+                    elements.add(readValue(parser, element));
+                }
+                return elements;
+            case VALUE_EMBEDDED_OBJECT:
+                return List.of(token, new EmbeddedValue(parser.getEmbeddedObject()));
+            default:
+                return List.of(token, parser.getText());
+        }
+    }
+
+    /**
+     * @return the engines chosen so far, and the mean time of a conversion with each engine during the warm-up
+     */
+    public List<Decision> getDecisions() {
+        List<Decision> result = new ArrayList<>();
+        for (Statistics stats : statistics.values()) {
+            Engine engine = stats.engine;
+            if (engine != null) {
+                result.add(new Decision(stats.type, stats.version, stats.direction, engine, stats.meanNanos(Engine.TREE), stats.meanNanos(Engine.STREAMING)));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return the engine chosen for the type, version and direction, or null if none has been chosen yet
+     */
+    public Engine getEngine(Class<?> type, Object version, Direction direction) {
+        Statistics stats = statistics.get(List.of(type, version, direction));
+        return stats == null ? null : stats.engine;
+    }
+
+    private static class EmbeddedValue {
+        private final Object value;
+
+        EmbeddedValue(Object value) {
+            this.value = value;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof EmbeddedValue && Objects.deepEquals(value, ((EmbeddedValue) o).value);
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.deepHashCode(new Object[]{value});
+        }
+    }
+
+    class Statistics {
+        private final Class<?> type;
+        private final Object version;
+        private final Direction direction;
+        private final AtomicLong samples = new AtomicLong();
+        private final AtomicLong treeNanos = new AtomicLong();
+        private final AtomicLong treeSamples = new AtomicLong();
+        private final AtomicLong streamingNanos = new AtomicLong();
+        private final AtomicLong streamingSamples = new AtomicLong();
+        private volatile Engine engine;
+
+        Statistics(Class<?> type, Object version, Direction direction) {
+            this.type = type;
+            this.version = version;
+            this.direction = direction;
+        }
+
+        /**
+         * @param streamingPossible whether a version specific bean can be derived for the type and version
+         */
+        Engine choose(boolean streamingPossible) {
+            Engine result = engine;
+            if (result != null) {
+                return result;
+            }
+            if (!streamingPossible) {
+                engine = Engine.TREE;
+                return Engine.TREE;
+            }
+            // alternate between the engines while warming up
+            return samples.getAndIncrement() % 2 == 0 ? Engine.TREE : Engine.STREAMING;
+        }
+
+        boolean isChosen() {
+            return engine != null;
+        }
+
+        /**
+         * Chooses the tree, when streaming has written other output than the tree.
+         */
+        void rejectStreaming() {
+            engine = Engine.TREE;
+        }
+
+        void record(Engine used, long nanos) {
+            if (used == Engine.TREE) {
+                treeNanos.addAndGet(nanos);
+                treeSamples.incrementAndGet();
+            } else {
+                streamingNanos.addAndGet(nanos);
+                streamingSamples.incrementAndGet();
+            }
+            if (treeSamples.get() >= warmUpSamples && streamingSamples.get() >= warmUpSamples && engine == null) {
+                engine = meanNanos(Engine.STREAMING) <= meanNanos(Engine.TREE) ? Engine.STREAMING : Engine.TREE;
+            }
+        }
+
+        private long meanNanos(Engine of) {
+            long count = of == Engine.TREE ? treeSamples.get() : streamingSamples.get();
+            long nanos = of == Engine.TREE ? treeNanos.get() : streamingNanos.get();
+            return count == 0 ? 0 : nanos / count;
+        }
+    }
+
+    public static class Decision {
+        private final Class<?> type;
+        private final Object version;
+        private final Direction direction;
+        private final Engine engine;
+        private final long meanTreeNanos;
+        private final long meanStreamingNanos;
+
+        Decision(Class<?> type, Object version, Direction direction, Engine engine, long meanTreeNanos, long meanStreamingNanos) {
+            this.type = type;
+            this.version = version;
+            this.direction = direction;
+            this.engine = engine;
+            this.meanTreeNanos = meanTreeNanos;
+            this.meanStreamingNanos = meanStreamingNanos;
+        }
+
+        public Class<?> getType() {
+            return type;
+        }
+
+        public Object getVersion() {
+            return version;
+        }
+
+        public Direction getDirection() {
+            return direction;
+        }
+
+        public Engine getEngine() {
+            return engine;
+        }
+
+        /**
+         * @return mean time of converting with a tree during the warm-up, 0 if the tree was chosen without warm-up
+         */
+        public long getMeanTreeNanos() {
+            return meanTreeNanos;
+        }
+
+        public long getMeanStreamingNanos() {
+            return meanStreamingNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s %s %s: %s", type.getSimpleName(), version, direction, engine);
+        }
+    }
+}
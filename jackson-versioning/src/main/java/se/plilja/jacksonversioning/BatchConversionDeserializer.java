@@ -0,0 +1,122 @@
+/*
+ * The MIT License
+ * Copyright © 2020 Patrik Lilja
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package se.plilja.jacksonversioning;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.BeanProperty;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.deser.ContextualDeserializer;
+import com.fasterxml.jackson.databind.deser.std.ContainerDeserializerBase;
+import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
+import com.fasterxml.jackson.databind.jsontype.TypeDeserializer;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Deserializer for collections and arrays of versioned objects that converts all elements as one batch
+ * before binding them. Elements are grouped by their version, see {@link VersionedDeserializer#convertBatch}. Each
+ * element is read within the {@link TreeLimits tree limits}, if any.
+ */
+class BatchConversionDeserializer extends StdDeserializer<Object> implements ContextualDeserializer {
+    private final JsonDeserializer<Object> delegate;
+    private final TreeLimits treeLimits;
+
+    /**
+     * @param treeLimits limits of each element, or null
+     */
+    BatchConversionDeserializer(JsonDeserializer<Object> delegate, JavaType type, TreeLimits treeLimits) {
+        super(type);
+        this.delegate = delegate;
+        this.treeLimits = treeLimits;
+    }
+
+    @Override
+    public JsonDeserializer<?> createContextual(DeserializationContext context, BeanProperty property) throws JsonMappingException {
+        JsonDeserializer<Object> contextual = (JsonDeserializer<Object>) context.handleSecondaryContextualization(delegate, property, getValueType());
+        return contextual == delegate ? this : new BatchConversionDeserializer(contextual, getValueType(), treeLimits);
+    }
+
+    @Override
+    public boolean isCachable() {
+        return delegate.isCachable();
+    }
+
+    @Override
+    public Object deserializeWithType(JsonParser parser, DeserializationContext context, TypeDeserializer typeDeserializer) throws IOException {
+        return delegate.deserializeWithType(parser, context, typeDeserializer);
+    }
+
+    @Override
+    public Object deserialize(JsonParser parser, DeserializationContext context, Object intoValue) throws IOException {
+        return delegate.deserialize(parser, context, intoValue);
+    }
+
+    @Override
+    public Object deserialize(JsonParser parser, DeserializationContext context) throws IOException {
+        // the content deserializer of the delegate, it's not versioned when the property has a content deserializer of its own
+        JsonDeserializer<Object> contentDeserializer = delegate instanceof ContainerDeserializerBase ? ((ContainerDeserializerBase<?>) delegate).getContentDeserializer() : null;
+        if (!parser.isExpectedStartArrayToken()
+                || parser instanceof VersionedTreeTraversingParser // elements have already been converted
+                || !(contentDeserializer instanceof VersionedDeserializer)) {
+            return delegate.deserialize(parser, context);
+        }
+
+        ArrayNode array = context.getNodeFactory().arrayNode();
+        List<ObjectNode> elements = new ArrayList<>();
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+            if (parser.currentToken() == null) {
+                throw JsonMappingException.from(parser, "Unexpected end-of-input when reading array");
+            }
+            JsonNode element = readElement(parser, context, contentDeserializer.handledType());
+            if (element instanceof ObjectNode) {
+                elements.add((ObjectNode) element);
+            }
+            array.add(element);
+        }
+        Set<JsonNode> convertedNodes = Collections.newSetFromMap(new IdentityHashMap<>());
+        ((VersionedDeserializer<?, ?>) contentDeserializer).convertBatch(elements, context, convertedNodes);
+
+        JsonParser convertedParser = new VersionedTreeTraversingParser(array, convertedNodes, parser.getCodec());
+        convertedParser.nextToken();
+        return delegate.deserialize(convertedParser, context);
+    }
+
+    private JsonNode readElement(JsonParser parser, DeserializationContext context, Class<?> elementType) throws IOException {
+        if (treeLimits != null && parser.currentToken() == JsonToken.START_OBJECT) {
+            return context.readTree(treeLimits.limit(parser, elementType));
+        }
+        return context.readTree(parser);
+    }
+}
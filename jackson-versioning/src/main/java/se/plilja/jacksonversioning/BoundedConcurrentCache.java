@@ -0,0 +1,84 @@
+/*
+ * The MIT License
+ * Copyright © 2020 Patrik Lilja
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package se.plilja.jacksonversioning;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Thread safe map holding at most a given number of entries, for caches read on every call. Reads don't lock, and
+ * threads putting entries at the same time may exceed the size by one entry each.
+ * <p>
+ * Entries are put in a current generation, and when it's full it replaces the previous generation, whose entries are
+ * dropped. Entries read from the previous generation are moved to the current one, so entries in use are kept.
+ */
+class BoundedConcurrentCache<K, V> {
+    private final int generationSize;
+    private volatile Map<K, V> current = new ConcurrentHashMap<>();
+    private volatile Map<K, V> previous = Collections.emptyMap();
+
+    /**
+     * @param maxSize maximum number of entries, at least two
+     */
+    BoundedConcurrentCache(int maxSize) {
+        if (maxSize < 2) {
+            throw new IllegalArgumentException(String.format("Max size must be at least 2, was %d", maxSize));
+        }
+        this.generationSize = maxSize / 2;
+    }
+
+    V get(K key) {
+        V value = current.get(key);
+        if (value == null) {
+            value = previous.get(key);
+            if (value != null) {
+                put(key, value);
+            }
+        }
+        return value;
+    }
+
+    void put(K key, V value) {
+        Map<K, V> entries = current;
+        if (entries.size() >= generationSize && !entries.containsKey(key)) {
+            entries = newGeneration(entries);
+        }
+        entries.put(key, value);
+    }
+
+    private synchronized Map<K, V> newGeneration(Map<K, V> full) {
+        if (current == full) {
+            previous = full;
+            current = new ConcurrentHashMap<>();
+        }
+        return current;
+    }
+
+    /**
+     * @return number of entries, an entry being moved between the generations may be counted twice
+     */
+    int size() {
+        return current.size() + previous.size();
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * The MIT License
+ * Copyright © 2020 Patrik Lilja
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package se.plilja.jacksonversioning;
+
+import com.fasterxml.jackson.databind.DatabindContext;
+import com.fasterxml.jackson.databind.cfg.ContextAttributes;
+
+import java.util.Map;
+
+/**
+ * Attributes of a context converting a single element of a parallel collection, falling back to the attributes of
+ * the calling context. The calling context doesn't change its attributes while the elements are converted.
+ */
+class CallerAttributes extends ContextAttributes {
+    private final DatabindContext caller;
+    private ContextAttributes own = ContextAttributes.getEmpty();
+
+    CallerAttributes(DatabindContext caller) {
+        this.caller = caller;
+    }
+
+    @Override
+    public ContextAttributes withSharedAttribute(Object key, Object value) {
+        own = own.withSharedAttribute(key, value);
+        return this;
+    }
+
+    @Override
+    public ContextAttributes withSharedAttributes(Map<?, ?> attributes) {
+        own = own.withSharedAttributes(attributes);
+        return this;
+    }
+
+    @Override
+    public ContextAttributes withoutSharedAttribute(Object key) {
+        own = own.withoutSharedAttribute(key);
+        return this;
+    }
+
+    @Override
+    public Object getAttribute(Object key) {
+        Object value = own.getAttribute(key);
+        return value != null ? value : caller.getAttribute(key);
+    }
+
+    @Override
+    public ContextAttributes withPerCallAttribute(Object key, Object value) {
+        own = own.withPerCallAttribute(key, value);
+        return this;
+    }
+}
@@ -0,0 +1,321 @@
+/*
+ * The MIT License
+ * Copyright © 2020 Patrik Lilja
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package se.plilja.jacksonversioning;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.util.JsonParserDelegate;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Bounded cache of the converted data of {@link JsonVersioned} values read in old versions, keyed by the type, the
+ * version read and a SHA-256 hash of the tokens read. Values sent again, for example by clients retrying a request,
+ * are bound from a copy of the cached data without converting it again. The least recently used entries are evicted
+ * when the size of the cached data exceeds the limit.
+ *
+ * @see VersioningModule#withConvertedInputCache(ConvertedInputCache)
+ */
+public class ConvertedInputCache {
+    private final WeightedLruCache<Key, Entry> cache;
+
+    /**
+     * @param maxBytes maximum total size of the cached data, estimated as utf-8 encoded json
+     */
+    public ConvertedInputCache(long maxBytes) {
+        this.cache = new WeightedLruCache<>(maxBytes, (entry) -> entry.size);
+    }
+
+    /**
+     * @return a parser hashing the value starting at the current token of the given parser as it is read
+     */
+    HashingParser hashing(JsonParser parser) throws IOException {
+        HashingParser result = new HashingParser(parser);
+        JsonToken token = parser.currentToken();
+        if (token == JsonToken.FIELD_NAME) {
+            // positioned inside an object whose start has already been read
+            result.digest.update((byte) JsonToken.START_OBJECT.id());
+        }
+        if (token != null) {
+            result.update(token);
+        }
+        return result;
+    }
+
+    /**
+     * @param parser the parser that the value was read with, which is completed by this call
+     */
+    Key key(Class<?> type, Object version, HashingParser parser) {
+        return new Key(type, version, parser.digest.digest());
+    }
+
+    Entry get(Key key) {
+        return cache.get(key);
+    }
+
+    Entry put(Key key, ObjectNode converted, Set<JsonNode> convertedNodes) {
+        Entry entry = new Entry(converted, convertedNodes, estimateSize(converted));
+        cache.put(key, entry);
+        return entry;
+    }
+
+    public void invalidateAll() {
+        cache.clear();
+    }
+
+    public long getHitCount() {
+        return cache.getHits();
+    }
+
+    public long getMissCount() {
+        return cache.getMisses();
+    }
+
+    public long getEvictionCount() {
+        return cache.getEvictions();
+    }
+
+    /**
+     * @return total size of the cached data, estimated in utf-8 encoded bytes of json
+     */
+    public long getSizeInBytes() {
+        return cache.getWeight();
+    }
+
+    public int getEntryCount() {
+        return cache.size();
+    }
+
+    // estimated from the json text, which is exact for ascii content
+    private static long estimateSize(JsonNode node) {
+        if (node.isObject()) {
+            long size = 1 + Math.max(node.size(), 1);
+            Iterator<Map.Entry<String, JsonNode>> fields = node.fields();
+            while (fields.hasNext()) {
+                Map.Entry<String, JsonNode> field = fields.next();
+                size += field.getKey().length() + 3 + estimateSize(field.getValue());
+            }
+            return size;
+        } else if (node.isArray()) {
+            long size = 1 + Math.max(node.size(), 1);
+            for (JsonNode element : node) {
+                size += estimateSize(element);
+            }
+            return size;
+        } else if (node.isTextual()) {
+            return node.textValue().length() + 2;
+        } else {
+            return node.asText().length();
+        }
+    }
+
+    static class Entry {
+        private final ObjectNode converted;
+        private final Set<JsonNode> convertedNodes;
+        private final long size;
+
+        Entry(ObjectNode converted, Set<JsonNode> convertedNodes, long size) {
+            this.converted = converted;
+            this.convertedNodes = convertedNodes;
+            this.size = size;
+        }
+
+        ObjectNode getConverted() {
+            return converted;
+        }
+
+        Set<JsonNode> getConvertedNodes() {
+            return convertedNodes;
+        }
+
+        /**
+         * @return a deep copy of the data, with the copies of the converted nodes marked as converted
+         */
+        Entry copy() {
+            Set<JsonNode> copiedConvertedNodes = Collections.newSetFromMap(new IdentityHashMap<>());
+            return new Entry((ObjectNode) copy(converted, copiedConvertedNodes), copiedConvertedNodes, size);
+        }
+
+        private JsonNode copy(JsonNode node, Set<JsonNode> copiedConvertedNodes) {
+            JsonNode result;
+            if (node.isObject()) {
+                ObjectNode object = ((ObjectNode) node).objectNode();
+                Iterator<Map.Entry<String, JsonNode>> fields = node.fields();
+                while (fields.hasNext()) {
+                    Map.Entry<String, JsonNode> field = fields.next();
+                    object.set(field.getKey(), copy(field.getValue(), copiedConvertedNodes));
+                }
+                result = object;
+            } else if (node.isArray()) {
+                ArrayNode array = ((ArrayNode) node).arrayNode(node.size());
+                for (JsonNode element : node) {
+                    array.add(copy(element, copiedConvertedNodes));
+                }
+                result = array;
+            } else {
+                return node;
+            }
+            if (convertedNodes.contains(node)) {
+                copiedConvertedNodes.add(result);
+            }
+            return result;
+        }
+    }
+
+    static class Key {
+        private final Class<?> type;
+        private final Object version;
+        private final byte[] contentHash;
+
+        Key(Class<?> type, Object version, byte[] contentHash) {
+            this.type = type;
+            this.version = version;
+            this.contentHash = contentHash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Key key = (Key) o;
+            return type.equals(key.type) && version.equals(key.version) && Arrays.equals(contentHash, key.contentHash);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * Objects.hash(type, version) + Arrays.hashCode(contentHash);
+        }
+    }
+
+    /**
+     * Hashes each token as it is read, with the text of names and values as read from the input.
+     */
+    static class HashingParser extends JsonParserDelegate {
+        private final MessageDigest digest;
+        private byte[] buffer = new byte[64];
+
+        private HashingParser(JsonParser parser) {
+            super(parser);
+            try {
+                digest = MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        @Override
+        public JsonToken nextToken() throws IOException {
+            JsonToken token = delegate.nextToken();
+            if (token != null) {
+                update(token);
+            }
+            return token;
+        }
+
+        @Override
+        public JsonToken nextValue() throws IOException {
+            JsonToken token = nextToken();
+            if (token == JsonToken.FIELD_NAME) {
+                token = nextToken();
+            }
+            return token;
+        }
+
+        @Override
+        public JsonParser skipChildren() throws IOException {
+            // skipped through this parser so that the skipped tokens are hashed
+            if (currentToken() == JsonToken.START_OBJECT || currentToken() == JsonToken.START_ARRAY) {
+                int open = 1;
+                while (open > 0) {
+                    JsonToken token = nextToken();
+                    if (token == null) {
+                        break;
+                    } else if (token.isStructStart()) {
+                        open++;
+                    } else if (token.isStructEnd()) {
+                        open--;
+                    }
+                }
+            }
+            return this;
+        }
+
+        private void update(JsonToken token) throws IOException {
+            digest.update((byte) token.id());
+            if (token == JsonToken.VALUE_EMBEDDED_OBJECT) {
+                Object value = delegate.getEmbeddedObject();
+                if (value instanceof byte[]) {
+                    update((byte[]) value);
+                } else {
+                    update(String.valueOf(value).getBytes(StandardCharsets.UTF_8));
+                }
+            } else if (token == JsonToken.FIELD_NAME || token.isScalarValue()) {
+                char[] text = delegate.getTextCharacters();
+                if (text == null) {
+                    updateLength(-1);
+                } else {
+                    update(text, delegate.getTextOffset(), delegate.getTextLength());
+                }
+            }
+        }
+
+        // length prefixed, so that consecutive values can't be confused with each other
+        private void update(byte[] bytes) {
+            updateLength(bytes.length);
+            digest.update(bytes);
+        }
+
+        private void update(char[] chars, int offset, int length) {
+            updateLength(length);
+            if (buffer.length < length * 2) {
+                buffer = new byte[length * 2];
+            }
+            for (int i = 0; i < length; i++) {
+                char c = chars[offset + i];
+                buffer[2 * i] = (byte) (c >> 8);
+                buffer[2 * i + 1] = (byte) c;
+            }
+            digest.update(buffer, 0, length * 2);
+        }
+
+        private void updateLength(int length) {
+            digest.update((byte) (length >> 24));
+            digest.update((byte) (length >> 16));
+            digest.update((byte) (length >> 8));
+            digest.update((byte) length);
+        }
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * The MIT License
+ * Copyright © 2020 Patrik Lilja
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package se.plilja.jacksonversioning;
+
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.SerializationConfig;
+
+import java.util.Objects;
+
+/**
+ * Bounded cache of the encoded json of {@link CacheableVersioned} values converted to a given version. Cache
+ * hits are written as raw values without serializing or converting the value. The least recently used
+ * entries are evicted when the size of the cached json exceeds the limit.
+ * <p>
+ * Only used with a {@link VersionResolutionStrategy} that is independent of the model data, and only
+ * when writing json without a pretty printer or an active view. The json is cached per serialization config, so
+ * that mappers and writers configured differently don't share it, and per serializer, so that properties with
+ * annotations changing how the value is written don't share it. Writers configured anew for every write, for
+ * example with per call filters, don't get any cache hits.
+ *
+ * @see VersioningModule#withConvertedOutputCache(ConvertedOutputCache)
+ */
+public class ConvertedOutputCache {
+    private final WeightedLruCache<Key, SerializedString> cache;
+
+    /**
+     * @param maxBytes maximum total size of the cached json, in utf-8 encoded bytes
+     */
+    public ConvertedOutputCache(long maxBytes) {
+        this.cache = new WeightedLruCache<>(maxBytes, (json) -> json.asUnquotedUTF8().length);
+    }
+
+    SerializedString get(Class<?> type, Object cacheKey, Object version, JsonSerializer<?> serializer, SerializationConfig config, int generatorFeatures) {
+        return cache.get(new Key(type, cacheKey, version, serializer, config, generatorFeatures));
+    }
+
+    void put(Class<?> type, Object cacheKey, Object version, JsonSerializer<?> serializer, SerializationConfig config, int generatorFeatures, SerializedString json) {
+        // encoded up front by the weigher, utf-8 generators write the bytes the string keeps
+        cache.put(new Key(type, cacheKey, version, serializer, config, generatorFeatures), json);
+    }
+
+    /**
+     * Remove all versions of the values of the given type with the given cache key.
+     */
+    public void invalidate(Class<?> type, Object cacheKey) {
+        cache.removeIf((key) -> key.type.equals(type) && key.cacheKey.equals(cacheKey));
+    }
+
+    /**
+     * Remove all versions of all values of the given type.
+     */
+    public void invalidateAll(Class<?> type) {
+        cache.removeIf((key) -> key.type.equals(type));
+    }
+
+    public void invalidateAll() {
+        cache.clear();
+    }
+
+    public long getHitCount() {
+        return cache.getHits();
+    }
+
+    public long getMissCount() {
+        return cache.getMisses();
+    }
+
+    public long getEvictionCount() {
+        return cache.getEvictions();
+    }
+
+    /**
+     * @return total size of the cached json, in utf-8 encoded bytes
+     */
+    public long getSizeInBytes() {
+        return cache.getWeight();
+    }
+
+    public int getEntryCount() {
+        return cache.size();
+    }
+
+    private static class Key {
+        private final Class<?> type;
+        private final Object cacheKey;
+        private final Object version;
+        // compared by identity, contextual serializers differ by the annotations of the property they're created for
+        private final JsonSerializer<?> serializer;
+        // compared by identity, configs are immutable and shared by the writes of a mapper or writer
+        private final SerializationConfig config;
+        private final int generatorFeatures;
+
+        Key(Class<?> type, Object cacheKey, Object version, JsonSerializer<?> serializer, SerializationConfig config, int generatorFeatures) {
+            this.type = type;
+            this.cacheKey = cacheKey;
+            this.version = version;
+            this.serializer = serializer;
+            this.config = config;
+            this.generatorFeatures = generatorFeatures;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Key key = (Key) o;
+            return type.equals(key.type) && cacheKey.equals(key.cacheKey) && version.equals(key.version)
+                    && serializer == key.serializer && config == key.config && generatorFeatures == key.generatorFeatures;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(type, cacheKey, version, System.identityHashCode(serializer), System.identityHashCode(config), generatorFeatures);
+        }
+    }
+}
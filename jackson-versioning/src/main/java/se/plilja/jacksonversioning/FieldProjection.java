@@ -0,0 +1,80 @@
+/*
+ * The MIT License
+ * Copyright © 2020 Patrik Lilja
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package se.plilja.jacksonversioning;
+
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializerProvider;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The attributes requested of {@link JsonVersioned} types, for example from a {@code ?fields=id,make} request
+ * parameter. Only the requested attributes are written, and conversions of attributes that aren't requested
+ * are skipped when the converter supports it. Attribute names are those of the version written.
+ * <pre>
+ * FieldProjection.of(Car.class, "id", "make").applyTo(mapper.writer()).writeValueAsString(car);
+ * </pre>
+ */
+public final class FieldProjection {
+    private final Map<Class<?>, Set<String>> attributesByType;
+
+    private FieldProjection(Map<Class<?>, Set<String>> attributesByType) {
+        this.attributesByType = attributesByType;
+    }
+
+    public static FieldProjection of(Class<?> type, String... attributes) {
+        return new FieldProjection(new HashMap<>()).and(type, attributes);
+    }
+
+    /**
+     * @return a projection also limiting the attributes written of the given type
+     */
+    public FieldProjection and(Class<?> type, String... attributes) {
+        Map<Class<?>, Set<String>> result = new HashMap<>(attributesByType);
+        result.put(type, Set.copyOf(new LinkedHashSet<>(Arrays.asList(attributes))));
+        return new FieldProjection(result);
+    }
+
+    /**
+     * @return a writer writing with this projection
+     */
+    public ObjectWriter applyTo(ObjectWriter writer) {
+        return writer.withAttribute(FieldProjection.class, this);
+    }
+
+    /**
+     * @return the attributes to write of the type, or null to write all of them
+     */
+    public Set<String> getAttributes(Class<?> type) {
+        return attributesByType.get(type);
+    }
+
+    static Set<String> getAttributes(SerializerProvider provider, Class<?> type) {
+        FieldProjection projection = (FieldProjection) provider.getAttribute(FieldProjection.class);
+        return projection == null ? null : projection.getAttributes(type);
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * The MIT License
+ * Copyright © 2020 Patrik Lilja
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package se.plilja.jacksonversioning;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.databind.node.TextNode;
+
+/**
+ * Resolves the version of deserialized data from a field of the data itself, for example {@code "_v": "V3"},
+ * and writes that field first in serialized data. Suitable for persisted documents and messages.
+ * <p>
+ * The version field is read from the token stream while deserializing, only the fields preceding it are
+ * buffered. Data that is already of the current version is bound without building a tree. Data without the
+ * version field is considered to be of the current version.
+ * <p>
+ * The version field is not part of the model, it's removed before the data is bound to the model class.
+ */
+public class FieldVersionResolutionStrategy<V extends Comparable<V>> implements VersionResolutionStrategy<V> {
+    private final String fieldName;
+    private final VersionsDescription<V> versionsDescription;
+    private final V serializeToVersion;
+
+    /**
+     * Serialize to the current version.
+     */
+    public FieldVersionResolutionStrategy(String fieldName, VersionsDescription<V> versionsDescription) {
+        this(fieldName, versionsDescription, versionsDescription.getCurrentVersion());
+    }
+
+    public FieldVersionResolutionStrategy(String fieldName, VersionsDescription<V> versionsDescription, V serializeToVersion) {
+        this.fieldName = fieldName;
+        this.versionsDescription = versionsDescription;
+        this.serializeToVersion = serializeToVersion;
+    }
+
+    public String getFieldName() {
+        return fieldName;
+    }
+
+    @Override
+    public V getSerializeToVersion(ObjectNode object) {
+        return serializeToVersion;
+    }
+
+    @Override
+    public V getDeserializeToVersion(ObjectNode object) {
+        JsonNode value = object.get(fieldName);
+        return value == null || value.isNull() ? null : fromFieldValue(value.asText());
+    }
+
+    /**
+     * @param value text of the version field, numbers are given as text as well
+     * @throws IllegalArgumentException if the version is unknown
+     */
+    protected V fromFieldValue(String value) {
+        V result = versionsDescription.fromString(value);
+        if (result == null) {
+            throw new IllegalArgumentException(String.format("Unknown version %s in field %s", value, fieldName));
+        }
+        return result;
+    }
+
+    /**
+     * Value written to the version field, override to write versions as numbers.
+     */
+    protected JsonNode toFieldValue(V version) {
+        return TextNode.valueOf(version.toString());
+    }
+}
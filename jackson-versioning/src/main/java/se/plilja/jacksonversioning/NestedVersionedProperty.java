@@ -0,0 +1,117 @@
+/*
+ * The MIT License
+ * Copyright © 2020 Patrik Lilja
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package se.plilja.jacksonversioning;
+
+import com.fasterxml.jackson.databind.DeserializationConfig;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.cfg.MapperConfig;
+import com.fasterxml.jackson.databind.introspect.BeanPropertyDefinition;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Property of a versioned class whose value holds other versioned objects, either directly or
+ * as elements of a collection, array or map.
+ */
+class NestedVersionedProperty {
+    private final String name;
+    private final JavaType type;
+
+    private NestedVersionedProperty(String name, JavaType type) {
+        this.name = name;
+        this.type = type;
+    }
+
+    static List<NestedVersionedProperty> find(DeserializationConfig config, JavaType beanType) {
+        List<NestedVersionedProperty> result = new ArrayList<>();
+        for (BeanPropertyDefinition property : config.introspect(beanType).findProperties()) {
+            if (property.couldDeserialize() && mayContainVersioned(config, property.getPrimaryType())) {
+                result.add(new NestedVersionedProperty(property.getName(), property.getPrimaryType()));
+            }
+        }
+        return result;
+    }
+
+    void convertUp(ObjectNode modelData, DeserializationContext context, Set<JsonNode> convertedNodes) throws JsonMappingException {
+        forEachVersionedObject(modelData, context.getConfig(), (value, type) -> {
+            JsonDeserializer<Object> deserializer = context.findRootValueDeserializer(type);
+            if (deserializer instanceof VersionedDeserializer) {
+                ((VersionedDeserializer<?, ?>) deserializer).convertTree(value, context, convertedNodes);
+            }
+        });
+    }
+
+    /**
+     * Visit the data of the versioned objects held by this property of the model data, without descending
+     * into the visited objects.
+     */
+    void forEachVersionedObject(ObjectNode modelData, MapperConfig<?> config, VersionedObjectVisitor visitor) throws JsonMappingException {
+        forEachVersionedObject(modelData.get(name), type, config, visitor);
+    }
+
+    static void forEachVersionedObject(JsonNode value, JavaType type, MapperConfig<?> config, VersionedObjectVisitor visitor) throws JsonMappingException {
+        if (value == null || value.isNull()) {
+            return;
+        }
+        if (isVersioned(config, type)) {
+            if (value instanceof ObjectNode) {
+                visitor.visit((ObjectNode) value, type);
+            }
+        } else if (type.isReferenceType()) {
+            forEachVersionedObject(value, type.getContentType(), config, visitor);
+        } else if (type.isContainerType()) {
+            // collections and arrays as well as maps, for maps the elements are the map values
+            for (Iterator<JsonNode> it = value.elements(); it.hasNext(); ) {
+                forEachVersionedObject(it.next(), type.getContentType(), config, visitor);
+            }
+        }
+    }
+
+    static JsonVersioned findJsonVersioned(MapperConfig<?> config, JavaType type) {
+        return config.introspectClassAnnotations(type).getClassAnnotations().get(JsonVersioned.class);
+    }
+
+    private static boolean mayContainVersioned(MapperConfig<?> config, JavaType type) {
+        if (isVersioned(config, type)) {
+            return true;
+        }
+        JavaType contentType = type.getContentType();
+        return contentType != null && mayContainVersioned(config, contentType);
+    }
+
+    private static boolean isVersioned(MapperConfig<?> config, JavaType type) {
+        return findJsonVersioned(config, type) != null;
+    }
+
+    interface VersionedObjectVisitor {
+        void visit(ObjectNode modelData, JavaType type) throws JsonMappingException;
+    }
+}
@@ -0,0 +1,241 @@
+/*
+ * The MIT License
+ * Copyright © 2020 Patrik Lilja
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package se.plilja.jacksonversioning;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.ObjectCodec;
+import com.fasterxml.jackson.databind.BeanProperty;
+import com.fasterxml.jackson.databind.DeserializationConfig;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.InjectableValues;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.deser.ContextualDeserializer;
+import com.fasterxml.jackson.databind.deser.DefaultDeserializationContext;
+import com.fasterxml.jackson.databind.deser.std.CollectionDeserializer;
+import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
+import com.fasterxml.jackson.databind.jsontype.TypeDeserializer;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Deserializer for collections of versioned objects that converts and binds the elements of large
+ * arrays on an executor. The elements are read into token buffers by the calling thread, at most two
+ * chunks of elements are waiting for conversion at any time, and the result keeps the input order.
+ */
+class ParallelCollectionDeserializer extends StdDeserializer<Collection<Object>> implements ContextualDeserializer {
+    private final CollectionDeserializer delegate;
+    private final TypeDeserializer contentTypeDeserializer;
+    private final ParallelConversion parallelConversion;
+
+    ParallelCollectionDeserializer(CollectionDeserializer delegate, ParallelConversion parallelConversion) {
+        this(delegate, null, parallelConversion);
+    }
+
+    private ParallelCollectionDeserializer(CollectionDeserializer delegate, TypeDeserializer contentTypeDeserializer, ParallelConversion parallelConversion) {
+        super(delegate.getValueType());
+        this.delegate = delegate;
+        this.contentTypeDeserializer = contentTypeDeserializer;
+        this.parallelConversion = parallelConversion;
+    }
+
+    @Override
+    public JsonDeserializer<?> createContextual(DeserializationContext context, BeanProperty property) throws JsonMappingException {
+        CollectionDeserializer contextual = delegate.createContextual(context, property);
+        // the type deserializer the delegate resolved for the property, the property may declare its own type information
+        TypeDeserializer typeDeserializer = new ResolvedCollectionDeserializer(contextual).getValueTypeDeserializer();
+        return new ParallelCollectionDeserializer(contextual, typeDeserializer, parallelConversion);
+    }
+
+    @Override
+    public boolean isCachable() {
+        return delegate.isCachable();
+    }
+
+    @Override
+    public Object deserializeWithType(JsonParser parser, DeserializationContext context, TypeDeserializer typeDeserializer) throws IOException {
+        return delegate.deserializeWithType(parser, context, typeDeserializer);
+    }
+
+    @Override
+    public Collection<Object> deserialize(JsonParser parser, DeserializationContext context, Collection<Object> intoValue) throws IOException {
+        return delegate.deserialize(parser, context, intoValue);
+    }
+
+    @Override
+    public Collection<Object> deserialize(JsonParser parser, DeserializationContext context) throws IOException {
+        if (!parser.isExpectedStartArrayToken()
+                || parser instanceof VersionedTreeTraversingParser // elements have already been converted
+                || !(context instanceof DefaultDeserializationContext)
+                || ParallelConversion.isConvertingElement()) {
+            return delegate.deserialize(parser, context);
+        }
+
+        parser.nextToken();
+        List<TokenBuffer> firstElements = readElements(parser, context, Math.max(0, parallelConversion.getMinimumCollectionSize() - 1));
+        if (parser.currentToken() == JsonToken.END_ARRAY) {
+            // not large enough to be worth the overhead
+            Collection<Object> result = createCollection(parser, context);
+            for (int i = 0; i < firstElements.size(); i++) {
+                try {
+                    result.add(deserializeElement(firstElements.get(i).asParser(), context));
+                } catch (IOException e) {
+                    throw JsonMappingException.wrapWithPath(e, result, i);
+                }
+            }
+            return result;
+        }
+
+        List<CompletableFuture<Object>> elements = new ArrayList<>();
+        ObjectCodec codec = parser.getCodec();
+        List<CompletableFuture<Object>> previousChunk = submit(firstElements, codec, (DefaultDeserializationContext) context, elements);
+        while (parser.currentToken() != JsonToken.END_ARRAY) {
+            List<CompletableFuture<Object>> chunk = submit(readElements(parser, context, parallelConversion.getChunkSize()), codec, (DefaultDeserializationContext) context, elements);
+            // wait for the older chunk before reading more, keeps at most two chunks of token buffers in memory
+            awaitQuietly(previousChunk);
+            previousChunk = chunk;
+        }
+
+        Collection<Object> result = createCollection(parser, context);
+        for (int i = 0; i < elements.size(); i++) {
+            result.add(await(elements.get(i), result, i));
+        }
+        return result;
+    }
+
+    /**
+     * Read elements into buffers, the parser is expected to be positioned on the first token of an element
+     * or on the end of the array. It's left on the first token after the elements read.
+     */
+    private List<TokenBuffer> readElements(JsonParser parser, DeserializationContext context, int maxElements) throws IOException {
+        List<TokenBuffer> result = new ArrayList<>();
+        while (result.size() < maxElements && parser.currentToken() != JsonToken.END_ARRAY) {
+            if (parser.currentToken() == null) {
+                throw JsonMappingException.from(parser, "Unexpected end-of-input when reading collection");
+            }
+            TokenBuffer element = new TokenBuffer(parser, context);
+            element.copyCurrentStructure(parser);
+            result.add(element);
+            parser.nextToken();
+        }
+        return result;
+    }
+
+    private List<CompletableFuture<Object>> submit(List<TokenBuffer> buffers, ObjectCodec codec, DefaultDeserializationContext context, List<CompletableFuture<Object>> elements) {
+        List<CompletableFuture<Object>> chunk = new ArrayList<>(buffers.size());
+        for (TokenBuffer buffer : buffers) {
+            chunk.add(parallelConversion.submit(() -> deserializeElement(buffer, codec, context)));
+        }
+        elements.addAll(chunk);
+        return chunk;
+    }
+
+    private Object deserializeElement(TokenBuffer buffer, ObjectCodec codec, DefaultDeserializationContext context) {
+        try {
+            JsonParser elementParser = buffer.asParser(codec);
+            // deserialization contexts are not thread safe, each element gets its own with the same configuration and attributes
+            DeserializationConfig config = context.getConfig().with(new CallerAttributes(context));
+            DefaultDeserializationContext elementContext = context.createInstance(config, elementParser, new ContextInjectableValues(context));
+            return deserializeElement(elementParser, elementContext);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private Object deserializeElement(JsonParser elementParser, DeserializationContext context) throws IOException {
+        JsonDeserializer<Object> contentDeserializer = delegate.getContentDeserializer();
+        if (elementParser.nextToken() == JsonToken.VALUE_NULL) {
+            return contentDeserializer.getNullValue(context);
+        } else if (contentTypeDeserializer != null) {
+            return contentDeserializer.deserializeWithType(elementParser, context, contentTypeDeserializer);
+        } else {
+            return contentDeserializer.deserialize(elementParser, context);
+        }
+    }
+
+    private Collection<Object> createCollection(JsonParser parser, DeserializationContext context) throws IOException {
+        TokenBuffer buffer = new TokenBuffer(parser, context);
+        buffer.writeStartArray();
+        buffer.writeEndArray();
+        JsonParser bufferParser = buffer.asParser();
+        bufferParser.nextToken();
+        return delegate.deserialize(bufferParser, context);
+    }
+
+    private void awaitQuietly(List<CompletableFuture<Object>> chunk) {
+        try {
+            CompletableFuture.allOf(chunk.toArray(new CompletableFuture[0])).join();
+        } catch (RuntimeException e) {
+            // reported with the index of the failing element when the results are collected
+        }
+    }
+
+    private Object await(CompletableFuture<Object> element, Collection<Object> result, int index) throws IOException {
+        try {
+            return element.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new JsonMappingException(null, "interrupted while deserializing collection", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause() instanceof UncheckedIOException ? e.getCause().getCause() : e.getCause();
+            throw JsonMappingException.wrapWithPath(cause, result, index);
+        }
+    }
+
+    /**
+     * Exposes the type deserializer of the elements resolved by a collection deserializer.
+     */
+    private static class ResolvedCollectionDeserializer extends CollectionDeserializer {
+        ResolvedCollectionDeserializer(CollectionDeserializer deserializer) {
+            super(deserializer);
+        }
+
+        TypeDeserializer getValueTypeDeserializer() {
+            return _valueTypeDeserializer;
+        }
+    }
+
+    /**
+     * Injectable values looked up through the context of the calling thread.
+     */
+    private static class ContextInjectableValues extends InjectableValues {
+        private final DeserializationContext context;
+
+        ContextInjectableValues(DeserializationContext context) {
+            this.context = context;
+        }
+
+        @Override
+        public Object findInjectableValue(Object valueId, DeserializationContext elementContext, BeanProperty forProperty, Object beanInstance) throws JsonMappingException {
+            return context.findInjectableValue(valueId, forProperty, beanInstance);
+        }
+    }
+}
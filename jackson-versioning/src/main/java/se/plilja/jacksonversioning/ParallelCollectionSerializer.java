@@ -0,0 +1,209 @@
+/*
+ * The MIT License
+ * Copyright © 2020 Patrik Lilja
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package se.plilja.jacksonversioning;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.ObjectCodec;
+import com.fasterxml.jackson.databind.BeanProperty;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationConfig;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.jsontype.TypeSerializer;
+import com.fasterxml.jackson.databind.ser.ContextualSerializer;
+import com.fasterxml.jackson.databind.ser.DefaultSerializerProvider;
+import com.fasterxml.jackson.databind.ser.ResolvableSerializer;
+import com.fasterxml.jackson.databind.ser.impl.IndexedListSerializer;
+import com.fasterxml.jackson.databind.ser.std.CollectionSerializer;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Serializer for collections of versioned objects that converts the elements of large collections on
+ * an executor. Elements are converted in chunks, at most two chunks are in flight at any time, and
+ * the converted elements are written in order by the calling thread.
+ */
+class ParallelCollectionSerializer extends StdSerializer<Collection<?>> implements ContextualSerializer, ResolvableSerializer {
+    private static final Field EXCEPTION_PATH = exceptionPathField();
+
+    private final JsonSerializer<Collection<?>> delegate;
+    private final ParallelConversion parallelConversion;
+    private final boolean identityMemoization;
+
+    ParallelCollectionSerializer(JsonSerializer<Collection<?>> delegate, ParallelConversion parallelConversion, boolean identityMemoization) {
+        super(delegate.handledType(), false);
+        this.delegate = delegate;
+        this.parallelConversion = parallelConversion;
+        this.identityMemoization = identityMemoization;
+    }
+
+    @Override
+    public void resolve(SerializerProvider provider) throws JsonMappingException {
+        if (delegate instanceof ResolvableSerializer)
+            ((ResolvableSerializer) delegate).resolve(provider);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public JsonSerializer<?> createContextual(SerializerProvider provider, BeanProperty property) throws JsonMappingException {
+        if (delegate instanceof ContextualSerializer) {
+            JsonSerializer<?> contextual = ((ContextualSerializer) delegate).createContextual(provider, property);
+            if (contextual != delegate) {
+                return new ParallelCollectionSerializer((JsonSerializer<Collection<?>>) contextual, parallelConversion, identityMemoization);
+            }
+        }
+        return this;
+    }
+
+    @Override
+    public boolean isEmpty(SerializerProvider provider, Collection<?> value) {
+        return delegate.isEmpty(provider, value);
+    }
+
+    @Override
+    public void serializeWithType(Collection<?> value, JsonGenerator generator, SerializerProvider provider, TypeSerializer typeSerializer) throws IOException {
+        delegate.serializeWithType(value, generator, provider, typeSerializer);
+    }
+
+    @Override
+    public void serialize(Collection<?> value, JsonGenerator generator, SerializerProvider provider) throws IOException {
+        ObjectCodec codec = generator.getCodec();
+        if (value.size() < parallelConversion.getMinimumCollectionSize()
+                || !(codec instanceof ObjectMapper)
+                || !(provider instanceof DefaultSerializerProvider)
+                || !canSerializeContents()
+                || ParallelConversion.isConvertingElement()) {
+            delegate.serialize(value, generator, provider);
+            return;
+        }
+        if (identityMemoization) {
+            // created before the elements are serialized so that all of them share it
+            WriteScopedConversionCache.get(provider);
+        }
+
+        generator.writeStartArray(value, value.size());
+        Iterator<?> elements = value.iterator();
+        int index = 0;
+        List<CompletableFuture<TokenBuffer>> chunk = submitChunk(elements, (ObjectMapper) codec, (DefaultSerializerProvider) provider);
+        while (!chunk.isEmpty()) {
+            // start converting the next chunk before writing the current one, keeps at most two chunks in memory
+            List<CompletableFuture<TokenBuffer>> nextChunk = submitChunk(elements, (ObjectMapper) codec, (DefaultSerializerProvider) provider);
+            for (CompletableFuture<TokenBuffer> element : chunk) {
+                await(element, value, index++).serialize(generator);
+            }
+            chunk = nextChunk;
+        }
+        generator.writeEndArray();
+    }
+
+    private List<CompletableFuture<TokenBuffer>> submitChunk(Iterator<?> elements, ObjectMapper mapper, DefaultSerializerProvider provider) {
+        List<CompletableFuture<TokenBuffer>> chunk = new ArrayList<>(parallelConversion.getChunkSize());
+        while (chunk.size() < parallelConversion.getChunkSize() && elements.hasNext()) {
+            Object element = elements.next();
+            chunk.add(parallelConversion.submit(() -> serializeElement(element, mapper, provider)));
+        }
+        return chunk;
+    }
+
+    private TokenBuffer serializeElement(Object element, ObjectMapper mapper, DefaultSerializerProvider provider) {
+        // serializer providers are not thread safe, each element gets its own with the same configuration and attributes
+        SerializationConfig config = provider.getConfig().with(new CallerAttributes(provider));
+        DefaultSerializerProvider elementProvider = provider.createInstance(config, mapper.getSerializerFactory());
+        TokenBuffer buffer = new TokenBuffer(mapper, false);
+        List<Object> contents = Collections.singletonList(element);
+        try {
+            // written by the contextual delegate, with the content serializer and type information it has resolved
+            serializeContents(contents, buffer, elementProvider);
+            buffer.close();
+        } catch (JsonMappingException e) {
+            // the path gets the index in the serialized collection when the element is awaited
+            removeReferenceTo(contents, e);
+            throw new UncheckedIOException(e);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return buffer;
+    }
+
+    private boolean canSerializeContents() {
+        Object serializer = delegate;
+        return serializer instanceof CollectionSerializer || serializer instanceof IndexedListSerializer;
+    }
+
+    private void serializeContents(List<Object> contents, JsonGenerator generator, SerializerProvider provider) throws IOException {
+        Object serializer = delegate;
+        if (serializer instanceof IndexedListSerializer) {
+            ((IndexedListSerializer) serializer).serializeContents(contents, generator, provider);
+        } else {
+            ((CollectionSerializer) serializer).serializeContents(contents, generator, provider);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void removeReferenceTo(Object contents, JsonMappingException e) {
+        if (EXCEPTION_PATH == null || e.getPath().isEmpty() || e.getPath().get(0).getFrom() != contents) {
+            return;
+        }
+        try {
+            // the path can only be prepended to through the public api
+            ((LinkedList<JsonMappingException.Reference>) EXCEPTION_PATH.get(e)).removeFirst();
+        } catch (IllegalAccessException ignored) {
+            // keeps the reference to the single element list
+        }
+    }
+
+    private static Field exceptionPathField() {
+        try {
+            Field path = JsonMappingException.class.getDeclaredField("_path");
+            path.setAccessible(true);
+            return path;
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    private TokenBuffer await(CompletableFuture<TokenBuffer> element, Collection<?> value, int index) throws IOException {
+        try {
+            return element.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new JsonMappingException(null, "interrupted while serializing collection", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause() instanceof UncheckedIOException ? e.getCause().getCause() : e.getCause();
+            throw JsonMappingException.wrapWithPath(cause, value, index);
+        }
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * The MIT License
+ * Copyright © 2020 Patrik Lilja
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package se.plilja.jacksonversioning;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
+
+/**
+ * Settings for converting the elements of large collections of versioned objects in parallel.
+ */
+class ParallelConversion {
+    private static final ThreadLocal<Boolean> CONVERTING_ELEMENT = new ThreadLocal<>();
+
+    private final Executor executor;
+    private final int minimumCollectionSize;
+    private final int chunkSize;
+
+    ParallelConversion(Executor executor, int minimumCollectionSize, int chunkSize) {
+        if (executor == null) {
+            throw new IllegalArgumentException("executor must not be null");
+        }
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("chunkSize must be positive");
+        }
+        this.executor = executor;
+        this.minimumCollectionSize = minimumCollectionSize;
+        this.chunkSize = chunkSize;
+    }
+
+    Executor getExecutor() {
+        return executor;
+    }
+
+    int getMinimumCollectionSize() {
+        return minimumCollectionSize;
+    }
+
+    int getChunkSize() {
+        return chunkSize;
+    }
+
+    /**
+     * Convert an element on the executor. Collections nested in the element are converted by the same thread, waiting
+     * for them on the executor could otherwise use up its threads and never complete.
+     */
+    <T> CompletableFuture<T> submit(Supplier<T> conversion) {
+        return CompletableFuture.supplyAsync(() -> {
+            CONVERTING_ELEMENT.set(Boolean.TRUE);
+            try {
+                return conversion.get();
+            } finally {
+                CONVERTING_ELEMENT.remove();
+            }
+        }, executor);
+    }
+
+    /**
+     * @return whether the current thread is converting an element of a parallel collection
+     */
+    static boolean isConvertingElement() {
+        return CONVERTING_ELEMENT.get() != null;
+    }
+}
@@ -0,0 +1,196 @@
+/*
+ * The MIT License
+ * Copyright © 2020 Patrik Lilja
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package se.plilja.jacksonversioning;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.ObjectCodec;
+import com.fasterxml.jackson.databind.BeanProperty;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.jsontype.TypeSerializer;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.databind.ser.BeanSerializer;
+import com.fasterxml.jackson.databind.ser.ContextualSerializer;
+import com.fasterxml.jackson.databind.ser.PropertyWriter;
+import com.fasterxml.jackson.databind.ser.ResolvableSerializer;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Leaves out the properties of a bean that don't exist in the version written, as declared by {@link JsonSince} and
+ * {@link JsonUntil}. The annotations are compiled into a mask of included properties per version, and a bean
+ * serializer with only those properties is derived once per mask.
+ */
+class PropertyVersionFilteringSerializer<V extends Comparable<V>> extends StdSerializer<Object> implements ResolvableSerializer, ContextualSerializer {
+    private final BeanSerializer delegate;
+    private final VersionsDescription<V> versionsDescription;
+    private final VersionResolutionStrategy<V> versionResolutionStrategy;
+    private final List<String> names = new ArrayList<>();
+    private final List<V> sinceVersions = new ArrayList<>();
+    private final List<V> untilVersions = new ArrayList<>();
+    private final Map<V, BitSet> masks = new ConcurrentHashMap<>();
+    private final Map<BitSet, JsonSerializer<Object>> serializers = new ConcurrentHashMap<>();
+
+    PropertyVersionFilteringSerializer(BeanSerializer delegate, VersionsDescription<V> versionsDescription, VersionResolutionStrategy<V> versionResolutionStrategy) {
+        super((Class<Object>) delegate.handledType());
+        this.delegate = delegate;
+        this.versionsDescription = versionsDescription;
+        this.versionResolutionStrategy = versionResolutionStrategy;
+
+        for (Iterator<PropertyWriter> it = delegate.properties(); it.hasNext(); ) {
+            PropertyWriter property = it.next();
+            names.add(property.getName());
+            sinceVersions.add(parseVersion(property, property.getAnnotation(JsonSince.class) == null ? null : property.getAnnotation(JsonSince.class).value()));
+            untilVersions.add(parseVersion(property, property.getAnnotation(JsonUntil.class) == null ? null : property.getAnnotation(JsonUntil.class).value()));
+        }
+    }
+
+    static boolean hasVersionedProperties(BeanSerializer serializer) {
+        for (Iterator<PropertyWriter> it = serializer.properties(); it.hasNext(); ) {
+            PropertyWriter property = it.next();
+            if (property.getAnnotation(JsonSince.class) != null || property.getAnnotation(JsonUntil.class) != null) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private V parseVersion(PropertyWriter property, String value) {
+        if (value == null) {
+            return null;
+        }
+        V version = versionsDescription.fromString(value);
+        if (version == null) {
+            throw new IllegalArgumentException(String.format("Unknown version %s on property %s of %s", value, property.getName(), handledType().getName()));
+        }
+        return version;
+    }
+
+    @Override
+    public void resolve(SerializerProvider provider) throws JsonMappingException {
+        delegate.resolve(provider);
+    }
+
+    @Override
+    public JsonSerializer<?> createContextual(SerializerProvider provider, BeanProperty property) throws JsonMappingException {
+        JsonSerializer<?> contextual = provider.handleSecondaryContextualization(delegate, property);
+        if (contextual == delegate) {
+            return this;
+        }
+        // a serializer of another kind, like one writing the bean as an array, has no properties to leave out
+        return contextual.getClass() == BeanSerializer.class
+                ? new PropertyVersionFilteringSerializer<>((BeanSerializer) contextual, versionsDescription, versionResolutionStrategy)
+                : contextual;
+    }
+
+    @Override
+    public boolean usesObjectId() {
+        return delegate.usesObjectId();
+    }
+
+    @Override
+    public void serialize(Object value, JsonGenerator generator, SerializerProvider provider) throws IOException {
+        doSerialize(value, generator, provider, null);
+    }
+
+    @Override
+    public void serializeWithType(Object value, JsonGenerator generator, SerializerProvider provider, TypeSerializer typeSerializer) throws IOException {
+        doSerialize(value, generator, provider, typeSerializer);
+    }
+
+    private void doSerialize(Object value, JsonGenerator generator, SerializerProvider provider, TypeSerializer typeSerializer) throws IOException {
+        if (isTargetVersionIndependentOfModelData()) {
+            JsonSerializer<Object> serializer = serializer(mask(resolveVersion(null)));
+            if (typeSerializer != null)
+                serializer.serializeWithType(value, generator, provider, typeSerializer);
+            else
+                serializer.serialize(value, generator, provider);
+            return;
+        }
+
+        // the version depends on the data, so the properties are removed from a tree of it
+        ObjectCodec codec = generator.getCodec() != null ? generator.getCodec() : VersionedSerializer.TREE_CODEC;
+        TokenBuffer buffer = new TokenBuffer(codec, false);
+        if (typeSerializer != null)
+            delegate.serializeWithType(value, buffer, provider, typeSerializer);
+        else
+            delegate.serialize(value, buffer, provider);
+        JsonNode tree;
+        try (JsonParser parser = buffer.asParser()) {
+            tree = codec.readTree(parser);
+        }
+        if (tree instanceof ObjectNode) {
+            ObjectNode modelData = (ObjectNode) tree;
+            BitSet mask = mask(resolveVersion(modelData));
+            for (int i = mask.nextClearBit(0); i < names.size(); i = mask.nextClearBit(i + 1)) {
+                modelData.remove(names.get(i));
+            }
+        }
+        tree.serialize(generator, provider);
+    }
+
+    /**
+     * The version written by a {@link FieldVersionResolutionStrategy} is known up front, even though the version
+     * it reads depends on the data.
+     */
+    private boolean isTargetVersionIndependentOfModelData() {
+        return versionResolutionStrategy.isIndependentOfModelData() || versionResolutionStrategy instanceof FieldVersionResolutionStrategy;
+    }
+
+    private V resolveVersion(ObjectNode modelData) {
+        V version = versionResolutionStrategy.getSerializeToVersion(modelData);
+        return version != null ? version : versionsDescription.getCurrentVersion();
+    }
+
+    private BitSet mask(V version) {
+        return masks.computeIfAbsent(version, (key) -> {
+            BitSet result = new BitSet(names.size());
+            for (int i = 0; i < names.size(); i++) {
+                V since = sinceVersions.get(i);
+                V until = untilVersions.get(i);
+                if ((since == null || key.compareTo(since) >= 0) && (until == null || key.compareTo(until) < 0)) {
+                    result.set(i);
+                }
+            }
+            return result;
+        });
+    }
+
+    private JsonSerializer<Object> serializer(BitSet mask) {
+        if (mask.cardinality() == names.size()) {
+            return delegate;
+        }
+        return serializers.computeIfAbsent(mask, (key) -> VersionSpecificBeanSerializer.create(delegate, key));
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * The MIT License
+ * Copyright © 2020 Patrik Lilja
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package se.plilja.jacksonversioning;
+
+/**
+ * A version of the form major.minor.patch, where the minor and patch numbers may be left out and default to zero.
+ * The numbers are packed into a single long, so that comparing two versions is a single comparison.
+ *
+ * @see SemanticVersionsDescription
+ */
+public final class SemanticVersion implements Comparable<SemanticVersion> {
+    private static final int BITS = 21;
+    private static final long MAX_NUMBER = (1L << BITS) - 1;
+
+    private final long value;
+
+    private SemanticVersion(long value) {
+        this.value = value;
+    }
+
+    public static SemanticVersion of(int major, int minor, int patch) {
+        if (major < 0 || major > MAX_NUMBER || minor < 0 || minor > MAX_NUMBER || patch < 0 || patch > MAX_NUMBER) {
+            throw new IllegalArgumentException(String.format("Version numbers must be between 0 and %d", MAX_NUMBER));
+        }
+        return new SemanticVersion(((long) major << (2 * BITS)) | ((long) minor << BITS) | patch);
+    }
+
+    /**
+     * @param value for example "2", "2.3" or "2.3.1"
+     * @throws IllegalArgumentException if the value isn't a version
+     */
+    public static SemanticVersion parse(String value) {
+        SemanticVersion result = tryParse(value);
+        if (result == null) {
+            throw new IllegalArgumentException(String.format("Invalid version %s", value));
+        }
+        return result;
+    }
+
+    /**
+     * @return the version, or null if the value isn't a version
+     */
+    static SemanticVersion tryParse(String value) {
+        long result = 0;
+        long number = 0;
+        int numbers = 0;
+        boolean digits = false;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c >= '0' && c <= '9') {
+                if (digits && number == 0) {
+                    // leading zeros would give a version many spellings
+                    return null;
+                }
+                number = number * 10 + (c - '0');
+                if (number > MAX_NUMBER) {
+                    return null;
+                }
+                digits = true;
+            } else if (c == '.' && digits && numbers < 2) {
+                result = (result << BITS) | number;
+                number = 0;
+                numbers++;
+                digits = false;
+            } else {
+                return null;
+            }
+        }
+        if (!digits) {
+            return null;
+        }
+        result = (result << BITS) | number;
+        numbers++;
+        return new SemanticVersion(result << ((3 - numbers) * BITS));
+    }
+
+    public int getMajor() {
+        return (int) (value >>> (2 * BITS));
+    }
+
+    public int getMinor() {
+        return (int) ((value >>> BITS) & MAX_NUMBER);
+    }
+
+    public int getPatch() {
+        return (int) (value & MAX_NUMBER);
+    }
+
+    long getValue() {
+        return value;
+    }
+
+    @Override
+    public int compareTo(SemanticVersion other) {
+        return Long.compare(value, other.value);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return this == o || (o instanceof SemanticVersion && value == ((SemanticVersion) o).value);
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(value);
+    }
+
+    @Override
+    public String toString() {
+        return getMajor() + "." + getMinor() + "." + getPatch();
+    }
+}
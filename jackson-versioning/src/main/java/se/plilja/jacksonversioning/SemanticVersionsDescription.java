@@ -0,0 +1,92 @@
+/*
+ * The MIT License
+ * Copyright © 2020 Patrik Lilja
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package se.plilja.jacksonversioning;
+
+/**
+ * Versions of the form major.minor.patch, up to and including the current version. Converters declare their
+ * conversions at the versions where the model changed, a version in between is converted like the closest older
+ * version declared.
+ * <p>
+ * Recently used strings are remembered, so that a string seen again resolves to the same instance
+ * without parsing or allocating. Equal versions written differently, such as "2.3" and "2.3.0", resolve to the same
+ * instance while remembered. Numbers with leading zeros aren't versions.
+ */
+public class SemanticVersionsDescription implements VersionsDescription<SemanticVersion> {
+    private final SemanticVersion currentVersion;
+    // keyed by the strings parsed and by the canonical string of each version, null when nothing is remembered
+    private final BoundedConcurrentCache<String, SemanticVersion> parsed;
+
+    public SemanticVersionsDescription(String currentVersion) {
+        this(SemanticVersion.parse(currentVersion), 1000);
+    }
+
+    /**
+     * @param maxCachedStrings number of distinct strings whose parsed version is remembered, 0 to remember none,
+     *                         values below two are rounded up
+     */
+    public SemanticVersionsDescription(SemanticVersion currentVersion, int maxCachedStrings) {
+        if (maxCachedStrings < 0) {
+            throw new IllegalArgumentException("maxCachedStrings must not be negative");
+        }
+        this.currentVersion = currentVersion;
+        // the cache holds at least two entries, a single remembered string is rounded up
+        this.parsed = maxCachedStrings == 0 ? null : new BoundedConcurrentCache<>(Math.max(maxCachedStrings, 2));
+    }
+
+    @Override
+    public SemanticVersion getCurrentVersion() {
+        return currentVersion;
+    }
+
+    /**
+     * @return the version, or null if the value isn't a version or is newer than the current version
+     */
+    @Override
+    public SemanticVersion fromString(String value) {
+        if (value == null) {
+            return null;
+        }
+        SemanticVersion result = parsed != null ? parsed.get(value) : null;
+        if (result != null) {
+            return result;
+        }
+        result = SemanticVersion.tryParse(value);
+        if (result == null || result.compareTo(currentVersion) > 0) {
+            return null;
+        }
+        if (result.equals(currentVersion)) {
+            result = currentVersion;
+        }
+        if (parsed != null) {
+            String canonical = result.toString();
+            SemanticVersion interned = canonical.equals(value) ? null : parsed.get(canonical);
+            if (interned != null) {
+                result = interned;
+            } else {
+                parsed.put(canonical, result);
+            }
+            parsed.put(value, result);
+        }
+        return result;
+    }
+}
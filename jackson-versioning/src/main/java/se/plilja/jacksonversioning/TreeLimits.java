@@ -0,0 +1,527 @@
+/*
+ * The MIT License
+ * Copyright © 2020 Patrik Lilja
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package se.plilja.jacksonversioning;
+
+import com.fasterxml.jackson.core.Base64Variant;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.util.JsonGeneratorDelegate;
+import com.fasterxml.jackson.core.util.JsonParserDelegate;
+import com.fasterxml.jackson.databind.JsonMappingException;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+
+/**
+ * Limits on the size of versioned objects materialized as trees. The limits are checked as each token is read or
+ * written, so an oversized object fails before the rest of it has been buffered.
+ */
+class TreeLimits {
+    private final long maxBytes;
+    private final int maxDepth;
+    private final int maxNodeCount;
+
+    TreeLimits(long maxBytes, int maxDepth, int maxNodeCount) {
+        if (maxBytes < 1) {
+            throw new IllegalArgumentException("maxBytes must be positive");
+        }
+        if (maxDepth < 1) {
+            throw new IllegalArgumentException("maxDepth must be positive");
+        }
+        if (maxNodeCount < 1) {
+            throw new IllegalArgumentException("maxNodeCount must be positive");
+        }
+        this.maxBytes = maxBytes;
+        this.maxDepth = maxDepth;
+        this.maxNodeCount = maxNodeCount;
+    }
+
+    long getMaxBytes() {
+        return maxBytes;
+    }
+
+    int getMaxDepth() {
+        return maxDepth;
+    }
+
+    int getMaxNodeCount() {
+        return maxNodeCount;
+    }
+
+    /**
+     * @return a parser failing with a {@link JsonMappingException} when the value starting at the current token of
+     * the given parser exceeds the limits
+     */
+    JsonParser limit(JsonParser parser, Class<?> type) throws IOException {
+        LimitedParser result = new LimitedParser(parser, type);
+        JsonToken token = parser.currentToken();
+        if (token == JsonToken.FIELD_NAME) {
+            // positioned inside an object whose start has already been read
+            result.counter.depth = 1;
+            result.counter.nodeCount = 1;
+        }
+        if (token != null) {
+            result.count(token);
+        }
+        return result;
+    }
+
+    /**
+     * @return a generator failing with a {@link JsonMappingException} before writing a value to the given generator
+     * that makes the written value exceed the limits
+     */
+    JsonGenerator limit(JsonGenerator generator, Class<?> type) {
+        return new LimitedGenerator(generator, type);
+    }
+
+    /**
+     * Counts the size of a value as its tokens are read or written. The size is estimated from the json text of each
+     * token, which is exact for ascii content.
+     */
+    private class Counter {
+        private final Closeable processor;
+        private final Class<?> type;
+        private long bytes;
+        private int depth;
+        private int nodeCount;
+
+        Counter(Closeable processor, Class<?> type) {
+            this.processor = processor;
+            this.type = type;
+        }
+
+        void startStructure() throws JsonMappingException {
+            if (++depth > maxDepth) {
+                throw exceeded(String.format("maximum nesting depth of %d", maxDepth));
+            }
+            value(0);
+        }
+
+        void endStructure() throws JsonMappingException {
+            depth--;
+            add(1);
+        }
+
+        void fieldName(int length) throws JsonMappingException {
+            add(length + 4);
+        }
+
+        void string(int length) throws JsonMappingException {
+            value(length + 2);
+        }
+
+        void value(int textLength) throws JsonMappingException {
+            if (++nodeCount > maxNodeCount) {
+                throw exceeded(String.format("maximum node count of %d", maxNodeCount));
+            }
+            add(textLength + 1);
+        }
+
+        void add(long length) throws JsonMappingException {
+            bytes += length;
+            if (bytes > maxBytes) {
+                throw exceeded(String.format("maximum size of %d bytes", maxBytes));
+            }
+        }
+
+        private JsonMappingException exceeded(String limit) {
+            return new JsonMappingException(processor, String.format("Versioned value of %s exceeds the %s", type.getName(), limit));
+        }
+    }
+
+    private class LimitedParser extends JsonParserDelegate {
+        private final Counter counter;
+
+        LimitedParser(JsonParser parser, Class<?> type) {
+            super(parser);
+            this.counter = new Counter(parser, type);
+        }
+
+        @Override
+        public JsonToken nextToken() throws IOException {
+            JsonToken token = delegate.nextToken();
+            if (token != null && token != JsonToken.NOT_AVAILABLE) {
+                count(token);
+            }
+            return token;
+        }
+
+        @Override
+        public JsonToken nextValue() throws IOException {
+            JsonToken token = nextToken();
+            if (token == JsonToken.FIELD_NAME) {
+                token = nextToken();
+            }
+            return token;
+        }
+
+        @Override
+        public JsonParser skipChildren() throws IOException {
+            // skipped through this parser so that the depth is kept track of
+            if (currentToken() == JsonToken.START_OBJECT || currentToken() == JsonToken.START_ARRAY) {
+                int open = 1;
+                while (open > 0) {
+                    JsonToken token = nextToken();
+                    if (token == null) {
+                        break;
+                    } else if (token.isStructStart()) {
+                        open++;
+                    } else if (token.isStructEnd()) {
+                        open--;
+                    }
+                }
+            }
+            return this;
+        }
+
+        private void count(JsonToken token) throws IOException {
+            switch (token) {
+                case START_OBJECT:
+                case START_ARRAY:
+                    counter.startStructure();
+                    break;
+                case END_OBJECT:
+                case END_ARRAY:
+                    counter.endStructure();
+                    break;
+                case FIELD_NAME:
+                    counter.fieldName(delegate.getCurrentName().length());
+                    break;
+                case VALUE_STRING:
+                    counter.string(delegate.getTextLength());
+                    break;
+                default:
+                    counter.value(delegate.getTextLength());
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Counts the values written before passing them on. Values written as objects or trees are written through this
+     * generator, so that their tokens are counted too.
+     */
+    private class LimitedGenerator extends JsonGeneratorDelegate {
+        private final Counter counter;
+
+        LimitedGenerator(JsonGenerator generator, Class<?> type) {
+            super(generator, false);
+            this.counter = new Counter(generator, type);
+        }
+
+        @Override
+        public void writeStartArray() throws IOException {
+            counter.startStructure();
+            super.writeStartArray();
+        }
+
+        @Override
+        public void writeStartArray(int size) throws IOException {
+            counter.startStructure();
+            super.writeStartArray(size);
+        }
+
+        @Override
+        public void writeStartArray(Object forValue) throws IOException {
+            counter.startStructure();
+            super.writeStartArray(forValue);
+        }
+
+        @Override
+        public void writeStartArray(Object forValue, int size) throws IOException {
+            counter.startStructure();
+            super.writeStartArray(forValue, size);
+        }
+
+        @Override
+        public void writeEndArray() throws IOException {
+            counter.endStructure();
+            super.writeEndArray();
+        }
+
+        @Override
+        public void writeStartObject() throws IOException {
+            counter.startStructure();
+            super.writeStartObject();
+        }
+
+        @Override
+        public void writeStartObject(Object forValue) throws IOException {
+            counter.startStructure();
+            super.writeStartObject(forValue);
+        }
+
+        @Override
+        public void writeStartObject(Object forValue, int size) throws IOException {
+            counter.startStructure();
+            super.writeStartObject(forValue, size);
+        }
+
+        @Override
+        public void writeEndObject() throws IOException {
+            counter.endStructure();
+            super.writeEndObject();
+        }
+
+        @Override
+        public void writeFieldName(String name) throws IOException {
+            counter.fieldName(name.length());
+            super.writeFieldName(name);
+        }
+
+        @Override
+        public void writeFieldName(SerializableString name) throws IOException {
+            counter.fieldName(name.charLength());
+            super.writeFieldName(name);
+        }
+
+        @Override
+        public void writeFieldId(long id) throws IOException {
+            counter.fieldName(Long.toString(id).length());
+            super.writeFieldId(id);
+        }
+
+        @Override
+        public void writeArray(int[] array, int offset, int length) throws IOException {
+            counter.startStructure();
+            for (int i = offset; i < offset + length; i++) {
+                counter.value(Integer.toString(array[i]).length());
+            }
+            counter.endStructure();
+            super.writeArray(array, offset, length);
+        }
+
+        @Override
+        public void writeArray(long[] array, int offset, int length) throws IOException {
+            counter.startStructure();
+            for (int i = offset; i < offset + length; i++) {
+                counter.value(Long.toString(array[i]).length());
+            }
+            counter.endStructure();
+            super.writeArray(array, offset, length);
+        }
+
+        @Override
+        public void writeArray(double[] array, int offset, int length) throws IOException {
+            counter.startStructure();
+            for (int i = offset; i < offset + length; i++) {
+                counter.value(Double.toString(array[i]).length());
+            }
+            counter.endStructure();
+            super.writeArray(array, offset, length);
+        }
+
+        @Override
+        public void writeArray(String[] array, int offset, int length) throws IOException {
+            counter.startStructure();
+            for (int i = offset; i < offset + length; i++) {
+                counter.string(array[i] == null ? 2 : array[i].length());
+            }
+            counter.endStructure();
+            super.writeArray(array, offset, length);
+        }
+
+        @Override
+        public void writeString(String text) throws IOException {
+            counter.string(text == null ? 2 : text.length());
+            super.writeString(text);
+        }
+
+        @Override
+        public void writeString(Reader reader, int length) throws IOException {
+            counter.string(Math.max(length, 0));
+            super.writeString(reader, length);
+        }
+
+        @Override
+        public void writeString(char[] text, int offset, int length) throws IOException {
+            counter.string(length);
+            super.writeString(text, offset, length);
+        }
+
+        @Override
+        public void writeString(SerializableString text) throws IOException {
+            counter.string(text.charLength());
+            super.writeString(text);
+        }
+
+        @Override
+        public void writeRawUTF8String(byte[] text, int offset, int length) throws IOException {
+            counter.string(length);
+            super.writeRawUTF8String(text, offset, length);
+        }
+
+        @Override
+        public void writeUTF8String(byte[] text, int offset, int length) throws IOException {
+            counter.string(length);
+            super.writeUTF8String(text, offset, length);
+        }
+
+        @Override
+        public void writeRaw(String text) throws IOException {
+            counter.add(text.length());
+            super.writeRaw(text);
+        }
+
+        @Override
+        public void writeRaw(String text, int offset, int length) throws IOException {
+            counter.add(length);
+            super.writeRaw(text, offset, length);
+        }
+
+        @Override
+        public void writeRaw(SerializableString text) throws IOException {
+            counter.add(text.charLength());
+            super.writeRaw(text);
+        }
+
+        @Override
+        public void writeRaw(char[] text, int offset, int length) throws IOException {
+            counter.add(length);
+            super.writeRaw(text, offset, length);
+        }
+
+        @Override
+        public void writeRaw(char c) throws IOException {
+            counter.add(1);
+            super.writeRaw(c);
+        }
+
+        @Override
+        public void writeRawValue(String text) throws IOException {
+            counter.value(text.length());
+            super.writeRawValue(text);
+        }
+
+        @Override
+        public void writeRawValue(String text, int offset, int length) throws IOException {
+            counter.value(length);
+            super.writeRawValue(text, offset, length);
+        }
+
+        @Override
+        public void writeRawValue(char[] text, int offset, int length) throws IOException {
+            counter.value(length);
+            super.writeRawValue(text, offset, length);
+        }
+
+        @Override
+        public void writeBinary(Base64Variant variant, byte[] data, int offset, int length) throws IOException {
+            counter.string(base64Length(length));
+            super.writeBinary(variant, data, offset, length);
+        }
+
+        @Override
+        public int writeBinary(Base64Variant variant, InputStream data, int length) throws IOException {
+            if (length >= 0) {
+                counter.string(base64Length(length));
+                return super.writeBinary(variant, data, length);
+            }
+            int written = super.writeBinary(variant, data, length);
+            counter.string(base64Length(written));
+            return written;
+        }
+
+        @Override
+        public void writeNumber(short value) throws IOException {
+            counter.value(Short.toString(value).length());
+            super.writeNumber(value);
+        }
+
+        @Override
+        public void writeNumber(int value) throws IOException {
+            counter.value(Integer.toString(value).length());
+            super.writeNumber(value);
+        }
+
+        @Override
+        public void writeNumber(long value) throws IOException {
+            counter.value(Long.toString(value).length());
+            super.writeNumber(value);
+        }
+
+        @Override
+        public void writeNumber(BigInteger value) throws IOException {
+            counter.value(value == null ? 4 : value.toString().length());
+            super.writeNumber(value);
+        }
+
+        @Override
+        public void writeNumber(double value) throws IOException {
+            counter.value(Double.toString(value).length());
+            super.writeNumber(value);
+        }
+
+        @Override
+        public void writeNumber(float value) throws IOException {
+            counter.value(Float.toString(value).length());
+            super.writeNumber(value);
+        }
+
+        @Override
+        public void writeNumber(BigDecimal value) throws IOException {
+            counter.value(value == null ? 4 : value.toString().length());
+            super.writeNumber(value);
+        }
+
+        @Override
+        public void writeNumber(String encodedValue) throws IOException {
+            counter.value(encodedValue == null ? 4 : encodedValue.length());
+            super.writeNumber(encodedValue);
+        }
+
+        @Override
+        public void writeNumber(char[] encodedValue, int offset, int length) throws IOException {
+            counter.value(length);
+            super.writeNumber(encodedValue, offset, length);
+        }
+
+        @Override
+        public void writeBoolean(boolean state) throws IOException {
+            counter.value(state ? 4 : 5);
+            super.writeBoolean(state);
+        }
+
+        @Override
+        public void writeNull() throws IOException {
+            counter.value(4);
+            super.writeNull();
+        }
+
+        @Override
+        public void writeEmbeddedObject(Object object) throws IOException {
+            counter.value(object instanceof byte[] ? base64Length(((byte[]) object).length) : 0);
+            super.writeEmbeddedObject(object);
+        }
+
+        private int base64Length(int length) {
+            return (length + 2) / 3 * 4;
+        }
+    }
+}
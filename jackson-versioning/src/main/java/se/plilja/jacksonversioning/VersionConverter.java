@@ -25,6 +25,9 @@ package se.plilja.jacksonversioning;
 import com.fasterxml.jackson.databind.node.JsonNodeFactory;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 
+import java.util.List;
+import java.util.Set;
+
 /**
  * Converter used by {@link JsonVersioned} for converting between versions.
  */
@@ -40,6 +43,21 @@ public interface VersionConverter<V> {
      */
     void convertDown(ObjectNode modelData, V fromVersion, V toVersion, JsonNodeFactory nodeFactory);
 
+    /**
+     * Convert to an older version, keeping only the given attributes. Converters may skip conversions of attributes
+     * that aren't kept.
+     *
+     * @param modelData   data to be converted
+     * @param fromVersion version of the data
+     * @param toVersion   version of the data to converted to
+     * @param nodeFactory node factory
+     * @param attributes  names of the attributes to keep, in the older version
+     */
+    default void convertDown(ObjectNode modelData, V fromVersion, V toVersion, JsonNodeFactory nodeFactory, Set<String> attributes) {
+        convertDown(modelData, fromVersion, toVersion, nodeFactory);
+        modelData.retain(attributes);
+    }
+
     /**
      * Convert to a newer version.
      *
@@ -49,4 +67,18 @@ public interface VersionConverter<V> {
      * @param nodeFactory node factory
      */
     void convertUp(ObjectNode modelData, V fromVersion, V toVersion, JsonNodeFactory nodeFactory);
+
+    /**
+     * Convert the data of many objects of the same version to a newer version.
+     *
+     * @param modelData   data of the objects to be converted
+     * @param fromVersion version of all the data
+     * @param toVersion   version of the data to converted to
+     * @param nodeFactory node factory
+     */
+    default void convertUp(List<ObjectNode> modelData, V fromVersion, V toVersion, JsonNodeFactory nodeFactory) {
+        for (ObjectNode objectData : modelData) {
+            convertUp(objectData, fromVersion, toVersion, nodeFactory);
+        }
+    }
 }
@@ -28,4 +28,15 @@ public interface VersionResolutionStrategy<T> {
     T getSerializeToVersion(ObjectNode object);
 
     T getDeserializeToVersion(ObjectNode object);
+
+    /**
+     * Strategies that resolve the version from the surrounding context, for example a request header,
+     * rather than from the model data can return true. The module may then resolve the version before
+     * the model data has been materialized, in which case the object passed to the strategy is null.
+     *
+     * @return true if the resolved version doesn't depend on the model data
+     */
+    default boolean isIndependentOfModelData() {
+        return false;
+    }
 }
@@ -0,0 +1,241 @@
+/*
+ * The MIT License
+ * Copyright © 2020 Patrik Lilja
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package se.plilja.jacksonversioning;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import com.fasterxml.jackson.databind.deser.BeanDeserializer;
+import com.fasterxml.jackson.databind.deser.BeanDeserializerBase;
+import com.fasterxml.jackson.databind.deser.SettableBeanProperty;
+import com.fasterxml.jackson.databind.deser.impl.BeanPropertyMap;
+import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Derives bean deserializers that read an older version directly, with the properties of the current version
+ * renamed to their old names and attributes removed since the old version ignored. Added and modified attributes
+ * need the values of the other attributes and can't be expressed this way.
+ * <p>
+ * The result is the same as when converting a tree: renamed properties missing from the data are set to null, and
+ * the names they were renamed to are ignored in data of the old version.
+ */
+class VersionSpecificBeanDeserializers {
+    private VersionSpecificBeanDeserializers() {
+    }
+
+    /**
+     * @param downOperations the operations converting the current version down to the version to read
+     * @return a deserializer that reads the version the operations convert to, or null if that isn't possible
+     */
+    static JsonDeserializer<?> create(JsonDeserializer<?> deserializer, List<AbstractVersionConverter.Operation> downOperations) {
+        if (deserializer.getClass() != BeanDeserializer.class) {
+            // subclasses may read properties in ways that aren't described by the property map
+            return null;
+        }
+        BeanDeserializer beanDeserializer = (BeanDeserializer) deserializer;
+        if (beanDeserializer.getObjectIdReader() != null || beanDeserializer.getValueInstantiator().canCreateFromObjectWith()) {
+            // creator properties are bound by name outside of the property map
+            return null;
+        }
+
+        List<String> names = new ArrayList<>();
+        List<SettableBeanProperty> properties = new ArrayList<>();
+        for (Iterator<SettableBeanProperty> it = beanDeserializer.properties(); it.hasNext(); ) {
+            SettableBeanProperty property = it.next();
+            names.add(property.getName());
+            properties.add(property);
+        }
+
+        // names of the properties in the old version, with null for properties not present in it
+        List<String> versionNames = new ArrayList<>(names);
+        Set<String> ignored = new HashSet<>();
+        Set<String> renamedTo = new HashSet<>();
+        for (AbstractVersionConverter.Operation operation : downOperations) {
+            switch (operation.getKind()) {
+                case REMOVED:
+                    drop(versionNames, operation.getAttributeName());
+                    ignored.add(operation.getAttributeName());
+                    break;
+                case RENAMED:
+                    int renamed = versionNames.indexOf(operation.getNewAttributeName());
+                    if (renamed < 0) {
+                        return null;
+                    }
+                    drop(versionNames, operation.getAttributeName());
+                    ignored.remove(operation.getAttributeName());
+                    versionNames.set(renamed, operation.getAttributeName());
+                    renamedTo.add(operation.getNewAttributeName());
+                    break;
+                default:
+                    return null;
+            }
+        }
+        if (versionNames.equals(names) && ignored.isEmpty()) {
+            return beanDeserializer;
+        }
+        // the tree conversion overwrites the names renamed to with the values of the old names
+        renamedTo.removeAll(versionNames);
+        ignored.addAll(renamedTo);
+
+        List<String> replaced = new ArrayList<>();
+        for (int i = 0; i < names.size(); i++) {
+            if (!names.get(i).equals(versionNames.get(i))) {
+                replaced.add(names.get(i));
+            }
+        }
+        PropertyAccess access = new PropertyAccess(beanDeserializer);
+        BeanPropertyMap propertyMap = access.getBeanProperties().withoutProperties(replaced);
+        List<SettableBeanProperty> renamedProperties = new ArrayList<>();
+        for (int i = 0; i < names.size(); i++) {
+            String name = versionNames.get(i);
+            if (name != null && !name.equals(names.get(i))) {
+                SettableBeanProperty renamed = new RenamedProperty(properties.get(i).withSimpleName(name), renamedProperties.size());
+                renamedProperties.add(renamed);
+                propertyMap = propertyMap.withProperty(renamed);
+            }
+        }
+        BeanDeserializerBase result = beanDeserializer.withBeanProperties(propertyMap);
+        if (!ignored.isEmpty()) {
+            if (access.getIgnorableProperties() != null) {
+                ignored.addAll(access.getIgnorableProperties());
+            }
+            result = result.withIgnorableProperties(ignored);
+        }
+        return renamedProperties.isEmpty() ? result : new RenamedPropertiesDeserializer(result, renamedProperties);
+    }
+
+    private static void drop(List<String> names, String name) {
+        int index = names.indexOf(name);
+        if (index >= 0) {
+            names.set(index, null);
+        }
+    }
+
+    /**
+     * Sets the renamed properties that were missing from the data to null once the bean has been read.
+     */
+    private static class RenamedPropertiesDeserializer extends StdDeserializer<Object> {
+        // the renamed properties read by the innermost bean being deserialized on this thread
+        private static final ThreadLocal<boolean[]> READ = new ThreadLocal<>();
+
+        private final JsonDeserializer<Object> delegate;
+        private final List<SettableBeanProperty> renamedProperties;
+
+        @SuppressWarnings("unchecked")
+        RenamedPropertiesDeserializer(JsonDeserializer<?> delegate, List<SettableBeanProperty> renamedProperties) {
+            super(delegate.handledType());
+            this.delegate = (JsonDeserializer<Object>) delegate;
+            this.renamedProperties = renamedProperties;
+        }
+
+        @Override
+        public Object deserialize(JsonParser parser, DeserializationContext context) throws IOException {
+            boolean[] outer = READ.get();
+            boolean[] read = new boolean[renamedProperties.size()];
+            READ.set(read);
+            Object bean;
+            try {
+                bean = delegate.deserialize(parser, context);
+            } finally {
+                READ.set(outer);
+            }
+            if (bean != null) {
+                for (int i = 0; i < read.length; i++) {
+                    if (!read[i]) {
+                        renamedProperties.get(i).deserializeAndSet(nullParser(), context, bean);
+                    }
+                }
+            }
+            return bean;
+        }
+
+        private static JsonParser nullParser() throws IOException {
+            TokenBuffer buffer = new TokenBuffer(null, false);
+            buffer.writeNull();
+            JsonParser parser = buffer.asParser();
+            parser.nextToken();
+            return parser;
+        }
+
+        static void markRead(int index) {
+            boolean[] read = READ.get();
+            if (read != null) {
+                read[index] = true;
+            }
+        }
+    }
+
+    /**
+     * Property read by its old name, recording that it was present in the data.
+     */
+    private static class RenamedProperty extends SettableBeanProperty.Delegating {
+        private final int index;
+
+        RenamedProperty(SettableBeanProperty delegate, int index) {
+            super(delegate);
+            this.index = index;
+        }
+
+        @Override
+        protected SettableBeanProperty withDelegate(SettableBeanProperty delegate) {
+            return new RenamedProperty(delegate, index);
+        }
+
+        @Override
+        public void deserializeAndSet(JsonParser parser, DeserializationContext context, Object instance) throws IOException {
+            RenamedPropertiesDeserializer.markRead(index);
+            super.deserializeAndSet(parser, context, instance);
+        }
+
+        @Override
+        public Object deserializeSetAndReturn(JsonParser parser, DeserializationContext context, Object instance) throws IOException {
+            RenamedPropertiesDeserializer.markRead(index);
+            return super.deserializeSetAndReturn(parser, context, instance);
+        }
+    }
+
+    /**
+     * Gives access to the property map and ignored names of a bean deserializer.
+     */
+    private static class PropertyAccess extends BeanDeserializer {
+        PropertyAccess(BeanDeserializerBase src) {
+            super(src);
+        }
+
+        BeanPropertyMap getBeanProperties() {
+            return _beanProperties;
+        }
+
+        Set<String> getIgnorableProperties() {
+            return _ignorableProps;
+        }
+    }
+}
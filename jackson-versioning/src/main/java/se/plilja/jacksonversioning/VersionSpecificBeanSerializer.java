@@ -0,0 +1,171 @@
+/*
+ * The MIT License
+ * Copyright © 2020 Patrik Lilja
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package se.plilja.jacksonversioning;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.ser.BeanPropertyWriter;
+import com.fasterxml.jackson.databind.ser.BeanSerializer;
+import com.fasterxml.jackson.databind.ser.std.BeanSerializerBase;
+import com.fasterxml.jackson.databind.util.NameTransformer;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * A bean serializer that writes an older version directly, with the properties of the current version renamed and
+ * dropped according to the operations of the converter. Only renamed and added attributes can be expressed this way,
+ * all other operations need the values of the serialized object.
+ */
+class VersionSpecificBeanSerializer extends BeanSerializer {
+    private VersionSpecificBeanSerializer(BeanSerializerBase src) {
+        super(src);
+    }
+
+    private VersionSpecificBeanSerializer(BeanSerializerBase src, BeanPropertyWriter[] properties, BeanPropertyWriter[] filteredProperties) {
+        super(src, properties, filteredProperties);
+    }
+
+    /**
+     * @param versionFieldName name of a property that is replaced by the version field, or null
+     * @return a serializer that writes the version the operations convert to, or null if that isn't possible
+     */
+    static VersionSpecificBeanSerializer create(JsonSerializer<?> serializer, List<AbstractVersionConverter.Operation> downOperations, String versionFieldName) {
+        if (serializer.getClass() != BeanSerializer.class) {
+            // subclasses may serialize in ways that aren't described by the properties
+            return null;
+        }
+        VersionSpecificBeanSerializer base = new VersionSpecificBeanSerializer((BeanSerializer) serializer);
+        if (base._objectIdWriter != null || base._anyGetterWriter != null) {
+            return null;
+        }
+        List<String> names = new ArrayList<>();
+        for (BeanPropertyWriter writer : base._props) {
+            if (writer.isUnwrapping()) {
+                return null;
+            }
+            names.add(writer.getName());
+        }
+        // names of the written properties in order, with null for the dropped ones
+        List<String> versionNames = applyOperations(names, downOperations, versionFieldName);
+        if (versionNames == null) {
+            return null;
+        }
+        return new VersionSpecificBeanSerializer(base, toVersion(base._props, versionNames), toVersion(base._filteredProps, versionNames));
+    }
+
+    /**
+     * @param included indexes of the properties to keep
+     * @return a serializer that only writes the included properties
+     */
+    static VersionSpecificBeanSerializer create(BeanSerializer serializer, BitSet included) {
+        VersionSpecificBeanSerializer base = new VersionSpecificBeanSerializer(serializer);
+        List<String> names = new ArrayList<>();
+        for (int i = 0; i < base._props.length; i++) {
+            names.add(included.get(i) ? base._props[i].getName() : null);
+        }
+        return new VersionSpecificBeanSerializer(base, toVersion(base._props, names), toVersion(base._filteredProps, names));
+    }
+
+    private static List<String> applyOperations(List<String> names, List<AbstractVersionConverter.Operation> downOperations, String versionFieldName) {
+        List<String> result = new ArrayList<>(names);
+        for (AbstractVersionConverter.Operation operation : downOperations) {
+            switch (operation.getKind()) {
+                case ADDED:
+                    drop(result, operation.getAttributeName());
+                    break;
+                case RENAMED:
+                    int renamed = result.indexOf(operation.getNewAttributeName());
+                    if (renamed < 0) {
+                        // the tree path would write the old name with a null value
+                        return null;
+                    }
+                    drop(result, operation.getAttributeName());
+                    result.set(renamed, operation.getAttributeName());
+                    break;
+                default:
+                    return null;
+            }
+        }
+        if (versionFieldName != null) {
+            drop(result, versionFieldName);
+        }
+        return result;
+    }
+
+    private static void drop(List<String> names, String name) {
+        int index = names.indexOf(name);
+        if (index >= 0) {
+            names.set(index, null);
+        }
+    }
+
+    private static BeanPropertyWriter[] toVersion(BeanPropertyWriter[] writers, List<String> versionNames) {
+        if (writers == null) {
+            return null;
+        }
+        List<BeanPropertyWriter> result = new ArrayList<>();
+        for (int i = 0; i < writers.length; i++) {
+            String name = versionNames.get(i);
+            if (name == null) {
+                continue;
+            }
+            BeanPropertyWriter writer = writers[i];
+            result.add(writer == null || writer.getName().equals(name) ? writer : rename(writer, name));
+        }
+        return result.toArray(new BeanPropertyWriter[0]);
+    }
+
+    private static BeanPropertyWriter rename(BeanPropertyWriter writer, String name) {
+        return writer.rename(new NameTransformer() {
+            @Override
+            public String transform(String ignored) {
+                return name;
+            }
+
+            @Override
+            public String reverse(String transformed) {
+                return transformed.equals(name) ? writer.getName() : null;
+            }
+        });
+    }
+
+    /**
+     * Serialize the bean with the version field written before the properties.
+     */
+    void serializeWithVersionField(Object bean, JsonGenerator generator, SerializerProvider provider, String versionFieldName, JsonNode version) throws IOException {
+        generator.writeStartObject(bean);
+        generator.writeFieldName(versionFieldName);
+        version.serialize(generator, provider);
+        if (_propertyFilterId != null) {
+            serializeFieldsFiltered(bean, generator, provider);
+        } else {
+            serializeFields(bean, generator, provider);
+        }
+        generator.writeEndObject();
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * The MIT License
+ * Copyright © 2020 Patrik Lilja
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package se.plilja.jacksonversioning;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationConfig;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Type;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Converts stored json between versions without binding it to the model classes. The converters of the
+ * {@link JsonVersioned} type, and of the versioned types nested inside it, are run directly on the json tree.
+ * <p>
+ * Nested versioned objects are located using the property names of the current model, so either the version
+ * converted from or the version converted to should be the current version when the type has nested
+ * versioned objects.
+ * <p>
+ * Json arrays at the root, for example when transcoding a {@code Car[]} or a {@code List<Car>}, are streamed
+ * element by element.
+ */
+public class VersionTranscoder<V extends Comparable<V>> {
+    private final ObjectMapper mapper;
+    private final VersionedConverterRepository<V> versionedConverterRepository;
+    private final Map<JavaType, List<NestedVersionedProperty>> nestedProperties = new ConcurrentHashMap<>();
+
+    /**
+     * @param mapper mapper whose configuration is used to introspect the model classes and to read and write json
+     */
+    public VersionTranscoder(ObjectMapper mapper) {
+        this(mapper, new ReflectionVersionedConverterRepository<>());
+    }
+
+    public VersionTranscoder(ObjectMapper mapper, VersionedConverterRepository<V> versionedConverterRepository) {
+        this.mapper = mapper;
+        this.versionedConverterRepository = versionedConverterRepository;
+    }
+
+    public byte[] transcode(byte[] json, Type type, V fromVersion, V toVersion) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(json.length);
+        try (JsonParser parser = mapper.getFactory().createParser(json)) {
+            transcode(parser, type, fromVersion, toVersion, out);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Neither stream is closed.
+     */
+    public void transcode(InputStream in, Type type, V fromVersion, V toVersion, OutputStream out) throws IOException {
+        try (JsonParser parser = mapper.getFactory().createParser(in)) {
+            parser.disable(JsonParser.Feature.AUTO_CLOSE_SOURCE);
+            transcode(parser, type, fromVersion, toVersion, out);
+        }
+    }
+
+    /**
+     * Convert a tree in place.
+     *
+     * @return the converted tree
+     */
+    public JsonNode transcode(JsonNode json, Type type, V fromVersion, V toVersion) throws JsonMappingException {
+        convert(json, mapper.constructType(type), fromVersion, toVersion);
+        return json;
+    }
+
+    private void transcode(JsonParser parser, Type type, V fromVersion, V toVersion, OutputStream out) throws IOException {
+        JavaType javaType = mapper.constructType(type);
+        try (JsonGenerator generator = mapper.getFactory().createGenerator(out, JsonEncoding.UTF8)) {
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            JsonToken token = parser.nextToken();
+            if (token == JsonToken.START_ARRAY && (javaType.isCollectionLikeType() || javaType.isArrayType())) {
+                generator.writeStartArray();
+                while (parser.nextToken() != JsonToken.END_ARRAY) {
+                    generator.writeTree(convert(parser.readValueAsTree(), javaType.getContentType(), fromVersion, toVersion));
+                }
+                generator.writeEndArray();
+            } else if (token != null) {
+                generator.writeTree(convert(parser.readValueAsTree(), javaType, fromVersion, toVersion));
+            }
+        }
+    }
+
+    private JsonNode convert(JsonNode json, JavaType type, V fromVersion, V toVersion) throws JsonMappingException {
+        if (fromVersion.compareTo(toVersion) != 0) {
+            NestedVersionedProperty.forEachVersionedObject(json, type, mapper.getDeserializationConfig(),
+                    (modelData, versionedType) -> convertVersioned(modelData, versionedType, fromVersion, toVersion));
+        }
+        return json;
+    }
+
+    private void convertVersioned(ObjectNode modelData, JavaType type, V fromVersion, V toVersion) throws JsonMappingException {
+        DeserializationConfig config = mapper.getDeserializationConfig();
+        JsonVersioned jsonVersioned = NestedVersionedProperty.findJsonVersioned(config, type);
+        VersionConverter<V> converter = versionedConverterRepository.get((Class) jsonVersioned.converterClass());
+        List<NestedVersionedProperty> properties = nestedProperties.computeIfAbsent(type, (key) -> NestedVersionedProperty.find(config, key));
+
+        // the nested objects are found by the property names of the newer version, so convert the outer object
+        // first when converting up and last when converting down
+        if (fromVersion.compareTo(toVersion) < 0) {
+            if (converter != null) {
+                converter.convertUp(modelData, fromVersion, toVersion, config.getNodeFactory());
+            }
+            for (NestedVersionedProperty property : properties) {
+                property.forEachVersionedObject(modelData, config, (value, valueType) -> convertVersioned(value, valueType, fromVersion, toVersion));
+            }
+        } else {
+            for (NestedVersionedProperty property : properties) {
+                property.forEachVersionedObject(modelData, config, (value, valueType) -> convertVersioned(value, valueType, fromVersion, toVersion));
+            }
+            if (converter != null) {
+                converter.convertDown(modelData, fromVersion, toVersion, config.getNodeFactory());
+            }
+        }
+    }
+}
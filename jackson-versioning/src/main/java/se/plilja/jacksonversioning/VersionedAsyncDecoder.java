@@ -0,0 +1,219 @@
+/*
+ * The MIT License
+ * Copyright © 2020 Patrik Lilja
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package se.plilja.jacksonversioning;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.async.ByteArrayFeeder;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.deser.BasicDeserializerFactory;
+import com.fasterxml.jackson.databind.deser.BeanDeserializerModifier;
+import com.fasterxml.jackson.databind.deser.DeserializerFactory;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Decodes {@link JsonVersioned} values from input arriving in chunks, for example on the event loop of a
+ * non-blocking server. Chunks are fed to a non-blocking parser and the tokens of each value are buffered until
+ * the value is complete, it is then converted to the current version and bound. Feeding never waits for more input.
+ * <p>
+ * The input is either a sequence of root values, like newline delimited json, or a root array whose elements are
+ * decoded one at a time. Not thread safe, chunks must be fed in order.
+ * <p>
+ * The tokens of each value are buffered within the {@link VersioningModule#withTreeLimits tree limits} of the
+ * module, if any. A value that exceeds them or fails to bind fails the decoder with a {@link DecodingException}.
+ */
+public class VersionedAsyncDecoder<T> implements Closeable {
+    private final ObjectReader reader;
+    private final Class<?> type;
+    private final TreeLimits treeLimits;
+    private final JsonParser parser;
+    private final ByteArrayFeeder feeder;
+    private TokenBuffer buffer;
+    // reads the tokens of the buffered value, counting them towards the limits
+    private JsonParser valueParser;
+    private int depth;
+    private boolean inRootArray;
+    private boolean failed;
+
+    public VersionedAsyncDecoder(ObjectMapper mapper, Class<T> type) throws IOException {
+        this(mapper, mapper.constructType(type));
+    }
+
+    /**
+     * @param mapper mapper with the {@link VersioningModule} registered, its factory must support non-blocking parsing
+     * @param type   type of the root values, or of the elements of a root array
+     */
+    public VersionedAsyncDecoder(ObjectMapper mapper, JavaType type) throws IOException {
+        if (!mapper.getFactory().canParseAsync()) {
+            throw new IllegalArgumentException(String.format("%s does not support non-blocking parsing", mapper.getFactory().getClass().getSimpleName()));
+        }
+        this.reader = mapper.readerFor(type);
+        this.type = type.getRawClass();
+        this.treeLimits = findTreeLimits(mapper);
+        this.parser = mapper.getFactory().createNonBlockingByteArrayParser();
+        this.feeder = (ByteArrayFeeder) parser.getNonBlockingInputFeeder();
+    }
+
+    private static TreeLimits findTreeLimits(ObjectMapper mapper) {
+        DeserializerFactory factory = mapper.getDeserializationContext().getFactory();
+        if (factory instanceof BasicDeserializerFactory) {
+            for (BeanDeserializerModifier modifier : ((BasicDeserializerFactory) factory).getFactoryConfig().deserializerModifiers()) {
+                if (modifier instanceof VersionedBeanDeserializationModifier) {
+                    return ((VersionedBeanDeserializationModifier<?>) modifier).getTreeLimits();
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the values completed by the chunk, in order
+     */
+    public List<T> feed(byte[] chunk) throws IOException {
+        return feed(chunk, 0, chunk.length);
+    }
+
+    /**
+     * The chunk is fully consumed when this returns and may be reused by the caller.
+     *
+     * @return the values completed by the chunk, in order
+     * @throws DecodingException if a value can't be decoded
+     */
+    public List<T> feed(byte[] chunk, int offset, int length) throws IOException {
+        checkNotFailed();
+        feeder.feedInput(chunk, offset, offset + length);
+        return decodeAvailable();
+    }
+
+    /**
+     * Signal that all input has been fed.
+     *
+     * @return the values completed by the end of the input
+     * @throws DecodingException if a value can't be decoded, or the input ends inside a value
+     */
+    public List<T> endOfInput() throws IOException {
+        checkNotFailed();
+        feeder.endOfInput();
+        List<T> result = decodeAvailable();
+        if (buffer != null || inRootArray) {
+            failed = true;
+            throw new DecodingException(parser, new JsonParseException(parser, "Unexpected end of input inside a value"), result);
+        }
+        return result;
+    }
+
+    private void checkNotFailed() {
+        if (failed) {
+            throw new IllegalStateException("The decoder can't be fed after failing to decode a value");
+        }
+    }
+
+    private List<T> decodeAvailable() throws IOException {
+        List<T> result = new ArrayList<>();
+        try {
+            decodeAvailable(result);
+        } catch (IOException e) {
+            failed = true;
+            buffer = null;
+            valueParser = null;
+            throw new DecodingException(parser, e, result);
+        }
+        return result;
+    }
+
+    private void decodeAvailable(List<T> result) throws IOException {
+        for (JsonToken token = nextToken(); token != null && token != JsonToken.NOT_AVAILABLE; token = nextToken()) {
+            if (buffer == null) {
+                if (token == JsonToken.START_ARRAY && !inRootArray) {
+                    inRootArray = true;
+                    continue;
+                }
+                if (token == JsonToken.END_ARRAY && inRootArray) {
+                    inRootArray = false;
+                    continue;
+                }
+                buffer = new TokenBuffer(parser);
+                valueParser = treeLimits == null ? parser : treeLimits.limit(parser, type);
+            }
+
+            buffer.copyCurrentEvent(parser);
+            if (token.isStructStart()) {
+                depth++;
+            } else if (token.isStructEnd()) {
+                depth--;
+            }
+            if (depth == 0) {
+                try {
+                    result.add(bind(buffer));
+                } finally {
+                    buffer = null;
+                    valueParser = null;
+                }
+            }
+        }
+    }
+
+    private JsonToken nextToken() throws IOException {
+        return buffer == null ? parser.nextToken() : valueParser.nextToken();
+    }
+
+    private T bind(TokenBuffer value) throws IOException {
+        try (JsonParser valueParser = value.asParser()) {
+            return reader.readValue(valueParser);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        parser.close();
+    }
+
+    /**
+     * Failure to decode a value. The values completed before it by the same call are kept by the exception.
+     */
+    public static class DecodingException extends JsonMappingException {
+        private final transient List<?> decodedValues;
+
+        DecodingException(JsonParser parser, IOException cause, List<?> decodedValues) {
+            super(parser, cause instanceof JsonProcessingException ? ((JsonProcessingException) cause).getOriginalMessage() : cause.getMessage(), cause);
+            this.decodedValues = decodedValues;
+        }
+
+        /**
+         * @return the values completed before the failing value by the call that failed, in order
+         */
+        public List<?> getDecodedValues() {
+            return decodedValues;
+        }
+    }
+}
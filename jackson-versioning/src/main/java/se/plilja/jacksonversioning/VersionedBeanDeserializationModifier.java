@@ -24,37 +24,77 @@ package se.plilja.jacksonversioning;
 
 import com.fasterxml.jackson.databind.BeanDescription;
 import com.fasterxml.jackson.databind.DeserializationConfig;
+import com.fasterxml.jackson.databind.JavaType;
 import com.fasterxml.jackson.databind.JsonDeserializer;
 import com.fasterxml.jackson.databind.deser.BeanDeserializerModifier;
-import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
+import com.fasterxml.jackson.databind.deser.std.CollectionDeserializer;
+import com.fasterxml.jackson.databind.type.ArrayType;
+import com.fasterxml.jackson.databind.type.CollectionType;
 
 class VersionedBeanDeserializationModifier<V extends Comparable<V>> extends BeanDeserializerModifier {
 
     private final VersionedConverterRepository<V> versionedConverterRepository;
     private final VersionsDescription<V> versionsDescription;
     private final VersionResolutionStrategy<V> versionResolutionStrategy;
+    private final VersioningOptions options;
 
-    VersionedBeanDeserializationModifier(VersionedConverterRepository<V> versionedConverterRepository, VersionsDescription<V> versionsDescription, VersionResolutionStrategy<V> versionResolutionStrategy) {
+    VersionedBeanDeserializationModifier(VersionedConverterRepository<V> versionedConverterRepository, VersionsDescription<V> versionsDescription, VersionResolutionStrategy<V> versionResolutionStrategy, VersioningOptions options) {
         this.versionedConverterRepository = versionedConverterRepository;
         this.versionsDescription = versionsDescription;
         this.versionResolutionStrategy = versionResolutionStrategy;
+        this.options = options;
     }
 
-    private <T> VersionedDeserializer<T, V> createVersioningDeserializer(StdDeserializer<T> deserializer, JsonVersioned jsonVersioned) {
-        return new VersionedDeserializer<>(deserializer, versionedConverterRepository, jsonVersioned, versionsDescription, versionResolutionStrategy);
+    private <T> VersionedDeserializer<T, V> createVersioningDeserializer(JavaType type, JsonDeserializer<T> deserializer, JsonVersioned jsonVersioned) {
+        return new VersionedDeserializer<>(type, deserializer, versionedConverterRepository, jsonVersioned, versionsDescription, versionResolutionStrategy, options);
     }
 
     @Override
     public JsonDeserializer<?> modifyDeserializer(DeserializationConfig config, BeanDescription beanDescription, JsonDeserializer<?> deserializer) {
-        if (deserializer instanceof StdDeserializer) {
-            JsonVersioned jsonVersioned = beanDescription.getClassAnnotations().get(JsonVersioned.class);
-            if (jsonVersioned != null)
-                return createVersioningDeserializer(
-                        (StdDeserializer) deserializer,
-                        jsonVersioned
-                );
+        JsonVersioned jsonVersioned = beanDescription.getClassAnnotations().get(JsonVersioned.class);
+        if (jsonVersioned != null && !(deserializer instanceof VersionedDeserializer))
+            return createVersioningDeserializer(
+                    beanDescription.getType(),
+                    deserializer,
+                    jsonVersioned
+            );
+
+        return deserializer;
+    }
+
+    @Override
+    public JsonDeserializer<?> modifyCollectionDeserializer(DeserializationConfig config, CollectionType type, BeanDescription beanDescription, JsonDeserializer<?> deserializer) {
+        if (options.isBatchConversion() && isVersioned(config, type.getContentType())) {
+            return new BatchConversionDeserializer((JsonDeserializer<Object>) deserializer, type, options.getTreeLimits());
+        }
+
+        ParallelConversion parallelDeserialization = options.getParallelDeserialization();
+        if (parallelDeserialization != null
+                && deserializer instanceof CollectionDeserializer
+                && isVersioned(config, type.getContentType())) {
+            return new ParallelCollectionDeserializer((CollectionDeserializer) deserializer, parallelDeserialization);
         }
 
         return deserializer;
     }
+
+    @Override
+    public JsonDeserializer<?> modifyArrayDeserializer(DeserializationConfig config, ArrayType type, BeanDescription beanDescription, JsonDeserializer<?> deserializer) {
+        if (options.isBatchConversion() && isVersioned(config, type.getContentType())) {
+            return new BatchConversionDeserializer((JsonDeserializer<Object>) deserializer, type, options.getTreeLimits());
+        }
+
+        return deserializer;
+    }
+
+    /**
+     * @return the limits of the module, null when values are read without limits
+     */
+    TreeLimits getTreeLimits() {
+        return options.getTreeLimits();
+    }
+
+    private static boolean isVersioned(DeserializationConfig config, JavaType type) {
+        return config.introspectClassAnnotations(type).getClassAnnotations().has(JsonVersioned.class);
+    }
 }
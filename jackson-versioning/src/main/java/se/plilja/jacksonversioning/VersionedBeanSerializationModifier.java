@@ -23,43 +23,66 @@
 package se.plilja.jacksonversioning;
 
 import com.fasterxml.jackson.databind.BeanDescription;
+import com.fasterxml.jackson.databind.JavaType;
 import com.fasterxml.jackson.databind.JsonSerializer;
 import com.fasterxml.jackson.databind.SerializationConfig;
+import com.fasterxml.jackson.databind.ser.BeanSerializer;
 import com.fasterxml.jackson.databind.ser.BeanSerializerModifier;
-import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+import com.fasterxml.jackson.databind.type.CollectionType;
+
+import java.util.Collection;
 
 class VersionedBeanSerializationModifier<V extends Comparable<V>> extends BeanSerializerModifier {
 
     private final VersionedConverterRepository<V> versionedConverterRepository;
     private final VersionsDescription<V> versionsDescription;
     private final VersionResolutionStrategy<V> versionResolutionStrategy;
+    private final VersioningOptions options;
 
-    VersionedBeanSerializationModifier(VersionedConverterRepository<V> versionedConverterRepository, VersionsDescription<V> versionsDescription, VersionResolutionStrategy<V> versionResolutionStrategy) {
+    VersionedBeanSerializationModifier(VersionedConverterRepository<V> versionedConverterRepository, VersionsDescription<V> versionsDescription, VersionResolutionStrategy<V> versionResolutionStrategy, VersioningOptions options) {
         this.versionedConverterRepository = versionedConverterRepository;
         this.versionsDescription = versionsDescription;
         this.versionResolutionStrategy = versionResolutionStrategy;
+        this.options = options;
     }
 
     private <T> VersionedSerializer<T, V> createVersionedSerializer(
-            StdSerializer<T> serializer,
+            JavaType type,
+            JsonSerializer<T> serializer,
             JsonVersioned jsonVersioned) {
         return new VersionedSerializer<>(
+                type,
                 serializer,
                 versionedConverterRepository,
                 jsonVersioned,
                 versionsDescription,
-                versionResolutionStrategy);
+                versionResolutionStrategy,
+                options);
     }
 
     @Override
     public JsonSerializer<?> modifySerializer(SerializationConfig config, BeanDescription beanDescription, JsonSerializer<?> serializer) {
-        if (serializer instanceof StdSerializer) {
-            JsonVersioned jsonVersioned = beanDescription.getClassAnnotations().get(JsonVersioned.class);
-            if (jsonVersioned != null)
-                return createVersionedSerializer(
-                        (StdSerializer) serializer,
-                        jsonVersioned
-                );
+        if (serializer.getClass() == BeanSerializer.class && PropertyVersionFilteringSerializer.hasVersionedProperties((BeanSerializer) serializer)) {
+            serializer = new PropertyVersionFilteringSerializer<>((BeanSerializer) serializer, versionsDescription, versionResolutionStrategy);
+        }
+
+        JsonVersioned jsonVersioned = beanDescription.getClassAnnotations().get(JsonVersioned.class);
+        if (jsonVersioned != null && !(serializer instanceof VersionedSerializer))
+            return createVersionedSerializer(
+                    beanDescription.getType(),
+                    serializer,
+                    jsonVersioned
+            );
+
+        return serializer;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public JsonSerializer<?> modifyCollectionSerializer(SerializationConfig config, CollectionType valueType, BeanDescription beanDescription, JsonSerializer<?> serializer) {
+        ParallelConversion parallelSerialization = options.getParallelSerialization();
+        if (parallelSerialization != null && config.introspectClassAnnotations(valueType.getContentType()).getClassAnnotations().has(JsonVersioned.class)) {
+            return new ParallelCollectionSerializer((JsonSerializer<Collection<?>>) serializer, parallelSerialization, options.isIdentityMemoization());
         }
 
         return serializer;
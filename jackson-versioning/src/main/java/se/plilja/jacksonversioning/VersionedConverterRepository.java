@@ -24,4 +24,12 @@ package se.plilja.jacksonversioning;
 
 public interface VersionedConverterRepository<V> {
     VersionConverter<V> get(Class<? extends VersionConverter<V>> converterClass);
+
+    /**
+     * @return repository creating each converter once with its public no-argument constructor, the repository used
+     * when none is given
+     */
+    static <V> VersionedConverterRepository<V> reflective() {
+        return new ReflectionVersionedConverterRepository<>();
+    }
 }
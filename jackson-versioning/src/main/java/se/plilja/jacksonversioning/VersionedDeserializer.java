@@ -23,35 +23,69 @@
 package se.plilja.jacksonversioning;
 
 import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.util.JsonParserSequence;
+import com.fasterxml.jackson.databind.BeanProperty;
 import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.JsonDeserializer;
 import com.fasterxml.jackson.databind.JsonMappingException;
 import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.deser.ContextualDeserializer;
 import com.fasterxml.jackson.databind.deser.ResolvableDeserializer;
 import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
 import com.fasterxml.jackson.databind.node.ObjectNode;
-import com.fasterxml.jackson.databind.node.TreeTraversingParser;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
 
-class VersionedDeserializer<T, V extends Comparable<V>> extends StdDeserializer<T> implements ResolvableDeserializer {
-    private final StdDeserializer<T> delegate;
+class VersionedDeserializer<T, V extends Comparable<V>> extends StdDeserializer<T> implements ResolvableDeserializer, ContextualDeserializer {
+    private final JsonDeserializer<T> delegate;
     private final JsonVersioned jsonVersioned;
     private final VersionedConverterRepository<V> versionedConverterRepository;
     private final VersionsDescription<V> versionsDescription;
     private final VersionResolutionStrategy<V> versionResolutionStrategy;
+    private final VersioningOptions options;
+    private final Map<V, Optional<JsonDeserializer<T>>> versionSpecificDeserializers = new ConcurrentHashMap<>();
+    private final Map<V, AdaptiveConversion.Statistics> adaptiveStatistics = new ConcurrentHashMap<>();
+    private volatile List<NestedVersionedProperty> nestedProperties;
 
     VersionedDeserializer(
-            StdDeserializer<T> delegate,
+            JavaType type,
+            JsonDeserializer<T> delegate,
             VersionedConverterRepository<V> versionedConverterRepository,
             JsonVersioned jsonVersioned,
             VersionsDescription<V> versionsDescription,
-            VersionResolutionStrategy<V> versionResolutionStrategy) {
-        super(delegate.getValueType());
+            VersionResolutionStrategy<V> versionResolutionStrategy,
+            VersioningOptions options) {
+        super(type);
         this.delegate = delegate;
         this.jsonVersioned = jsonVersioned;
         this.versionedConverterRepository = versionedConverterRepository;
         this.versionsDescription = versionsDescription;
         this.versionResolutionStrategy = versionResolutionStrategy;
+        this.options = options;
+    }
+
+    private VersionedDeserializer(VersionedDeserializer<T, V> src, JsonDeserializer<T> delegate) {
+        super(src);
+        this.delegate = delegate;
+        this.jsonVersioned = src.jsonVersioned;
+        this.versionedConverterRepository = src.versionedConverterRepository;
+        this.versionsDescription = src.versionsDescription;
+        this.versionResolutionStrategy = src.versionResolutionStrategy;
+        this.options = src.options;
+        this.nestedProperties = src.nestedProperties;
     }
 
     @Override
@@ -60,29 +94,303 @@ class VersionedDeserializer<T, V extends Comparable<V>> extends StdDeserializer<
             ((ResolvableDeserializer) delegate).resolve(context);
     }
 
+    @Override
+    public JsonDeserializer<?> createContextual(DeserializationContext context, BeanProperty property) throws JsonMappingException {
+        JsonDeserializer<T> contextual = (JsonDeserializer<T>) context.handleSecondaryContextualization(delegate, property, getValueType());
+        return contextual == delegate ? this : new VersionedDeserializer<>(this, contextual);
+    }
+
+    @Override
+    public boolean isCachable() {
+        return delegate.isCachable();
+    }
+
     @Override
     public T deserialize(JsonParser parser, DeserializationContext context) throws IOException {
-        JsonNode jsonNode = parser.readValueAsTree();
+        if (parser instanceof VersionedTreeTraversingParser) {
+            VersionedTreeTraversingParser treeParser = (VersionedTreeTraversingParser) parser;
+            if (treeParser.isConverted(treeParser.getCurrentTreeNode())) {
+                // nested inside another versioned object which has already converted this part of its tree
+                return delegate.deserialize(parser, context);
+            }
+        }
 
-        if (!(jsonNode instanceof ObjectNode))
-            throw context.mappingException("value must be a JSON object");
+        if (versionResolutionStrategy instanceof FieldVersionResolutionStrategy) {
+            return deserializeWithVersionField(parser, context, (FieldVersionResolutionStrategy<V>) versionResolutionStrategy);
+        }
+        if (options.getAdaptiveConversion() != null && versionResolutionStrategy.isIndependentOfModelData()) {
+            return deserializeAdaptively(resolveVersion(null), parser, context, (treeParser) -> deserializeTree(treeParser, parser, context));
+        }
+        if (options.isVersionSpecificDeserializers() && versionResolutionStrategy.isIndependentOfModelData()) {
+            JsonDeserializer<T> deserializer = versionSpecificDeserializer(resolveVersion(null));
+            if (deserializer != null) {
+                return deserializer.deserialize(parser, context);
+            }
+        }
 
-        ObjectNode modelData = (ObjectNode) jsonNode;
+        return deserializeTree(parser, parser, context);
+    }
 
-        V version = versionResolutionStrategy.getDeserializeToVersion(modelData);
+    /**
+     * Read the version field from the stream, buffering the fields preceding it. Data of the current version
+     * is bound directly from the buffered fields followed by the rest of the stream.
+     */
+    private T deserializeWithVersionField(JsonParser parser, DeserializationContext context, FieldVersionResolutionStrategy<V> strategy) throws IOException {
+        JsonToken token = parser.currentToken();
+        if (token == JsonToken.START_OBJECT) {
+            token = parser.nextToken();
+        } else if (token != JsonToken.FIELD_NAME && token != JsonToken.END_OBJECT) {
+            return deserializeTree(parser, parser, context);
+        }
 
-        if (version == null) {
-            version = versionsDescription.getCurrentVersion();
+        TokenBuffer buffer = new TokenBuffer(parser, context);
+        buffer.writeStartObject();
+        V version = null;
+        // the fields preceding the version field are buffered within the limits of a tree
+        JsonParser prefixParser = options.getTreeLimits() != null ? options.getTreeLimits().limit(parser, handledType()) : parser;
+        for (; token == JsonToken.FIELD_NAME; token = prefixParser.nextToken()) {
+            String name = parser.getCurrentName();
+            prefixParser.nextToken();
+            if (name.equals(strategy.getFieldName())) {
+                version = readVersion(parser, strategy);
+                break;
+            }
+            buffer.writeFieldName(name);
+            buffer.copyCurrentStructure(prefixParser);
+        }
+
+        JsonParser bufferedParser;
+        if (token == JsonToken.FIELD_NAME) {
+            // the rest of the object, following the version field, is still to be read from the parser
+            bufferedParser = JsonParserSequence.createFlattened(false, buffer.asParser(parser), parser);
+        } else {
+            buffer.writeEndObject();
+            bufferedParser = buffer.asParser(parser);
+        }
+        bufferedParser.nextToken();
+
+        if (version == null || version.compareTo(versionsDescription.getCurrentVersion()) == 0) {
+            return delegate.deserialize(bufferedParser, context);
+        }
+        V oldVersion = version;
+        TreeDeserialization<T> treeDeserialization = (treeParser) -> deserializeTree(treeParser, parser, context,
+                (modelData) -> modelData.set(strategy.getFieldName(), strategy.toFieldValue(oldVersion)));
+        if (options.getAdaptiveConversion() != null) {
+            return deserializeAdaptively(version, bufferedParser, context, treeDeserialization);
+        }
+        JsonDeserializer<T> deserializer = options.isVersionSpecificDeserializers() ? versionSpecificDeserializer(version) : null;
+        if (deserializer != null) {
+            return deserializer.deserialize(bufferedParser, context);
+        }
+        return treeDeserialization.deserialize(bufferedParser);
+    }
+
+    private T deserializeAdaptively(V version, JsonParser parser, DeserializationContext context, TreeDeserialization<T> treeDeserialization) throws IOException {
+        JsonDeserializer<T> deserializer = versionSpecificDeserializer(version);
+        AdaptiveConversion.Statistics statistics = adaptiveStatistics.computeIfAbsent(version,
+                (key) -> options.getAdaptiveConversion().getStatistics(handledType(), key, AdaptiveConversion.Direction.DESERIALIZATION));
+        AdaptiveConversion.Engine engine = statistics.choose(deserializer != null);
+        if (statistics.isChosen()) {
+            return engine == AdaptiveConversion.Engine.STREAMING ? deserializer.deserialize(parser, context) : treeDeserialization.deserialize(parser);
         }
 
+        // while warming up the input is buffered first, so that only the conversion is timed
+        JsonParser bufferedParser = bufferValue(parser, context).asParser(parser);
+        bufferedParser.nextToken();
+        long start = System.nanoTime();
+        T result = engine == AdaptiveConversion.Engine.STREAMING ? deserializer.deserialize(bufferedParser, context) : treeDeserialization.deserialize(bufferedParser);
+        statistics.record(engine, System.nanoTime() - start);
+        return result;
+    }
+
+    /**
+     * Buffer the object starting at the current token, within the limits of a tree.
+     */
+    private TokenBuffer bufferValue(JsonParser parser, DeserializationContext context) throws IOException {
+        JsonParser source = options.getTreeLimits() != null ? options.getTreeLimits().limit(parser, handledType()) : parser;
+        TokenBuffer buffer = new TokenBuffer(parser, context);
+        if (parser.currentToken() == JsonToken.FIELD_NAME) {
+            // positioned inside an object whose start has already been read
+            buffer.writeStartObject();
+            for (JsonToken token = parser.currentToken(); token == JsonToken.FIELD_NAME; token = source.nextToken()) {
+                buffer.copyCurrentStructure(source);
+            }
+            buffer.writeEndObject();
+        } else {
+            buffer.copyCurrentStructure(source);
+        }
+        return buffer;
+    }
+
+    /**
+     * @return a deserializer reading the version directly from the stream, or null if it must be converted as a tree
+     */
+    private JsonDeserializer<T> versionSpecificDeserializer(V version) {
+        if (version.compareTo(versionsDescription.getCurrentVersion()) == 0) {
+            return delegate;
+        }
+        return versionSpecificDeserializers.computeIfAbsent(version, (key) -> {
+            VersionConverter<V> converter = versionedConverterRepository.get((Class) jsonVersioned.converterClass());
+            List<AbstractVersionConverter.Operation> operations = Collections.emptyList();
+            if (converter != null && key.compareTo(versionsDescription.getCurrentVersion()) < 0) {
+                if (!(converter instanceof AbstractVersionConverter)) {
+                    return Optional.empty();
+                }
+                operations = ((AbstractVersionConverter<V>) converter).getDownOperations(versionsDescription.getCurrentVersion(), key);
+            }
+            return Optional.ofNullable((JsonDeserializer<T>) VersionSpecificBeanDeserializers.create(delegate, operations));
+        }).orElse(null);
+    }
+
+    private V readVersion(JsonParser parser, FieldVersionResolutionStrategy<V> strategy) throws IOException {
+        if (parser.currentToken() == JsonToken.VALUE_NULL) {
+            return null;
+        }
+        if (!parser.currentToken().isScalarValue()) {
+            throw JsonMappingException.from(parser, String.format("Version field %s must be a scalar value", strategy.getFieldName()));
+        }
+        try {
+            return strategy.fromFieldValue(parser.getText());
+        } catch (IllegalArgumentException e) {
+            throw JsonMappingException.from(parser, e.getMessage(), e);
+        }
+    }
+
+    private JsonNode readTree(JsonParser parser, DeserializationContext context) throws IOException {
+        TreeLimits limits = options.getTreeLimits();
+        return context.readTree(limits != null ? limits.limit(parser, handledType()) : parser);
+    }
+
+    private T deserializeTree(JsonParser treeParser, JsonParser parser, DeserializationContext context) throws IOException {
+        return deserializeTree(treeParser, parser, context, (modelData) -> {
+        });
+    }
+
+    /**
+     * @param treeParser parser to read the tree from
+     * @param completion applied to the data read, before its version is resolved
+     */
+    private T deserializeTree(JsonParser treeParser, JsonParser parser, DeserializationContext context, Consumer<ObjectNode> completion) throws IOException {
+        ConvertedInputCache cache = options.getConvertedInputCache();
+        if (cache == null) {
+            ObjectNode modelData = toObjectNode(readTree(treeParser, context), context);
+            completion.accept(modelData);
+            return deserializeTree(modelData, parser, context);
+        }
+        ConvertedInputCache.HashingParser hashingParser = cache.hashing(treeParser);
+        ObjectNode modelData = toObjectNode(readTree(hashingParser, context), context);
+        completion.accept(modelData);
+        return deserializeCached(modelData, hashingParser, parser, context, cache);
+    }
+
+    private T deserializeTree(ObjectNode modelData, JsonParser parser, DeserializationContext context) throws IOException {
+        Set<JsonNode> convertedNodes = Collections.newSetFromMap(new IdentityHashMap<>());
+        convertTree(modelData, context, convertedNodes);
+
+        JsonParser postInterceptionParser = new VersionedTreeTraversingParser(modelData, convertedNodes, parser.getCodec());
+        postInterceptionParser.nextToken();
+        return delegate.deserialize(postInterceptionParser, context);
+    }
+
+    private T deserializeCached(ObjectNode modelData, ConvertedInputCache.HashingParser hashingParser, JsonParser parser,
+                                DeserializationContext context, ConvertedInputCache cache) throws IOException {
+        V version = resolveVersion(modelData);
+        if (version.compareTo(versionsDescription.getCurrentVersion()) >= 0) {
+            // data of the current version is not cached, since it needs no conversion of its own
+            return deserializeTree(modelData, parser, context);
+        }
+        ConvertedInputCache.Key key = cache.key(handledType(), version, hashingParser);
+        ConvertedInputCache.Entry entry = cache.get(key);
+        if (entry == null) {
+            Set<JsonNode> convertedNodes = Collections.newSetFromMap(new IdentityHashMap<>());
+            convertTree(modelData, version, context, convertedNodes);
+            entry = cache.put(key, modelData, convertedNodes);
+        }
+        // bound from a copy, leaving the cached data as it was converted
+        ConvertedInputCache.Entry copy = entry.copy();
+        JsonParser postInterceptionParser = new VersionedTreeTraversingParser(copy.getConverted(), copy.getConvertedNodes(), parser.getCodec());
+        postInterceptionParser.nextToken();
+        return delegate.deserialize(postInterceptionParser, context);
+    }
+
+    /**
+     * Convert the model data, and the data of nested versioned objects, to the current version in one pass.
+     */
+    void convertTree(ObjectNode modelData, DeserializationContext context, Set<JsonNode> convertedNodes) throws JsonMappingException {
+        convertTree(modelData, resolveVersion(modelData), context, convertedNodes);
+    }
+
+    private void convertTree(ObjectNode modelData, V version, DeserializationContext context, Set<JsonNode> convertedNodes) throws JsonMappingException {
+        convertToCurrentVersion(modelData, version, context);
+        convertedNodes.add(modelData);
+        for (NestedVersionedProperty nestedProperty : getNestedProperties(context)) {
+            nestedProperty.convertUp(modelData, context, convertedNodes);
+        }
+    }
+
+    /**
+     * Convert the model data of many objects of this type to the current version. The version of each object is
+     * resolved from its own data and objects of the same version are converted together, one conversion step
+     * at a time over all of them.
+     */
+    void convertBatch(List<ObjectNode> elements, DeserializationContext context, Set<JsonNode> convertedNodes) throws JsonMappingException {
+        Map<V, List<ObjectNode>> elementsByVersion = new TreeMap<>();
+        for (ObjectNode modelData : elements) {
+            elementsByVersion.computeIfAbsent(resolveVersion(modelData), (key) -> new ArrayList<>()).add(modelData);
+        }
+        VersionConverter<V> converter = versionedConverterRepository.get((Class) jsonVersioned.converterClass());
+        for (Map.Entry<V, List<ObjectNode>> group : elementsByVersion.entrySet()) {
+            if (converter != null && group.getKey().compareTo(versionsDescription.getCurrentVersion()) < 0) {
+                converter.convertUp(group.getValue(), group.getKey(), versionsDescription.getCurrentVersion(), context.getNodeFactory());
+            }
+        }
+
+        for (ObjectNode modelData : elements) {
+            convertedNodes.add(modelData);
+            for (NestedVersionedProperty nestedProperty : getNestedProperties(context)) {
+                nestedProperty.convertUp(modelData, context, convertedNodes);
+            }
+        }
+    }
+
+    private List<NestedVersionedProperty> getNestedProperties(DeserializationContext context) {
+        List<NestedVersionedProperty> result = nestedProperties;
+        if (result == null) {
+            result = NestedVersionedProperty.find(context.getConfig(), context.constructType(handledType()));
+            nestedProperties = result;
+        }
+        return result;
+    }
+
+    private ObjectNode toObjectNode(JsonNode jsonNode, DeserializationContext context) throws JsonMappingException {
+        if (!(jsonNode instanceof ObjectNode))
+            throw context.mappingException("value must be a JSON object");
+
+        return (ObjectNode) jsonNode;
+    }
+
+    private void convertToCurrentVersion(ObjectNode modelData, V version, DeserializationContext context) {
         // convert the model if converter specified and model needs converting
         VersionConverter<V> converter = versionedConverterRepository.get((Class) jsonVersioned.converterClass());
         if (converter != null && version.compareTo(versionsDescription.getCurrentVersion()) < 0) {
             converter.convertUp(modelData, version, versionsDescription.getCurrentVersion(), context.getNodeFactory());
         }
+    }
 
-        JsonParser postInterceptionParser = new TreeTraversingParser(modelData, parser.getCodec());
-        postInterceptionParser.nextToken();
-        return delegate.deserialize(postInterceptionParser, context);
+    private V resolveVersion(ObjectNode modelData) {
+        V version = versionResolutionStrategy.getDeserializeToVersion(modelData);
+        if (modelData != null && versionResolutionStrategy instanceof FieldVersionResolutionStrategy) {
+            // the version field is not part of the model
+            modelData.remove(((FieldVersionResolutionStrategy<V>) versionResolutionStrategy).getFieldName());
+        }
+
+        if (version == null) {
+            version = versionsDescription.getCurrentVersion();
+        }
+        return version;
+    }
+
+    private interface TreeDeserialization<T> {
+        T deserialize(JsonParser treeParser) throws IOException;
     }
-}
\ No newline at end of file
+}
@@ -22,39 +22,79 @@
  */
 package se.plilja.jacksonversioning;
 
-import com.fasterxml.jackson.core.JsonFactory;
 import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.ObjectCodec;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.core.json.JsonGeneratorImpl;
+import com.fasterxml.jackson.core.util.JsonGeneratorDelegate;
+import com.fasterxml.jackson.databind.BeanProperty;
+import com.fasterxml.jackson.databind.JavaType;
 import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationConfig;
 import com.fasterxml.jackson.databind.SerializerProvider;
 import com.fasterxml.jackson.databind.jsontype.TypeSerializer;
 import com.fasterxml.jackson.databind.node.JsonNodeFactory;
 import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.databind.ser.ContextualSerializer;
 import com.fasterxml.jackson.databind.ser.ResolvableSerializer;
 import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
-class VersionedSerializer<T, V extends Comparable<V>> extends StdSerializer<T> implements ResolvableSerializer {
-    private final StdSerializer<T> delegate;
+class VersionedSerializer<T, V extends Comparable<V>> extends StdSerializer<T> implements ResolvableSerializer, ContextualSerializer {
+    // reads trees from token buffers when the generator has no codec of its own
+    static final ObjectCodec TREE_CODEC = new ObjectMapper();
+
+    private final JsonSerializer<T> delegate;
     private final VersionedConverterRepository<V> versionedConverterRepository;
     private final JsonVersioned jsonVersioned;
     private final VersionsDescription<V> versionsDescription;
     private final VersionResolutionStrategy<V> versionResolutionStrategy;
+    private final VersioningOptions options;
+    private final Map<V, Optional<VersionSpecificBeanSerializer>> versionSpecificSerializers = new ConcurrentHashMap<>();
+    private final Map<V, AdaptiveConversion.Statistics> adaptiveStatistics = new ConcurrentHashMap<>();
 
     VersionedSerializer(
-            StdSerializer<T> delegate,
+            JavaType type,
+            JsonSerializer<T> delegate,
             VersionedConverterRepository<V> versionedConverterRepository,
             JsonVersioned jsonVersioned,
             VersionsDescription<V> versionsDescription,
-            VersionResolutionStrategy<V> versionResolutionStrategy) {
-        super(delegate.handledType());
+            VersionResolutionStrategy<V> versionResolutionStrategy,
+            VersioningOptions options) {
+        super(type);
 
         this.delegate = delegate;
         this.versionedConverterRepository = versionedConverterRepository;
         this.jsonVersioned = jsonVersioned;
         this.versionsDescription = versionsDescription;
         this.versionResolutionStrategy = versionResolutionStrategy;
+        this.options = options;
+    }
+
+    private VersionedSerializer(VersionedSerializer<T, V> src, JsonSerializer<T> delegate) {
+        super(src);
+
+        this.delegate = delegate;
+        this.versionedConverterRepository = src.versionedConverterRepository;
+        this.jsonVersioned = src.jsonVersioned;
+        this.versionsDescription = src.versionsDescription;
+        this.versionResolutionStrategy = src.versionResolutionStrategy;
+        this.options = src.options;
     }
 
     @Override
@@ -63,6 +103,17 @@ class VersionedSerializer<T, V extends Comparable<V>> extends StdSerializer<T> i
             ((ResolvableSerializer) delegate).resolve(provider);
     }
 
+    @Override
+    public JsonSerializer<?> createContextual(SerializerProvider provider, BeanProperty property) throws JsonMappingException {
+        JsonSerializer<T> contextual = (JsonSerializer<T>) provider.handleSecondaryContextualization(delegate, property);
+        return contextual == delegate ? this : new VersionedSerializer<>(this, contextual);
+    }
+
+    @Override
+    public boolean isEmpty(SerializerProvider provider, T value) {
+        return delegate.isEmpty(provider, value);
+    }
+
     @Override
     public void serialize(T value, JsonGenerator generator, SerializerProvider provider) throws IOException {
         doSerialize(value, generator, provider, null);
@@ -74,33 +125,276 @@ class VersionedSerializer<T, V extends Comparable<V>> extends StdSerializer<T> i
     }
 
     private void doSerialize(T value, JsonGenerator generator, SerializerProvider provider, TypeSerializer typeSerializer) throws IOException {
-        // serialize the value into a byte array buffer then parse it back out into a JsonNode tree
-        // TODO: find a better way to convert the value into a tree
-        JsonFactory factory = generator.getCodec().getFactory();
-        ByteArrayOutputStream buffer = new ByteArrayOutputStream(4096);
-        JsonGenerator bufferGenerator = factory.createGenerator(buffer);
-        try {
-            if (typeSerializer != null)
-                delegate.serializeWithType(value, bufferGenerator, provider, typeSerializer);
-            else
-                delegate.serialize(value, bufferGenerator, provider);
-        } finally {
-            bufferGenerator.close();
+        Set<String> projection = FieldProjection.getAttributes(provider, handledType());
+        if (projection != null) {
+            ObjectNode modelData = serializeToTree(value, generator, provider, typeSerializer);
+            if (typeSerializer != null && typeSerializer.getPropertyName() != null && !projection.contains(typeSerializer.getPropertyName())) {
+                // the type id is written as a property of the object, it's kept whatever attributes are projected
+                projection = new HashSet<>(projection);
+                projection.add(typeSerializer.getPropertyName());
+            }
+            convertToTargetVersion(modelData, resolveTargetVersion(modelData), projection);
+            modelData.serialize(generator, provider);
+            return;
+        }
+        if (typeSerializer == null && canUseOutputCache(value, generator, provider)) {
+            doSerializeCached((CacheableVersioned) value, generator, provider);
+            return;
+        }
+        if (typeSerializer == null && options.getAdaptiveConversion() != null && isTargetVersionIndependentOfModelData()) {
+            serializeAdaptively(value, generator, provider, options.getAdaptiveConversion());
+            return;
+        }
+        if (typeSerializer == null && options.isVersionSpecificSerializers() && isTargetVersionIndependentOfModelData()) {
+            V targetVersion = resolveTargetVersion(null);
+            VersionSpecificBeanSerializer serializer = versionSpecificSerializer(targetVersion);
+            if (serializer != null) {
+                serializeVersionSpecific(serializer, value, generator, provider, targetVersion);
+                return;
+            }
+        }
+
+        // write node straight to the generator, whatever its format
+        toConvertedTree(value, generator, provider, typeSerializer).serialize(generator, provider);
+    }
+
+    private boolean canUseOutputCache(T value, JsonGenerator generator, SerializerProvider provider) {
+        // cached json is written raw, which requires a json generator that doesn't reformat its output
+        return options.getConvertedOutputCache() != null
+                && value instanceof CacheableVersioned
+                && provider.getActiveView() == null
+                && isTargetVersionIndependentOfModelData()
+                && generator instanceof JsonGeneratorImpl
+                && generator.getCodec() != null
+                && generator.getPrettyPrinter() == null;
+    }
+
+    private void doSerializeCached(CacheableVersioned value, JsonGenerator generator, SerializerProvider provider) throws IOException {
+        ConvertedOutputCache cache = options.getConvertedOutputCache();
+        Object cacheKey = value.versioningCacheKey();
+        V targetVersion = resolveTargetVersion(null);
+        SerializationConfig config = provider.getConfig();
+        SerializedString json = cache.get(value.getClass(), cacheKey, targetVersion, delegate, config, generator.getFeatureMask());
+        if (json == null) {
+            ObjectNode converted = toConvertedTree((T) value, generator, provider, null);
+            StringWriter writer = new StringWriter();
+            try (JsonGenerator jsonGenerator = generator.getCodec().getFactory().createGenerator(writer)) {
+                jsonGenerator.setFeatureMask(generator.getFeatureMask());
+                jsonGenerator.setCharacterEscapes(generator.getCharacterEscapes());
+                jsonGenerator.writeTree(converted);
+            }
+            json = new SerializedString(writer.toString());
+            cache.put(value.getClass(), cacheKey, targetVersion, delegate, config, generator.getFeatureMask(), json);
         }
+        generator.writeRawValue(json);
+    }
 
-        ObjectNode modelData = factory.createParser(buffer.toByteArray()).readValueAsTree();
+    private void serializeAdaptively(T value, JsonGenerator generator, SerializerProvider provider, AdaptiveConversion adaptiveConversion) throws IOException {
+        V targetVersion = resolveTargetVersion(null);
+        VersionSpecificBeanSerializer serializer = versionSpecificSerializer(targetVersion);
+        AdaptiveConversion.Statistics statistics = adaptiveStatistics.computeIfAbsent(targetVersion,
+                (version) -> adaptiveConversion.getStatistics(handledType(), version, AdaptiveConversion.Direction.SERIALIZATION));
+        AdaptiveConversion.Engine engine = statistics.choose(serializer != null);
+        if (statistics.isChosen()) {
+            if (engine == AdaptiveConversion.Engine.STREAMING) {
+                serializeVersionSpecific(serializer, value, generator, provider, targetVersion);
+            } else {
+                toConvertedTree(value, generator, provider, null).serialize(generator, provider);
+            }
+            return;
+        }
+
+        // while warming up the tree is written, and both engines are timed writing to buffers on the side
+        ObjectCodec codec = generator.getCodec() != null ? generator.getCodec() : TREE_CODEC;
+        TokenBuffer treeOutput = new TokenBuffer(codec, false);
+        long start = System.nanoTime();
+        ObjectNode converted = toConvertedTree(value, generator, provider, null);
+        converted.serialize(treeOutput, provider);
+        long treeNanos = System.nanoTime() - start;
 
+        TokenBuffer streamingOutput = new TokenBuffer(codec, false);
+        start = System.nanoTime();
+        serializeVersionSpecific(serializer, value, streamingOutput, provider, targetVersion);
+        long streamingNanos = System.nanoTime() - start;
+
+        if (!AdaptiveConversion.isSameOutput(treeOutput, streamingOutput)) {
+            statistics.rejectStreaming();
+        }
+        statistics.record(AdaptiveConversion.Engine.TREE, treeNanos);
+        statistics.record(AdaptiveConversion.Engine.STREAMING, streamingNanos);
+        converted.serialize(generator, provider);
+    }
+
+    private VersionSpecificBeanSerializer versionSpecificSerializer(V targetVersion) {
+        return versionSpecificSerializers.computeIfAbsent(targetVersion, (version) -> {
+            VersionConverter<V> converter = versionedConverterRepository.get((Class) jsonVersioned.converterClass());
+            List<AbstractVersionConverter.Operation> operations = Collections.emptyList();
+            if (converter != null && version.compareTo(versionsDescription.getCurrentVersion()) < 0) {
+                if (!(converter instanceof AbstractVersionConverter)) {
+                    return Optional.empty();
+                }
+                operations = ((AbstractVersionConverter<V>) converter).getDownOperations(versionsDescription.getCurrentVersion(), version);
+            }
+            String versionFieldName = versionResolutionStrategy instanceof FieldVersionResolutionStrategy ? ((FieldVersionResolutionStrategy<V>) versionResolutionStrategy).getFieldName() : null;
+            return Optional.ofNullable(VersionSpecificBeanSerializer.create(delegate, operations, versionFieldName));
+        }).orElse(null);
+    }
+
+    private void serializeVersionSpecific(VersionSpecificBeanSerializer serializer, T value, JsonGenerator generator, SerializerProvider provider, V targetVersion) throws IOException {
+        if (versionResolutionStrategy instanceof FieldVersionResolutionStrategy) {
+            FieldVersionResolutionStrategy<V> strategy = (FieldVersionResolutionStrategy<V>) versionResolutionStrategy;
+            serializer.serializeWithVersionField(value, generator, provider, strategy.getFieldName(), strategy.toFieldValue(targetVersion));
+        } else {
+            serializer.serialize(value, generator, provider);
+        }
+    }
+
+    private ObjectNode toConvertedTree(T value, JsonGenerator generator, SerializerProvider provider, TypeSerializer typeSerializer) throws IOException {
+        if (options.isIdentityMemoization() && typeSerializer == null) {
+            return toMemoizedConvertedTree(value, generator, provider);
+        }
+
+        ObjectNode modelData = serializeToTree(value, generator, provider, typeSerializer);
+        convertToTargetVersion(modelData, resolveTargetVersion(modelData));
+        return modelData;
+    }
+
+    private ObjectNode toMemoizedConvertedTree(T value, JsonGenerator generator, SerializerProvider provider) throws IOException {
+        WriteScopedConversionCache.Entry entry = WriteScopedConversionCache.get(provider).get(delegate, value);
+        V targetVersion;
+        if (isTargetVersionIndependentOfModelData()) {
+            targetVersion = resolveTargetVersion(null);
+        } else {
+            if (entry.getModelData() == null) {
+                entry.setModelData(serializeToTree(value, generator, provider, null));
+            }
+            targetVersion = resolveTargetVersion(entry.getModelData());
+        }
+
+        ObjectNode converted = entry.getConverted(targetVersion);
+        if (converted == null) {
+            converted = entry.getModelData() != null ? entry.getModelData().deepCopy() : serializeToTree(value, generator, provider, null);
+            convertToTargetVersion(converted, targetVersion);
+            entry.putConverted(targetVersion, converted);
+        }
+        return converted;
+    }
+
+    private ObjectNode serializeToTree(T value, JsonGenerator generator, SerializerProvider provider, TypeSerializer typeSerializer) throws IOException {
+        // serialize the value into format neutral tokens then read them into a JsonNode tree
+        ObjectCodec codec = generator.getCodec() != null ? generator.getCodec() : TREE_CODEC;
+        TokenBuffer buffer = new TokenBuffer(codec, false);
+        // the limits are checked as the value is written, before an oversized value has been buffered
+        TreeLimits limits = options.getTreeLimits();
+        JsonGenerator output = limits != null ? limits.limit(buffer, handledType()) : buffer;
+        if (typeSerializer != null)
+            delegate.serializeWithType(value, output, provider, typeSerializer);
+        else if (versionResolutionStrategy instanceof FieldVersionResolutionStrategy)
+            delegate.serialize(value, new VersionFieldFirstGenerator(output, ((FieldVersionResolutionStrategy<V>) versionResolutionStrategy).getFieldName()), provider);
+        else
+            delegate.serialize(value, output, provider);
+
+        try (JsonParser parser = buffer.asParser()) {
+            JsonNode tree = codec.readTree(parser);
+            if (!(tree instanceof ObjectNode)) {
+                throw JsonMappingException.from(generator, String.format("Versioned value of %s must be serialized as an object", handledType().getName()));
+            }
+            return (ObjectNode) tree;
+        }
+    }
+
+    /**
+     * The version written by a {@link FieldVersionResolutionStrategy} is known up front, even though the version
+     * it reads depends on the data.
+     */
+    private boolean isTargetVersionIndependentOfModelData() {
+        return versionResolutionStrategy.isIndependentOfModelData() || versionResolutionStrategy instanceof FieldVersionResolutionStrategy;
+    }
+
+    private V resolveTargetVersion(ObjectNode modelData) {
         V targetVersion = versionResolutionStrategy.getSerializeToVersion(modelData);
         if (targetVersion == null) {
             targetVersion = versionsDescription.getCurrentVersion();
         }
+        return targetVersion;
+    }
+
+    private void convertToTargetVersion(ObjectNode modelData, V targetVersion) {
+        convertToTargetVersion(modelData, targetVersion, null);
+    }
 
+    /**
+     * @param projection the attributes to keep, or null to keep all of them
+     */
+    private void convertToTargetVersion(ObjectNode modelData, V targetVersion, Set<String> projection) {
         VersionConverter<V> converter = versionedConverterRepository.get((Class) jsonVersioned.converterClass());
         if (converter != null && targetVersion.compareTo(versionsDescription.getCurrentVersion()) < 0) {
-            converter.convertDown(modelData, versionsDescription.getCurrentVersion(), targetVersion, JsonNodeFactory.instance);
+            if (projection != null)
+                converter.convertDown(modelData, versionsDescription.getCurrentVersion(), targetVersion, JsonNodeFactory.instance, projection);
+            else
+                converter.convertDown(modelData, versionsDescription.getCurrentVersion(), targetVersion, JsonNodeFactory.instance);
+        } else if (projection != null) {
+            modelData.retain(projection);
+        }
+        if (versionResolutionStrategy instanceof FieldVersionResolutionStrategy) {
+            writeVersionField(modelData, (FieldVersionResolutionStrategy<V>) versionResolutionStrategy, targetVersion);
+        }
+    }
+
+    /**
+     * Write the version field first, so that readers can find the version without buffering. Trees are built with the
+     * version field first, unless the converters have removed it the value is replaced where it is.
+     */
+    private void writeVersionField(ObjectNode modelData, FieldVersionResolutionStrategy<V> strategy, V version) {
+        String fieldName = strategy.getFieldName();
+        if (modelData.size() == 0 || modelData.fieldNames().next().equals(fieldName)) {
+            modelData.set(fieldName, strategy.toFieldValue(version));
+            return;
+        }
+        Map<String, JsonNode> fields = new LinkedHashMap<>();
+        modelData.fields().forEachRemaining((field) -> fields.put(field.getKey(), field.getValue()));
+        modelData.removeAll();
+        modelData.set(fieldName, strategy.toFieldValue(version));
+        fields.remove(fieldName);
+        modelData.setAll(fields);
+    }
+
+    /**
+     * Writes a null version field first in the outermost object, so that the tree read from the output has the
+     * version field first.
+     */
+    private static class VersionFieldFirstGenerator extends JsonGeneratorDelegate {
+        private final String fieldName;
+        private boolean started;
+
+        VersionFieldFirstGenerator(JsonGenerator delegate, String fieldName) {
+            super(delegate, false);
+            this.fieldName = fieldName;
+        }
+
+        @Override
+        public void writeStartObject() throws IOException {
+            super.writeStartObject();
+            writeVersionField();
+        }
+
+        @Override
+        public void writeStartObject(Object forValue) throws IOException {
+            super.writeStartObject(forValue);
+            writeVersionField();
+        }
+
+        @Override
+        public void writeStartObject(Object forValue, int size) throws IOException {
+            super.writeStartObject(forValue, size);
+            writeVersionField();
         }
 
-        // write node
-        generator.writeTree(modelData);
+        private void writeVersionField() throws IOException {
+            if (!started) {
+                started = true;
+                writeNullField(fieldName);
+            }
+        }
     }
-}
\ No newline at end of file
+}
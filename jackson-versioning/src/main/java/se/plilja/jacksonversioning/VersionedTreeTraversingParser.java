@@ -0,0 +1,75 @@
+/*
+ * The MIT License
+ * Copyright © 2020 Patrik Lilja
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package se.plilja.jacksonversioning;
+
+import com.fasterxml.jackson.core.JsonStreamContext;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.ObjectCodec;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.TreeTraversingParser;
+
+import java.util.Set;
+
+/**
+ * Parser over a tree that has been materialized and converted by a {@link VersionedDeserializer}. Nested
+ * versioned deserializers recognize it and bind their already converted part of the tree directly instead
+ * of reading it into yet another tree.
+ */
+class VersionedTreeTraversingParser extends TreeTraversingParser {
+    private final JsonNode root;
+    private final Set<JsonNode> convertedNodes;
+
+    VersionedTreeTraversingParser(JsonNode root, Set<JsonNode> convertedNodes, ObjectCodec codec) {
+        super(root, codec);
+        this.root = root;
+        this.convertedNodes = convertedNodes;
+    }
+
+    /**
+     * @return the node that the current token belongs to, for {@code START_OBJECT} this is the object itself
+     */
+    JsonNode getCurrentTreeNode() {
+        JsonStreamContext context = getParsingContext();
+        if (_currToken == JsonToken.START_OBJECT || _currToken == JsonToken.START_ARRAY) {
+            // the parser has already stepped into the container, the container itself is a value of the parent
+            context = context.getParent();
+        }
+        return valueAt(context);
+    }
+
+    boolean isConverted(JsonNode node) {
+        return convertedNodes.contains(node);
+    }
+
+    private JsonNode valueAt(JsonStreamContext context) {
+        if (context.inRoot()) {
+            return root;
+        }
+        JsonNode container = valueAt(context.getParent());
+        if (context.inObject()) {
+            return container.get(context.getCurrentName());
+        } else {
+            return container.get(context.getCurrentIndex());
+        }
+    }
+}
@@ -24,10 +24,13 @@ package se.plilja.jacksonversioning;
 
 import com.fasterxml.jackson.databind.module.SimpleModule;
 
+import java.util.concurrent.Executor;
+
 /**
  * Jackson module to load when using {@link JsonVersioned}.
  */
 public class VersioningModule extends SimpleModule {
+    private final VersioningOptions options = new VersioningOptions();
 
     public <V extends Comparable<V>> VersioningModule(VersionsDescription<V> versionsDescription, VersionResolutionStrategy<V> versionResolutionStrategy) {
         this(versionsDescription, new ReflectionVersionedConverterRepository<>(), versionResolutionStrategy);
@@ -35,7 +38,163 @@ public class VersioningModule extends SimpleModule {
 
     public <V extends Comparable<V>> VersioningModule(VersionsDescription<V> versionsDescription, VersionedConverterRepository<V> versionedConverterRepository, VersionResolutionStrategy<V> versionResolutionStrategy) {
         super("VersioningModule");
-        setDeserializerModifier(new VersionedBeanDeserializationModifier<>(versionedConverterRepository, versionsDescription, versionResolutionStrategy));
-        setSerializerModifier(new VersionedBeanSerializationModifier<>(versionedConverterRepository, versionsDescription, versionResolutionStrategy));
+        setDeserializerModifier(new VersionedBeanDeserializationModifier<>(versionedConverterRepository, versionsDescription, versionResolutionStrategy, options));
+        setSerializerModifier(new VersionedBeanSerializationModifier<>(versionedConverterRepository, versionsDescription, versionResolutionStrategy, options));
+    }
+
+    /**
+     * Convert the elements of large collections of versioned objects in parallel when serializing. The
+     * elements are converted on the executor in chunks and written in their original order by the
+     * serializing thread, at most two chunks are kept in memory at any time.
+     * <p>
+     * Note that the {@link VersionResolutionStrategy} is called from the executor threads, strategies that
+     * depend on thread bound state must have that state propagated by the executor.
+     *
+     * @param executor              executor to convert elements on, for example a {@link java.util.concurrent.ForkJoinPool}
+     * @param minimumCollectionSize smaller collections are serialized by the calling thread
+     * @param chunkSize             number of elements converted per chunk
+     * @return this module
+     */
+    public VersioningModule withParallelSerialization(Executor executor, int minimumCollectionSize, int chunkSize) {
+        options.setParallelSerialization(new ParallelConversion(executor, minimumCollectionSize, chunkSize));
+        return this;
+    }
+
+    /**
+     * Convert and bind the elements of large arrays of versioned objects in parallel when deserializing into
+     * a collection. The elements are read by the deserializing thread and converted on the executor in chunks,
+     * at most two chunks are waiting for conversion at any time. The resulting collection keeps the input order
+     * and failures are reported with the index of the failing element.
+     * <p>
+     * Note that the {@link VersionResolutionStrategy} is called from the executor threads, strategies that
+     * depend on thread bound state must have that state propagated by the executor.
+     *
+     * @param executor              executor to convert elements on, for example a {@link java.util.concurrent.ForkJoinPool}
+     * @param minimumCollectionSize smaller arrays are deserialized by the calling thread
+     * @param chunkSize             number of elements converted per chunk
+     * @return this module
+     */
+    public VersioningModule withParallelDeserialization(Executor executor, int minimumCollectionSize, int chunkSize) {
+        options.setParallelDeserialization(new ParallelConversion(executor, minimumCollectionSize, chunkSize));
+        return this;
+    }
+
+    /**
+     * Remember the converted data of every versioned object serialized during a single write, keyed by object
+     * identity and target version. Objects that are referenced many times from the same response, for example
+     * a shared owner of many cars, are then only converted once per write. The remembered data is discarded
+     * when the write completes, so later changes to the objects are picked up by the next write.
+     * <p>
+     * Objects must not be modified while they are being serialized.
+     *
+     * @return this module
+     */
+    public VersioningModule withIdentityMemoization() {
+        options.setIdentityMemoization(true);
+        return this;
+    }
+
+    /**
+     * Cache the converted json of {@link CacheableVersioned} values across writes. Cached values are written
+     * without being serialized or converted, which suits immutable reference data that is written to the
+     * same versions over and over again.
+     * <p>
+     * The cache is only used when the {@link VersionResolutionStrategy} is independent of the model data and
+     * when writing json without a pretty printer or an active view. Json is cached per serialization config, so
+     * mappers sharing the cache don't replay each other's output. Values that change must be invalidated in the cache.
+     *
+     * @param cache cache to store converted json in, may be shared with other modules
+     * @return this module
+     */
+    public VersioningModule withConvertedOutputCache(ConvertedOutputCache cache) {
+        options.setConvertedOutputCache(cache);
+        return this;
+    }
+
+    /**
+     * Convert arrays of versioned objects as one batch when deserializing into a collection or an array. The
+     * version of every element is resolved from its own data, elements of the same version are grouped and each
+     * group is converted one conversion step at a time. The elements keep their order. This suits payloads
+     * mixing many versions, together with a {@link VersionResolutionStrategy} that reads the version from the data.
+     * <p>
+     * Batch conversion takes precedence over {@link #withParallelDeserialization parallel deserialization}.
+     *
+     * @return this module
+     */
+    public VersioningModule withBatchConversion() {
+        options.setBatchConversion(true);
+        return this;
+    }
+
+    /**
+     * Serialize older versions of plain beans with serializers derived from the operations of their converter, instead
+     * of converting a tree of every object. A serializer is derived once per type and target version, with the
+     * properties renamed and the added properties left out. Converters that remove or modify attributes still go
+     * through the tree, as do strategies that need the model data to resolve the version.
+     * <p>
+     * Renamed properties keep their position in the output, where the tree conversion writes them last.
+     *
+     * @return this module
+     */
+    public VersioningModule withVersionSpecificSerializers() {
+        options.setVersionSpecificSerializers(true);
+        return this;
+    }
+
+    /**
+     * Deserialize older versions of plain beans with deserializers derived from the operations of their converter,
+     * instead of converting a tree of every object. A deserializer is derived once per type and source version, with
+     * renamed properties read by their old names and removed attributes ignored. Converters that add or modify
+     * attributes still go through the tree, as do strategies that need the model data to resolve the version.
+     *
+     * @return this module
+     */
+    public VersioningModule withVersionSpecificDeserializers() {
+        options.setVersionSpecificDeserializers(true);
+        return this;
+    }
+
+    /**
+     * Cache the converted data of values read in old versions, so that identical content sent again is bound without
+     * converting it again. The content is still parsed to resolve its version, and hashed as it is parsed. Each read
+     * binds a copy of the cached data.
+     *
+     * @return this module
+     */
+    public VersioningModule withConvertedInputCache(ConvertedInputCache cache) {
+        options.setConvertedInputCache(cache);
+        return this;
+    }
+
+    /**
+     * Choose between converting trees and {@link #withVersionSpecificSerializers() version specific} serializers and
+     * deserializers for each type and version, by timing both for a warm-up window. The choices made can be read from
+     * the given instance.
+     *
+     * @return this module
+     */
+    public VersioningModule withAdaptiveConversion(AdaptiveConversion adaptiveConversion) {
+        options.setAdaptiveConversion(adaptiveConversion);
+        return this;
+    }
+
+    /**
+     * Limit the size of versioned objects that are converted as trees, when reading them and when serializing them
+     * to a tree before converting. The limits are checked as the object is read or written, so an oversized object
+     * fails with a {@link com.fasterxml.jackson.databind.JsonMappingException} before the rest of it is buffered.
+     * Nested versioned objects count towards the limits of the object containing them.
+     * <p>
+     * The size is estimated from the json text of the names and values read or written. Arrays read whole by
+     * {@link #withBatchConversion() batch conversion} are limited element by element. Values decoded by a
+     * {@link VersionedAsyncDecoder} are limited as they are buffered.
+     *
+     * @param maxBytes     maximum size of a versioned object
+     * @param maxDepth     maximum nesting depth of objects and arrays within a versioned object, the object itself included
+     * @param maxNodeCount maximum number of objects, arrays and values within a versioned object
+     * @return this module
+     */
+    public VersioningModule withTreeLimits(long maxBytes, int maxDepth, int maxNodeCount) {
+        options.setTreeLimits(new TreeLimits(maxBytes, maxDepth, maxNodeCount));
+        return this;
     }
 }
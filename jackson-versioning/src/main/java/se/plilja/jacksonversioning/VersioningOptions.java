@@ -0,0 +1,119 @@
+/*
+ * The MIT License
+ * Copyright © 2020 Patrik Lilja
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package se.plilja.jacksonversioning;
+
+/**
+ * Optional behaviour of the {@link VersioningModule}, shared by the serializers and deserializers it creates.
+ */
+class VersioningOptions {
+    private ParallelConversion parallelSerialization;
+    private ParallelConversion parallelDeserialization;
+    private boolean identityMemoization;
+    private ConvertedOutputCache convertedOutputCache;
+    private boolean batchConversion;
+    private boolean versionSpecificSerializers;
+    private boolean versionSpecificDeserializers;
+    private ConvertedInputCache convertedInputCache;
+    private AdaptiveConversion adaptiveConversion;
+    private TreeLimits treeLimits;
+
+    ParallelConversion getParallelSerialization() {
+        return parallelSerialization;
+    }
+
+    void setParallelSerialization(ParallelConversion parallelSerialization) {
+        this.parallelSerialization = parallelSerialization;
+    }
+
+    ParallelConversion getParallelDeserialization() {
+        return parallelDeserialization;
+    }
+
+    void setParallelDeserialization(ParallelConversion parallelDeserialization) {
+        this.parallelDeserialization = parallelDeserialization;
+    }
+
+    boolean isIdentityMemoization() {
+        return identityMemoization;
+    }
+
+    void setIdentityMemoization(boolean identityMemoization) {
+        this.identityMemoization = identityMemoization;
+    }
+
+    ConvertedOutputCache getConvertedOutputCache() {
+        return convertedOutputCache;
+    }
+
+    void setConvertedOutputCache(ConvertedOutputCache convertedOutputCache) {
+        this.convertedOutputCache = convertedOutputCache;
+    }
+
+    boolean isBatchConversion() {
+        return batchConversion;
+    }
+
+    void setBatchConversion(boolean batchConversion) {
+        this.batchConversion = batchConversion;
+    }
+
+    boolean isVersionSpecificSerializers() {
+        return versionSpecificSerializers;
+    }
+
+    void setVersionSpecificSerializers(boolean versionSpecificSerializers) {
+        this.versionSpecificSerializers = versionSpecificSerializers;
+    }
+
+    boolean isVersionSpecificDeserializers() {
+        return versionSpecificDeserializers;
+    }
+
+    void setVersionSpecificDeserializers(boolean versionSpecificDeserializers) {
+        this.versionSpecificDeserializers = versionSpecificDeserializers;
+    }
+
+    ConvertedInputCache getConvertedInputCache() {
+        return convertedInputCache;
+    }
+
+    void setConvertedInputCache(ConvertedInputCache convertedInputCache) {
+        this.convertedInputCache = convertedInputCache;
+    }
+
+    AdaptiveConversion getAdaptiveConversion() {
+        return adaptiveConversion;
+    }
+
+    void setAdaptiveConversion(AdaptiveConversion adaptiveConversion) {
+        this.adaptiveConversion = adaptiveConversion;
+    }
+
+    TreeLimits getTreeLimits() {
+        return treeLimits;
+    }
+
+    void setTreeLimits(TreeLimits treeLimits) {
+        this.treeLimits = treeLimits;
+    }
+}
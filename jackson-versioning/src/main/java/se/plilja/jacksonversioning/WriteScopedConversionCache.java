@@ -0,0 +1,86 @@
+/*
+ * The MIT License
+ * Copyright © 2020 Patrik Lilja
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package se.plilja.jacksonversioning;
+
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Converted model data of the objects serialized during a single write, stored as a per call attribute of
+ * the serializer provider so that it's discarded when the write completes. Objects are held by identity,
+ * mutable objects with changing equals and hashCode are therefore safe to use as keys. The cache is shared by the
+ * threads serializing the elements of a {@link ParallelCollectionSerializer parallel collection}.
+ */
+class WriteScopedConversionCache {
+    private static final Object ATTRIBUTE_KEY = WriteScopedConversionCache.class;
+
+    private final Map<Object, Map<Object, Entry>> entriesBySerializer = new IdentityHashMap<>();
+
+    static WriteScopedConversionCache get(SerializerProvider provider) {
+        WriteScopedConversionCache cache = (WriteScopedConversionCache) provider.getAttribute(ATTRIBUTE_KEY);
+        if (cache == null) {
+            cache = new WriteScopedConversionCache();
+            provider.setAttribute(ATTRIBUTE_KEY, cache);
+        }
+        return cache;
+    }
+
+    /**
+     * @param serializer serializer that produced the model data, the same object may be serialized differently
+     *                   through different serializers
+     * @param value      serialized object
+     */
+    synchronized Entry get(Object serializer, Object value) {
+        return entriesBySerializer
+                .computeIfAbsent(serializer, (key) -> new IdentityHashMap<>())
+                .computeIfAbsent(value, (key) -> new Entry());
+    }
+
+    static class Entry {
+        private final Map<Object, ObjectNode> convertedByVersion = new HashMap<>();
+        private ObjectNode modelData;
+
+        /**
+         * @return a copy of the model data before conversion, only kept for strategies that need it to resolve the version
+         */
+        synchronized ObjectNode getModelData() {
+            return modelData;
+        }
+
+        synchronized void setModelData(ObjectNode modelData) {
+            this.modelData = modelData;
+        }
+
+        synchronized ObjectNode getConverted(Object version) {
+            return convertedByVersion.get(version);
+        }
+
+        synchronized void putConverted(Object version, ObjectNode converted) {
+            convertedByVersion.put(version, converted);
+        }
+    }
+}
@@ -0,0 +1,134 @@
+/**
+ * The MIT License
+ * Copyright © 2020 Patrik Lilja
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package se.plilja.jacksonversioning
+
+import com.fasterxml.jackson.databind.ObjectMapper
+import com.fasterxml.jackson.databind.util.TokenBuffer
+import se.plilja.jacksonversioning.AdaptiveConversion.Direction
+import se.plilja.jacksonversioning.AdaptiveConversion.Engine
+import se.plilja.jacksonversioning.NestedConversionTest.Car
+import se.plilja.jacksonversioning.NestedConversionTest.Person
+import spock.lang.Specification
+
+class AdaptiveConversionTest extends Specification {
+
+    def versionStrategy = new IdentityMemoizationTest.IndependentVersionStrategy()
+    def adaptiveConversion = new AdaptiveConversion(3)
+    def mapper = new ObjectMapper().registerModule(new VersioningModule(new EnumVersionsDescription<>(Vs.class), versionStrategy)
+            .withAdaptiveConversion(adaptiveConversion))
+    def treeMapper = new ObjectMapper().registerModule(new VersioningModule(new EnumVersionsDescription<>(Vs.class), versionStrategy))
+
+    def 'an engine is chosen after warming up with both'() {
+        given:
+        versionStrategy.setVersion(Vs.V1)
+        def person = new Person(firstName: 'Per')
+
+        when:
+        (1..2).each { mapper.writeValueAsString(person) }
+
+        then:
+        adaptiveConversion.getEngine(Person, Vs.V1, Direction.SERIALIZATION) == null
+
+        when:
+        mapper.writeValueAsString(person)
+
+        then:
+        adaptiveConversion.getEngine(Person, Vs.V1, Direction.SERIALIZATION) != null
+        adaptiveConversion.decisions.find { it.type == Person && it.direction == Direction.SERIALIZATION }.meanStreamingNanos > 0
+    }
+
+    def 'both engines write the same output where streaming is allowed'() {
+        given:
+        versionStrategy.setVersion(Vs.V1)
+        def person = new Person(firstName: 'Per')
+        def streamingMapper = new ObjectMapper().registerModule(new VersioningModule(new EnumVersionsDescription<>(Vs.class), versionStrategy)
+                .withVersionSpecificSerializers())
+
+        when:
+        def written = (1..8).collect { mapper.writeValueAsBytes(person) }
+
+        then:
+        streamingMapper.writeValueAsBytes(person) == treeMapper.writeValueAsBytes(person)
+        written.every { it == treeMapper.writeValueAsBytes(person) }
+    }
+
+    def 'streaming is chosen when it writes the fields in another order than the tree'() {
+        given:
+        versionStrategy.setVersion(Vs.V1)
+        def car = new Car(make: 'toyota', owner: new Person(firstName: 'Per'))
+        def streamingMapper = new ObjectMapper().registerModule(new VersioningModule(new EnumVersionsDescription<>(Vs.class), versionStrategy)
+                .withVersionSpecificSerializers())
+
+        when:
+        def written = (1..8).collect { mapper.writeValueAsString(car) }
+        def decision = adaptiveConversion.decisions.find { it.type == Car && it.direction == Direction.SERIALIZATION }
+
+        then:
+        streamingMapper.writeValueAsString(car) != treeMapper.writeValueAsString(car)
+        AdaptiveConversion.isSameOutput(buffer(streamingMapper, car), buffer(treeMapper, car))
+        written.collect { mapper.readTree(it) }.toSet() == [treeMapper.readTree(treeMapper.writeValueAsString(car))] as Set
+        // the faster engine is chosen, streaming isn't rejected
+        decision.engine == (decision.meanStreamingNanos <= decision.meanTreeNanos ? Engine.STREAMING : Engine.TREE)
+    }
+
+    def 'streaming is rejected when it writes another value than the tree'() {
+        given:
+        def tree = buffer(treeMapper, [make: 'toyota', owner: [name: 'Per']])
+
+        expect:
+        !AdaptiveConversion.isSameOutput(tree, buffer(treeMapper, [make: 'toyota', owner: [name: 'Sten']]))
+        !AdaptiveConversion.isSameOutput(tree, buffer(treeMapper, [make: 'toyota']))
+        !AdaptiveConversion.isSameOutput(tree, buffer(treeMapper, [make: 'toyota', owner: ['Per']]))
+        AdaptiveConversion.isSameOutput(tree, buffer(treeMapper, [owner: [name: 'Per'], make: 'toyota']))
+    }
+
+    def buffer(ObjectMapper mapper, Object value) {
+        def result = new TokenBuffer(mapper, false)
+        mapper.writeValue(result, value)
+        return result
+    }
+
+    def 'values read with either engine are the same'() {
+        given:
+        versionStrategy.setVersion(Vs.V2)
+
+        when:
+        def cars = (1..8).collect { mapper.readValue('{"company":"toyota","owner":{"firstName":"Per"}}', Car) }
+
+        then:
+        cars*.make.toSet() == ['toyota'] as Set
+        cars*.owner*.firstName.toSet() == ['Per'] as Set
+        adaptiveConversion.getEngine(Car, Vs.V2, Direction.DESERIALIZATION) != null
+    }
+
+    def 'the tree is chosen without warm-up when the converter needs it'() {
+        given:
+        versionStrategy.setVersion(Vs.V1)
+
+        when:
+        mapper.readValue('{"model":"camry"}', AddedFieldTest.Car)
+
+        then:
+        adaptiveConversion.getEngine(AddedFieldTest.Car, Vs.V1, Direction.DESERIALIZATION) == Engine.TREE
+    }
+}
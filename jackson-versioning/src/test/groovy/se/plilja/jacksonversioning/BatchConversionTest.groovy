@@ -0,0 +1,169 @@
+/**
+ * The MIT License
+ * Copyright © 2020 Patrik Lilja
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package se.plilja.jacksonversioning
+
+import com.fasterxml.jackson.core.JsonParser
+import com.fasterxml.jackson.core.type.TypeReference
+import com.fasterxml.jackson.databind.DeserializationContext
+import com.fasterxml.jackson.databind.JsonDeserializer
+import com.fasterxml.jackson.databind.JsonMappingException
+import com.fasterxml.jackson.databind.ObjectMapper
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize
+import com.fasterxml.jackson.databind.node.JsonNodeFactory
+import com.fasterxml.jackson.databind.node.ObjectNode
+import spock.lang.Specification
+
+class BatchConversionTest extends Specification {
+
+    static List<List<Object>> batches = []
+
+    def versionsDescription = new EnumVersionsDescription<>(Vs.class)
+    def mapper = new ObjectMapper().registerModule(new VersioningModule(versionsDescription, new FieldVersionResolutionStrategy<>("_v", versionsDescription))
+            .withBatchConversion())
+
+    def setup() {
+        batches.clear()
+    }
+
+    @JsonVersioned(converterClass = CarConverter)
+    static class Car {
+        String make
+        int yearMade
+        Person owner
+    }
+
+    @JsonVersioned(converterClass = PersonConverter)
+    static class Person {
+        String firstName
+    }
+
+    static class Fleet {
+        List<Car> cars
+    }
+
+    static class Showroom {
+        @JsonDeserialize(contentUsing = MakeOnlyDeserializer)
+        List<Car> cars
+    }
+
+    static class MakeOnlyDeserializer extends JsonDeserializer<Car> {
+        @Override
+        Car deserialize(JsonParser parser, DeserializationContext context) {
+            return new Car(make: parser.text)
+        }
+    }
+
+    static class CarConverter extends AbstractVersionConverter<Vs> {
+        CarConverter() {
+            super(Car.class)
+            attributeRenamed(Vs.V3, "company", "make")
+            attributeAdded(Vs.V2, "yearMade", { data -> 2020 })
+        }
+
+        @Override
+        void convertUp(List<ObjectNode> modelData, Vs fromVersion, Vs toVersion, JsonNodeFactory nodeFactory) {
+            batches << [fromVersion, modelData.size()]
+            super.convertUp(modelData, fromVersion, toVersion, nodeFactory)
+        }
+    }
+
+    static class PersonConverter extends AbstractVersionConverter<Vs> {
+        PersonConverter() {
+            super(Person.class)
+            attributeRenamed(Vs.V2, "name", "firstName")
+        }
+    }
+
+    static final String CARS = '''[
+        {"_v":"V1","company":"volvo","owner":{"_v":"V1","name":"Per"}},
+        {"_v":"V3","make":"saab","yearMade":1999},
+        {"_v":"V2","company":"fiat","yearMade":2001,"owner":{"firstName":"Sten"}},
+        {"_v":"V1","company":"audi"},
+        null,
+        {"company":"kia","_v":"V2","yearMade":2010}
+    ]'''
+
+    def 'elements of mixed versions are converted in groups and kept in order'() {
+        when:
+        List<Car> cars = mapper.readValue(CARS, new TypeReference<List<Car>>() {})
+
+        then:
+        cars.collect { it?.make } == ['volvo', 'saab', 'fiat', 'audi', null, 'kia']
+        cars.collect { it?.yearMade } == [2020, 1999, 2001, 2020, null, 2010]
+        cars[0].owner.firstName == 'Per'
+        cars[2].owner.firstName == 'Sten'
+        batches == [[Vs.V1, 2], [Vs.V2, 2]]
+    }
+
+    def 'arrays and collection properties are converted in batches'() {
+        when:
+        def array = mapper.readValue(CARS, Car[])
+        def fleet = mapper.readValue('{"cars":' + CARS + '}', Fleet)
+
+        then:
+        array.collect { it?.make } == ['volvo', 'saab', 'fiat', 'audi', null, 'kia']
+        fleet.cars.collect { it?.make } == ['volvo', 'saab', 'fiat', 'audi', null, 'kia']
+        batches == [[Vs.V1, 2], [Vs.V2, 2], [Vs.V1, 2], [Vs.V2, 2]]
+    }
+
+    def 'batch conversion gives the same result as converting one element at a time'() {
+        given:
+        def elementMapper = new ObjectMapper().registerModule(new VersioningModule(versionsDescription, new FieldVersionResolutionStrategy<>("_v", versionsDescription)))
+
+        when:
+        List<Car> batched = mapper.readValue(CARS, new TypeReference<List<Car>>() {})
+        List<Car> single = elementMapper.readValue(CARS, new TypeReference<List<Car>>() {})
+
+        then:
+        mapper.writeValueAsString(batched) == elementMapper.writeValueAsString(single)
+    }
+
+    def 'each element is read within the tree limits'() {
+        given:
+        def limitedMapper = new ObjectMapper().registerModule(new VersioningModule(versionsDescription, new FieldVersionResolutionStrategy<>("_v", versionsDescription))
+                .withBatchConversion()
+                .withTreeLimits(1000, 5, 10))
+        def cars = (0..<20).collect { '{"_v":"V2","company":"make' + it + '"}' }
+
+        when:
+        def read = limitedMapper.readValue('[' + cars.join(',') + ']', Car[])
+
+        then:
+        read*.make == (0..<20).collect { "make$it" }
+
+        when:
+        limitedMapper.readValue('[' + cars.join(',') + ',{"_v":"V2","company":[' + (1..20).join(',') + ']}]', Car[])
+
+        then:
+        def e = thrown(JsonMappingException)
+        e.message.contains('maximum node count of 10')
+    }
+
+    def 'content deserializers of the property are used'() {
+        when:
+        def showroom = mapper.readValue('{"cars":["volvo","saab"]}', Showroom)
+
+        then:
+        showroom.cars*.make == ['volvo', 'saab']
+    }
+}
@@ -0,0 +1,86 @@
+/**
+ * The MIT License
+ * Copyright © 2020 Patrik Lilja
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package se.plilja.jacksonversioning
+
+import com.fasterxml.jackson.core.JsonFactory
+import com.fasterxml.jackson.core.type.TypeReference
+import com.fasterxml.jackson.databind.ObjectMapper
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory
+import com.fasterxml.jackson.dataformat.ion.IonFactory
+import com.fasterxml.jackson.dataformat.smile.SmileFactory
+import spock.lang.Specification
+
+/**
+ * Compares payload size and throughput of versioned conversion in json and the binary formats.
+ * Not part of the regular test run, run it with {@code mvn test -Dtest=BinaryFormatBenchmark}.
+ */
+class BinaryFormatBenchmark extends Specification {
+
+    static final int WARMUP_ROUNDS = 200
+    static final int MEASURED_ROUNDS = 1000
+
+    def versionStrategy = new FixedVersionStrategy<Vs>()
+    def versionsDescription = new EnumVersionsDescription<>(Vs.class)
+    def type = new TypeReference<List<BinaryFormatTest.Car>>() {}
+
+    def createMapper(JsonFactory factory) {
+        return new ObjectMapper(factory).registerModule(new VersioningModule(versionsDescription, versionStrategy))
+    }
+
+    def createCars() {
+        return (0..<100).collect {
+            new BinaryFormatTest.Car(make: "make$it", yearMade: 2000 + it, registration: [it, 1, 2, 3] as byte[],
+                    owner: new BinaryFormatTest.Person(firstName: "owner$it"))
+        }
+    }
+
+    def roundsPerSecond(Closure<?> round) {
+        WARMUP_ROUNDS.times { round() }
+        long start = System.nanoTime()
+        MEASURED_ROUNDS.times { round() }
+        return MEASURED_ROUNDS * 1_000_000_000L / (System.nanoTime() - start)
+    }
+
+    def 'throughput of old versions per format'() {
+        given:
+        def mapper = createMapper(factory)
+        def cars = createCars()
+        versionStrategy.setVersion(Vs.V1)
+        def bytes = mapper.writeValueAsBytes(cars)
+
+        when:
+        def writesPerSecond = roundsPerSecond { mapper.writeValueAsBytes(cars) }
+        def readsPerSecond = roundsPerSecond { mapper.readValue(bytes, type) }
+        println String.format('%-6s %8d bytes %10.0f writes/s %10.0f reads/s', name, bytes.length, writesPerSecond, readsPerSecond)
+
+        then:
+        mapper.readValue(bytes, type)*.make == cars*.make
+
+        where:
+        name    | factory
+        'json'  | new JsonFactory()
+        'smile' | new SmileFactory()
+        'cbor'  | new CBORFactory()
+        'ion'   | IonFactory.forBinaryWriters()
+    }
+}
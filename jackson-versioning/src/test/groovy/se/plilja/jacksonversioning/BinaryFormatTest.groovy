@@ -0,0 +1,119 @@
+/**
+ * The MIT License
+ * Copyright © 2020 Patrik Lilja
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package se.plilja.jacksonversioning
+
+import com.fasterxml.jackson.core.type.TypeReference
+import com.fasterxml.jackson.databind.ObjectMapper
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory
+import com.fasterxml.jackson.dataformat.ion.IonFactory
+import com.fasterxml.jackson.dataformat.smile.SmileFactory
+import spock.lang.Specification
+
+class BinaryFormatTest extends Specification {
+
+    def versionStrategy = new FixedVersionStrategy<Vs>()
+    def versionsDescription = new EnumVersionsDescription<>(Vs.class)
+
+    def createMapper(factory) {
+        return new ObjectMapper(factory).registerModule(new VersioningModule(versionsDescription, versionStrategy))
+    }
+
+    @JsonVersioned(converterClass = CarConverter)
+    static class Car {
+        String make
+        int yearMade
+        byte[] registration
+        Person owner
+    }
+
+    @JsonVersioned(converterClass = PersonConverter)
+    static class Person {
+        String firstName
+    }
+
+    static class CarConverter extends AbstractVersionConverter<Vs> {
+        CarConverter() {
+            super(Car.class)
+            attributeRenamed(Vs.V3, "company", "make")
+            attributeAdded(Vs.V2, "yearMade", { data -> 2020 })
+        }
+    }
+
+    static class PersonConverter extends AbstractVersionConverter<Vs> {
+        PersonConverter() {
+            super(Person.class)
+            attributeRenamed(Vs.V2, "name", "firstName")
+        }
+    }
+
+    def createCars() {
+        return (0..<100).collect { new Car(make: "make$it", yearMade: 2000 + it, registration: [it, 1, 2, 3] as byte[], owner: new Person(firstName: "owner$it")) }
+    }
+
+    def 'old versions are written and read in binary formats'() {
+        given:
+        def mapper = createMapper(factory)
+        def jsonMapper = createMapper(null)
+        def car = createCars()[7]
+        versionStrategy.setVersion(Vs.V1)
+
+        when:
+        def bytes = mapper.writeValueAsBytes(car)
+        def tree = mapper.readTree(bytes)
+        def result = mapper.readValue(bytes, Car)
+
+        then:
+        tree.fieldNames().toList() == ['registration', 'owner', 'company']
+        tree.get('owner').get('name').asText() == 'owner7'
+        tree.get('registration').isBinary()
+        result.make == 'make7'
+        result.yearMade == 2020
+        result.registration == [7, 1, 2, 3] as byte[]
+        result.owner.firstName == 'owner7'
+        jsonMapper.readTree(jsonMapper.writeValueAsBytes(car)).get('company').asText() == 'make7'
+
+        where:
+        factory << [new SmileFactory(), new CBORFactory(), IonFactory.forBinaryWriters()]
+    }
+
+    def 'binary formats give smaller payloads than json'() {
+        given:
+        def cars = createCars()
+        def type = new TypeReference<List<Car>>() {}
+        versionStrategy.setVersion(Vs.V1)
+
+        when:
+        def json = createMapper(null).writeValueAsBytes(cars)
+        def smile = createMapper(new SmileFactory()).writeValueAsBytes(cars)
+        def cbor = createMapper(new CBORFactory()).writeValueAsBytes(cars)
+        def ion = createMapper(IonFactory.forBinaryWriters()).writeValueAsBytes(cars)
+
+        then:
+        smile.length < json.length
+        cbor.length < json.length
+        ion.length < json.length
+        createMapper(new SmileFactory()).readValue(smile, type)*.make == cars*.make
+        createMapper(new CBORFactory()).readValue(cbor, type)*.make == cars*.make
+        createMapper(IonFactory.forBinaryWriters()).readValue(ion, type)*.make == cars*.make
+    }
+}
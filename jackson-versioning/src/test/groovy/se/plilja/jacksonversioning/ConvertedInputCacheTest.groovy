@@ -0,0 +1,154 @@
+/**
+ * The MIT License
+ * Copyright © 2020 Patrik Lilja
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package se.plilja.jacksonversioning
+
+import com.fasterxml.jackson.databind.ObjectMapper
+import spock.lang.Specification
+
+import java.util.concurrent.atomic.AtomicInteger
+
+class ConvertedInputCacheTest extends Specification {
+
+    static AtomicInteger conversions = new AtomicInteger()
+
+    def versionStrategy = new FixedVersionStrategy<Vs>(version: Vs.V1)
+    def cache = new ConvertedInputCache(1024)
+    def mapper = new ObjectMapper().registerModule(new VersioningModule(new EnumVersionsDescription<>(Vs.class), versionStrategy)
+            .withConvertedInputCache(cache))
+
+    def setup() {
+        conversions.set(0)
+    }
+
+    @JsonVersioned(converterClass = ItemConverter)
+    static class Item {
+        String title
+        Tag tag
+    }
+
+    @JsonVersioned(converterClass = TagConverter)
+    static class Tag {
+        String label
+    }
+
+    static class ItemConverter extends AbstractVersionConverter<Vs> {
+        ItemConverter() {
+            super(Item.class)
+            attributeModified(Vs.V2, "title", { data, value -> value.asText() }, { data, value -> conversions.incrementAndGet(); value.asText().toUpperCase() })
+        }
+    }
+
+    static class TagConverter extends AbstractVersionConverter<Vs> {
+        TagConverter() {
+            super(Tag.class)
+            attributeRenamed(Vs.V2, "name", "label")
+        }
+    }
+
+    def 'identical content is converted once'() {
+        when:
+        def items = (1..3).collect { mapper.readValue('{"title":"car","tag":{"name":"red"}}', Item) }
+
+        then:
+        items*.title == ['CAR', 'CAR', 'CAR']
+        items*.tag*.label == ['red', 'red', 'red']
+        conversions.get() == 1
+        cache.hitCount == 2
+        cache.missCount == 1
+        cache.entryCount == 1
+    }
+
+    def 'content and version are part of the key'() {
+        when:
+        mapper.readValue('{"title":"car"}', Item)
+        mapper.readValue('{"title":"bus"}', Item)
+        versionStrategy.setVersion(Vs.V2)
+        mapper.readValue('{"title":"car"}', Item)
+
+        then:
+        conversions.get() == 2
+        cache.entryCount == 3
+    }
+
+    def 'cached data is not modified by binding'() {
+        given:
+        def first = mapper.readValue('{"title":"car","tag":{"name":"red"}}', Item)
+        first.tag.label = 'blue'
+
+        expect:
+        mapper.readValue('{"title":"car","tag":{"name":"red"}}', Item).tag.label == 'red'
+    }
+
+    def 'least recently used content is evicted'() {
+        given:
+        def smallCache = new ConvertedInputCache(40)
+        def smallMapper = new ObjectMapper().registerModule(new VersioningModule(new EnumVersionsDescription<>(Vs.class), versionStrategy)
+                .withConvertedInputCache(smallCache))
+
+        when:
+        ['car', 'bus', 'tram'].each { smallMapper.readValue("{\"title\":\"${it}\"}", Item) }
+
+        then:
+        smallCache.evictionCount == 1
+        smallCache.sizeInBytes <= 40
+    }
+
+    def 'formatting of the content is not part of the key'() {
+        when:
+        mapper.readValue('{"title":"car","tag":{"name":"red"}}', Item)
+        def item = mapper.readValue(' {\n  "title" : "car",\n  "tag" : { "name" : "red" }\n}', Item)
+
+        then:
+        item.title == 'CAR'
+        conversions.get() == 1
+        cache.entryCount == 1
+    }
+
+    def 'entries are weighed by the converted data'() {
+        when:
+        mapper.readValue('{"title":"car","tag":{"name":"red"}}', Item)
+
+        then:
+        cache.sizeInBytes == '{"title":"CAR","tag":{"label":"red"}}'.length()
+    }
+
+    def 'readers are given copies of the cached data'() {
+        given:
+        def modelData = mapper.readTree('{"title":"car","tag":{"label":"red"}}')
+        def convertedNodes = Collections.newSetFromMap(new IdentityHashMap())
+        convertedNodes.add(modelData)
+        convertedNodes.add(modelData.get('tag'))
+        def entry = cache.put(new ConvertedInputCache.Key(Item, Vs.V1, new byte[0]), modelData, convertedNodes)
+
+        when:
+        def copy = entry.copy()
+        copy.converted.with('tag').put('label', 'blue')
+
+        then:
+        copy.converted !== modelData
+        copy.convertedNodes.size() == 2
+        copy.convertedNodes.contains(copy.converted)
+        copy.convertedNodes.contains(copy.converted.get('tag'))
+        modelData.get('tag').get('label').asText() == 'red'
+    }
+}
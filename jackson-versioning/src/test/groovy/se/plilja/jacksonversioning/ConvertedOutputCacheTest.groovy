@@ -0,0 +1,237 @@
+/**
+ * The MIT License
+ * Copyright © 2020 Patrik Lilja
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package se.plilja.jacksonversioning
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties
+import com.fasterxml.jackson.annotation.JsonView
+import com.fasterxml.jackson.databind.ObjectMapper
+import com.fasterxml.jackson.databind.PropertyNamingStrategies
+import com.fasterxml.jackson.databind.SerializationFeature
+import spock.lang.Specification
+
+import java.util.concurrent.atomic.AtomicInteger
+
+class ConvertedOutputCacheTest extends Specification {
+
+    static AtomicInteger conversions = new AtomicInteger()
+
+    def versionStrategy = new IdentityMemoizationTest.IndependentVersionStrategy()
+    def versionsDescription = new EnumVersionsDescription<>(Vs.class)
+    def cache = new ConvertedOutputCache(1024)
+    def mapper = new ObjectMapper().registerModule(new VersioningModule(versionsDescription, versionStrategy)
+            .withConvertedOutputCache(cache))
+
+    def setup() {
+        conversions.set(0)
+    }
+
+    @JsonVersioned(converterClass = ItemConverter)
+    static class Item implements CacheableVersioned {
+        String id
+        String title
+
+        @Override
+        Object versioningCacheKey() {
+            return id
+        }
+    }
+
+    static class Public {
+    }
+
+    @JsonVersioned(converterClass = ItemConverter)
+    static class SecretItem extends Item {
+        @JsonView(Public)
+        String getId() {
+            return super.getId()
+        }
+
+        @JsonView(SecretItem)
+        String getTitle() {
+            return super.getTitle()
+        }
+    }
+
+    static class Catalog {
+        List<Item> items
+    }
+
+    static class Listing {
+        Item a
+        @JsonIgnoreProperties("title")
+        Item b
+    }
+
+    static class ItemConverter extends AbstractVersionConverter<Vs> {
+        ItemConverter() {
+            super(Item.class)
+            attributeRenamed(Vs.V2, "name", "title")
+            attributeModified(Vs.V3, "title", { data, value -> conversions.incrementAndGet(); value?.asText() }, { data, value -> value?.asText() })
+        }
+    }
+
+    def 'converted output is reused across writes'() {
+        given:
+        versionStrategy.setVersion(Vs.V1)
+        def catalog = new Catalog(items: [new Item(id: "1", title: "chair"), new Item(id: "2", title: "table")])
+
+        when:
+        def first = mapper.writeValueAsString(catalog)
+        def second = mapper.writeValueAsString(catalog)
+
+        then:
+        first == '{"items":[{"id":"1","name":"chair"},{"id":"2","name":"table"}]}'
+        second == first
+        conversions.get() == 2
+        cache.hitCount == 2
+        cache.missCount == 2
+        cache.entryCount == 2
+        cache.sizeInBytes == '{"id":"1","name":"chair"}'.length() + '{"id":"2","name":"table"}'.length()
+    }
+
+    def 'values written with property annotations are cached separately'() {
+        given:
+        versionStrategy.setVersion(Vs.V3)
+        def item = new Item(id: "1", title: "chair")
+
+        when:
+        def json = mapper.writeValueAsString(new Listing(a: item, b: item))
+        def again = mapper.writeValueAsString(new Listing(a: item, b: item))
+
+        then:
+        json == '{"a":{"id":"1","title":"chair"},"b":{"id":"1"}}'
+        again == json
+        cache.entryCount == 2
+    }
+
+    def 'each version is cached separately'() {
+        given:
+        def item = new Item(id: "1", title: "chair")
+
+        when:
+        versionStrategy.setVersion(Vs.V1)
+        def v1 = mapper.writeValueAsString(item)
+        versionStrategy.setVersion(Vs.V3)
+        def v3 = mapper.writeValueAsString(item)
+        versionStrategy.setVersion(Vs.V1)
+        def v1Again = mapper.writeValueAsString(item)
+
+        then:
+        v1 == '{"id":"1","name":"chair"}'
+        v3 == '{"id":"1","title":"chair"}'
+        v1Again == v1
+        cache.entryCount == 2
+    }
+
+    def 'invalidated values are converted again'() {
+        given:
+        versionStrategy.setVersion(Vs.V1)
+        def item = new Item(id: "1", title: "chair")
+        mapper.writeValueAsString(item)
+
+        when:
+        item.title = "sofa"
+        def stale = mapper.writeValueAsString(item)
+        cache.invalidate(Item, "1")
+        def fresh = mapper.writeValueAsString(item)
+
+        then:
+        stale == '{"id":"1","name":"chair"}'
+        fresh == '{"id":"1","name":"sofa"}'
+    }
+
+    def 'least recently used values are evicted when the cache is full'() {
+        given:
+        def smallCache = new ConvertedOutputCache(60)
+        def smallCacheMapper = new ObjectMapper().registerModule(new VersioningModule(versionsDescription, versionStrategy)
+                .withConvertedOutputCache(smallCache))
+        versionStrategy.setVersion(Vs.V1)
+
+        when:
+        (1..5).each { smallCacheMapper.writeValueAsString(new Item(id: "$it", title: "item$it")) }
+
+        then:
+        smallCache.entryCount == 2
+        smallCache.evictionCount == 3
+        smallCache.sizeInBytes <= 60
+    }
+
+    def 'pretty printed output is not cached'() {
+        given:
+        versionStrategy.setVersion(Vs.V1)
+        def catalog = new Catalog(items: [new Item(id: "1", title: "chair")])
+
+        when:
+        def result = mapper.writer(SerializationFeature.INDENT_OUTPUT).writeValueAsString(catalog)
+
+        then:
+        result == new ObjectMapper().registerModule(new VersioningModule(versionsDescription, versionStrategy))
+                .writer(SerializationFeature.INDENT_OUTPUT).writeValueAsString(catalog)
+        cache.entryCount == 0
+    }
+
+    def 'strategies that depend on model data bypass the cache'() {
+        given:
+        def dataDependentMapper = new ObjectMapper().registerModule(new VersioningModule(versionsDescription, new FixedVersionStrategy<Vs>(version: Vs.V1))
+                .withConvertedOutputCache(cache))
+
+        when:
+        def result = dataDependentMapper.writeValueAsString(new Item(id: "1", title: "chair"))
+
+        then:
+        result == '{"id":"1","name":"chair"}'
+        cache.entryCount == 0
+    }
+
+    def 'writes with an active view bypass the cache'() {
+        given:
+        versionStrategy.setVersion(Vs.V1)
+        def item = new SecretItem(id: "1", title: "chair")
+
+        when:
+        def restricted = mapper.writerWithView(Public).writeValueAsString(item)
+        def full = mapper.writeValueAsString(item)
+
+        then:
+        restricted == '{"id":"1","name":null}'
+        full == '{"id":"1","name":"chair"}'
+        cache.entryCount == 1
+    }
+
+    def 'mappers sharing a cache keep their own output'() {
+        given:
+        def upperCaseMapper = new ObjectMapper().setPropertyNamingStrategy(PropertyNamingStrategies.UPPER_CAMEL_CASE)
+                .registerModule(new VersioningModule(versionsDescription, versionStrategy).withConvertedOutputCache(cache))
+        versionStrategy.setVersion(Vs.V3)
+        def item = new Item(id: "1", title: "chair")
+
+        when:
+        def lower = mapper.writeValueAsString(item)
+        def upper = upperCaseMapper.writeValueAsString(item)
+
+        then:
+        lower == '{"id":"1","title":"chair"}'
+        upper == '{"Id":"1","Title":"chair"}'
+        cache.entryCount == 2
+    }
+}
@@ -0,0 +1,128 @@
+/**
+ * The MIT License
+ * Copyright © 2020 Patrik Lilja
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package se.plilja.jacksonversioning
+
+import com.fasterxml.jackson.annotation.JsonTypeInfo
+import com.fasterxml.jackson.databind.ObjectMapper
+import com.fasterxml.jackson.databind.node.JsonNodeFactory
+import spock.lang.Specification
+
+class FieldProjectionTest extends Specification {
+
+    def versionStrategy = new FixedVersionStrategy<Vs>()
+    def mapper = new ObjectMapper().registerModule(new VersioningModule(new EnumVersionsDescription<>(Vs.class), versionStrategy))
+
+    def setup() {
+        CarConverter.priceLookups = 0
+        CarConverter.ownerLookups = 0
+    }
+
+    @JsonVersioned(converterClass = CarConverter)
+    static class Car {
+        String id
+        String make
+        String model
+    }
+
+    static class Parking {
+        @JsonTypeInfo(use = JsonTypeInfo.Id.CLASS, property = 'type')
+        Car car
+    }
+
+    static class CarConverter extends AbstractVersionConverter<Vs> {
+        static int priceLookups
+        static int ownerLookups
+
+        CarConverter() {
+            super(Car.class)
+            attributeRemoved(Vs.V2, "price", Set.of("model"), { data -> priceLookups++; data.get("model").asText() == 'camry' ? 20000 : 10000 })
+            attributeRemoved(Vs.V2, "owner", { data -> ownerLookups++; 'Per' })
+            attributeRenamed(Vs.V3, "company", "make")
+        }
+    }
+
+    def car = new Car(id: '1', make: 'toyota', model: 'camry')
+
+    def 'only requested attributes are converted and written'() {
+        given:
+        versionStrategy.setVersion(Vs.V1)
+        def writer = FieldProjection.of(Car, fields as String[]).applyTo(mapper.writer())
+
+        when:
+        def json = writer.writeValueAsString(car)
+
+        then:
+        json == expected
+        CarConverter.priceLookups == priceLookups
+        CarConverter.ownerLookups == ownerLookups
+
+        where:
+        fields               || expected                                           | priceLookups | ownerLookups
+        ['id', 'company']    || '{"id":"1","company":"toyota"}'                    | 0            | 0
+        ['id', 'price']      || '{"id":"1","price":20000}'                         | 1            | 0
+        ['id', 'owner']      || '{"id":"1","owner":"Per"}'                         | 0            | 1
+        ['company', 'model'] || '{"model":"camry","company":"toyota"}'             | 0            | 0
+    }
+
+    def 'attributes are projected without converting'() {
+        given:
+        versionStrategy.setVersion(Vs.V3)
+
+        expect:
+        FieldProjection.of(Car, 'id', 'make').applyTo(mapper.writer()).writeValueAsString(car) == '{"id":"1","make":"toyota"}'
+        mapper.writeValueAsString(car) == '{"id":"1","make":"toyota","model":"camry"}'
+    }
+
+    def 'the type id is kept with the projected attributes'() {
+        given:
+        versionStrategy.setVersion(version)
+        def writer = FieldProjection.of(Car, 'id').applyTo(mapper.writer())
+
+        expect:
+        writer.writeValueAsString(new Parking(car: car)) == '{"car":{"type":"' + Car.name + '","id":"1"}}'
+
+        where:
+        version << [Vs.V1, Vs.V3]
+    }
+
+    def 'plans are shared by requests differing in attributes no conversion writes'() {
+        given:
+        def converter = new CarConverter()
+        def plans = AbstractVersionConverter.getDeclaredField('projectionPlans').with { accessible = true; get(converter) }
+
+        when:
+        (0..<1000).each {
+            def data = JsonNodeFactory.instance.objectNode().put('id', '1').put('model', 'camry')
+            converter.convertDown(data, Vs.V3, Vs.V1, JsonNodeFactory.instance, Set.of('price', "unknown$it".toString()))
+            assert data.get('price').asInt() == 20000
+        }
+        (0..<1000).each {
+            def data = JsonNodeFactory.instance.objectNode().put('id', '1')
+            converter.convertDown(data, Vs.V3, Vs.V1, JsonNodeFactory.instance, Set.of('id', "unknown$it".toString()))
+        }
+
+        then:
+        plans.size() == 1
+        CarConverter.priceLookups == 1000
+    }
+}
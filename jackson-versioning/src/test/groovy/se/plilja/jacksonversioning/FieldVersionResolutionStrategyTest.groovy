@@ -0,0 +1,118 @@
+/**
+ * The MIT License
+ * Copyright © 2020 Patrik Lilja
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package se.plilja.jacksonversioning
+
+import com.fasterxml.jackson.databind.JsonMappingException
+import com.fasterxml.jackson.databind.ObjectMapper
+import com.fasterxml.jackson.databind.node.ObjectNode
+import se.plilja.jacksonversioning.NestedConversionTest.Car
+import se.plilja.jacksonversioning.NestedConversionTest.Garage
+import spock.lang.Specification
+
+class FieldVersionResolutionStrategyTest extends Specification {
+
+    def versionsDescription = new EnumVersionsDescription<>(Vs.class)
+    def versionStrategy = new CountingFieldVersionStrategy(versionsDescription)
+    def mapper = new ObjectMapper().registerModule(new VersioningModule(versionsDescription, versionStrategy))
+
+    static class CountingFieldVersionStrategy extends FieldVersionResolutionStrategy<Vs> {
+        int treeResolutions
+
+        CountingFieldVersionStrategy(VersionsDescription<Vs> versionsDescription, Vs serializeToVersion = Vs.V3) {
+            super("_v", versionsDescription, serializeToVersion)
+        }
+
+        @Override
+        Vs getDeserializeToVersion(ObjectNode object) {
+            treeResolutions++
+            return super.getDeserializeToVersion(object)
+        }
+    }
+
+    def 'old data is converted using the version field'() {
+        when:
+        def car = mapper.readValue(json, Car)
+
+        then:
+        car.make == 'toyota'
+        car.owner.firstName == 'Per'
+
+        where:
+        json << [
+                '{"_v":"V1","company":"toyota","owner":{"_v":"V1","name":"Per"}}',
+                '{"company":"toyota","_v":"V2","owner":{"_v":"V1","name":"Per"}}',
+                '{"owner":{"name":"Per","_v":"V1"},"company":"toyota","_v":"V2"}',
+        ]
+    }
+
+    def 'current data is bound without building a tree'() {
+        when:
+        def garage = mapper.readValue(json, Garage)
+
+        then:
+        garage.name == 'Downtown'
+        garage.cars*.make == ['toyota', 'volvo']
+        garage.cars*.owner*.firstName == ['Per', null]
+        versionStrategy.treeResolutions == 0
+
+        where:
+        json << [
+                '{"_v":"V3","name":"Downtown","cars":[{"_v":"V3","make":"toyota","owner":{"firstName":"Per"}},{"make":"volvo"}]}',
+                '{"name":"Downtown","cars":[{"make":"toyota","owner":{"firstName":"Per","_v":"V3"}},{"make":"volvo","_v":"V3"}],"_v":"V3"}',
+                '{"name":"Downtown","cars":[{"make":"toyota","owner":{"firstName":"Per"}},{"make":"volvo"}]}',
+        ]
+    }
+
+    def 'data is bound when nested in other objects'() {
+        when:
+        def cars = mapper.readValue('[{"company":"toyota","_v":"V2"},{"make":"volvo","_v":"V3"}]', Car[])
+
+        then:
+        cars*.make == ['toyota', 'volvo']
+    }
+
+    def 'unknown versions are reported'() {
+        when:
+        mapper.readValue('{"make":"toyota","_v":"V7"}', Car)
+
+        then:
+        def e = thrown(JsonMappingException)
+        e.message.startsWith('Unknown version V7 in field _v')
+    }
+
+    def 'the version field is written first'() {
+        given:
+        def oldVersionMapper = new ObjectMapper().registerModule(new VersioningModule(versionsDescription, new CountingFieldVersionStrategy(versionsDescription, Vs.V1)))
+        def car = new Car(make: 'toyota', owner: new NestedConversionTest.Person(firstName: 'Per'))
+
+        expect:
+        mapper.writeValueAsString(car) == '{"_v":"V3","make":"toyota","owner":{"_v":"V3","firstName":"Per"}}'
+        oldVersionMapper.writeValueAsString(car) == '{"_v":"V1","owner":{"_v":"V1","name":"Per"},"company":"toyota"}'
+        mapper.readValue(oldVersionMapper.writeValueAsString(car), Car).owner.firstName == 'Per'
+    }
+
+    def 'the read version depends on the model data'() {
+        expect:
+        !versionStrategy.isIndependentOfModelData()
+    }
+}
@@ -0,0 +1,80 @@
+/**
+ * The MIT License
+ * Copyright © 2020 Patrik Lilja
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package se.plilja.jacksonversioning
+
+import com.fasterxml.jackson.databind.ObjectMapper
+import com.fasterxml.jackson.databind.node.JsonNodeFactory
+import com.fasterxml.jackson.databind.node.ObjectNode
+import spock.lang.Specification
+
+class FrozenConverterTest extends Specification {
+
+    def mapper = new ObjectMapper()
+
+    static class CarConverter extends AbstractVersionConverter<Vs> {
+        CarConverter() {
+            super(Object.class)
+            attributeRenamed(Vs.V2, "company", "make")
+            attributeAdded(Vs.V3, "color", { data -> "black" })
+        }
+
+        void registerLate() {
+            attributeRemoved(Vs.V3, "yearMade", { data -> 2020 })
+        }
+    }
+
+    def 'conversions can not be registered after the converter has been used'() {
+        given:
+        def converter = new CarConverter()
+        converter.convertUp((ObjectNode) mapper.readTree('{"company":"volvo"}'), Vs.V1, Vs.V3, JsonNodeFactory.instance)
+
+        when:
+        converter.registerLate()
+
+        then:
+        thrown(IllegalStateException)
+    }
+
+    def 'frozen conversions are applied between the given versions'() {
+        given:
+        def converter = new CarConverter()
+        def data = (ObjectNode) mapper.readTree(json)
+
+        when:
+        if (from < to)
+            converter.convertUp(data, from, to, JsonNodeFactory.instance)
+        else
+            converter.convertDown(data, from, to, JsonNodeFactory.instance)
+
+        then:
+        data.toString() == expected
+
+        where:
+        json                                || from  | to    | expected
+        '{"company":"volvo"}'               || Vs.V1 | Vs.V3 | '{"make":"volvo","color":"black"}'
+        '{"company":"volvo"}'               || Vs.V1 | Vs.V2 | '{"make":"volvo"}'
+        '{"make":"volvo"}'                  || Vs.V2 | Vs.V3 | '{"make":"volvo","color":"black"}'
+        '{"make":"volvo","color":"red"}'    || Vs.V3 | Vs.V1 | '{"company":"volvo"}'
+        '{"make":"volvo","color":"red"}'    || Vs.V3 | Vs.V2 | '{"make":"volvo"}'
+    }
+}
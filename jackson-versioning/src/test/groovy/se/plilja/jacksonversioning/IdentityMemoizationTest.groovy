@@ -0,0 +1,134 @@
+/**
+ * The MIT License
+ * Copyright © 2020 Patrik Lilja
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package se.plilja.jacksonversioning
+
+import com.fasterxml.jackson.databind.ObjectMapper
+import com.fasterxml.jackson.databind.node.ObjectNode
+import spock.lang.Specification
+
+import java.util.concurrent.atomic.AtomicInteger
+
+class IdentityMemoizationTest extends Specification {
+
+    static AtomicInteger personConversions = new AtomicInteger()
+
+    def versionsDescription = new EnumVersionsDescription<>(Vs.class)
+
+    def setup() {
+        personConversions.set(0)
+    }
+
+    static class IndependentVersionStrategy extends FixedVersionStrategy<Vs> {
+        @Override
+        boolean isIndependentOfModelData() {
+            return true
+        }
+    }
+
+    static class NameDependentVersionStrategy extends FixedVersionStrategy<Vs> {
+        @Override
+        Vs getSerializeToVersion(ObjectNode object) {
+            return object.get("firstName").asText().startsWith("old") ? Vs.V1 : Vs.V3
+        }
+    }
+
+    @JsonVersioned(converterClass = CarConverter)
+    static class Car {
+        String make
+        Person owner
+    }
+
+    @JsonVersioned(converterClass = PersonConverter)
+    static class Person {
+        String firstName
+    }
+
+    static class CarConverter extends AbstractVersionConverter<Vs> {
+        CarConverter() {
+            super(Car.class)
+            attributeRenamed(Vs.V3, "company", "make")
+        }
+    }
+
+    static class PersonConverter extends AbstractVersionConverter<Vs> {
+        PersonConverter() {
+            super(Person.class)
+            attributeModified(Vs.V2, "firstName",
+                    { data, value -> personConversions.incrementAndGet(); value.asText().toUpperCase() },
+                    { data, value -> value.asText().toLowerCase() })
+        }
+    }
+
+    def 'shared objects are converted once per write'() {
+        given:
+        def versionStrategy = new IndependentVersionStrategy(version: Vs.V1)
+        def mapper = new ObjectMapper().registerModule(new VersioningModule(versionsDescription, versionStrategy))
+        def memoizingMapper = new ObjectMapper().registerModule(new VersioningModule(versionsDescription, versionStrategy)
+                .withIdentityMemoization())
+        def owner = new Person(firstName: "kalle")
+        def cars = (0..<10).collect { new Car(make: "make$it", owner: owner) }
+
+        when:
+        def expected = mapper.writeValueAsString(cars)
+        personConversions.set(0)
+        def actual = memoizingMapper.writeValueAsString(cars)
+
+        then:
+        actual == expected
+        actual.contains('{"owner":{"firstName":"KALLE"},"company":"make0"}')
+        personConversions.get() == 1
+    }
+
+    def 'objects modified between writes are converted again'() {
+        given:
+        def mapper = new ObjectMapper().registerModule(new VersioningModule(versionsDescription, new IndependentVersionStrategy(version: Vs.V1))
+                .withIdentityMemoization())
+        def owner = new Person(firstName: "kalle")
+        def cars = [new Car(make: "volvo", owner: owner), new Car(make: "saab", owner: owner)]
+
+        when:
+        mapper.writeValueAsString(cars)
+        owner.firstName = "olle"
+        def result = mapper.writeValueAsString(cars)
+
+        then:
+        result == '[{"owner":{"firstName":"OLLE"},"company":"volvo"},{"owner":{"firstName":"OLLE"},"company":"saab"}]'
+        personConversions.get() == 2
+    }
+
+    def 'strategies that depend on model data get the unconverted data'() {
+        given:
+        def mapper = new ObjectMapper().registerModule(new VersioningModule(versionsDescription, new NameDependentVersionStrategy())
+                .withIdentityMemoization())
+        def oldOwner = new Person(firstName: "oldie")
+        def newOwner = new Person(firstName: "newbie")
+        def people = [oldOwner, newOwner, oldOwner, newOwner]
+
+        when:
+        def result = mapper.writeValueAsString(people)
+
+        then:
+        result == '[{"firstName":"OLDIE"},{"firstName":"newbie"},{"firstName":"OLDIE"},{"firstName":"newbie"}]'
+        personConversions.get() == 1
+    }
+}
@@ -0,0 +1,149 @@
+/**
+ * The MIT License
+ * Copyright © 2020 Patrik Lilja
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package se.plilja.jacksonversioning
+
+import com.fasterxml.jackson.databind.ObjectMapper
+import com.fasterxml.jackson.databind.node.JsonNodeFactory
+import com.fasterxml.jackson.databind.node.ObjectNode
+import spock.lang.Specification
+
+class NestedConversionTest extends Specification {
+
+    def mapper = createMapper()
+    def versionStrategy
+
+    def setup() {
+        [GarageConverter, CarConverter, PersonConverter]*.convertedNodes*.clear()
+    }
+
+    def createMapper() {
+        versionStrategy = new FixedVersionStrategy<Vs>()
+        def versionsDescription = new EnumVersionsDescription<>(Vs.class)
+        return new ObjectMapper().registerModule(new VersioningModule(versionsDescription, versionStrategy))
+    }
+
+    @JsonVersioned(converterClass = GarageConverter)
+    static class Garage {
+        String name
+        List<Car> cars
+    }
+
+    @JsonVersioned(converterClass = CarConverter)
+    static class Car {
+        String make
+        Person owner
+    }
+
+    @JsonVersioned(converterClass = PersonConverter)
+    static class Person {
+        String firstName
+    }
+
+    static class GarageConverter extends AbstractVersionConverter<Vs> {
+        static List<ObjectNode> convertedNodes = []
+
+        GarageConverter() {
+            super(Garage.class)
+            attributeRenamed(Vs.V2, "title", "name")
+        }
+
+        @Override
+        void convertUp(ObjectNode modelData, Vs fromVersion, Vs toVersion, JsonNodeFactory nodeFactory) {
+            convertedNodes.add(modelData)
+            super.convertUp(modelData, fromVersion, toVersion, nodeFactory)
+        }
+    }
+
+    static class CarConverter extends AbstractVersionConverter<Vs> {
+        static List<ObjectNode> convertedNodes = []
+
+        CarConverter() {
+            super(Car.class)
+            attributeRenamed(Vs.V3, "company", "make")
+        }
+
+        @Override
+        void convertUp(ObjectNode modelData, Vs fromVersion, Vs toVersion, JsonNodeFactory nodeFactory) {
+            convertedNodes.add(modelData)
+            super.convertUp(modelData, fromVersion, toVersion, nodeFactory)
+        }
+    }
+
+    static class PersonConverter extends AbstractVersionConverter<Vs> {
+        static List<ObjectNode> convertedNodes = []
+
+        PersonConverter() {
+            super(Person.class)
+            attributeRenamed(Vs.V2, "name", "firstName")
+        }
+
+        @Override
+        void convertUp(ObjectNode modelData, Vs fromVersion, Vs toVersion, JsonNodeFactory nodeFactory) {
+            convertedNodes.add(modelData)
+            super.convertUp(modelData, fromVersion, toVersion, nodeFactory)
+        }
+    }
+
+    def 'nested objects in collections are converted to current version'() {
+        when:
+        versionStrategy.setVersion(Vs.V1)
+        def garage = mapper.readValue('{"title":"Downtown","cars":[{"company":"toyota","owner":{"name":"Per"}},{"company":"volvo","owner":{"name":"Sten"}}]}', Garage)
+
+        then:
+        garage.name == 'Downtown'
+        garage.cars*.make == ['toyota', 'volvo']
+        garage.cars*.owner*.firstName == ['Per', 'Sten']
+    }
+
+    def 'nested objects are converted within the tree of the outer object'() {
+        given:
+        versionStrategy.setVersion(Vs.V1)
+
+        when:
+        mapper.readValue('{"title":"Downtown","cars":[{"company":"toyota","owner":{"name":"Per"}},{"company":"volvo","owner":{"name":"Sten"}}]}', Garage)
+
+        then:
+        GarageConverter.convertedNodes.size() == 1
+        def cars = GarageConverter.convertedNodes[0].get('cars')
+        CarConverter.convertedNodes.size() == 2
+        CarConverter.convertedNodes[0].is(cars.get(0))
+        CarConverter.convertedNodes[1].is(cars.get(1))
+        PersonConverter.convertedNodes.size() == 2
+        PersonConverter.convertedNodes[0].is(cars.get(0).get('owner'))
+        PersonConverter.convertedNodes[1].is(cars.get(1).get('owner'))
+    }
+
+    def 'tree supplied by caller is not modified'() {
+        given:
+        versionStrategy.setVersion(Vs.V1)
+        def tree = mapper.readTree('{"company":"toyota","owner":{"name":"Per"}}')
+
+        when:
+        def car = mapper.treeToValue(tree, Car)
+
+        then:
+        car.make == 'toyota'
+        car.owner.firstName == 'Per'
+        tree.toString() == '{"company":"toyota","owner":{"name":"Per"}}'
+    }
+}
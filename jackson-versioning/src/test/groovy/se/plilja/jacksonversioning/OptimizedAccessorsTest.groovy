@@ -0,0 +1,135 @@
+/**
+ * The MIT License
+ * Copyright © 2020 Patrik Lilja
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package se.plilja.jacksonversioning
+
+import com.fasterxml.jackson.core.JsonGenerator
+import com.fasterxml.jackson.core.JsonParser
+import com.fasterxml.jackson.databind.DeserializationContext
+import com.fasterxml.jackson.databind.JsonDeserializer
+import com.fasterxml.jackson.databind.JsonSerializer
+import com.fasterxml.jackson.databind.ObjectMapper
+import com.fasterxml.jackson.databind.SerializerProvider
+import com.fasterxml.jackson.databind.module.SimpleModule
+import com.fasterxml.jackson.module.afterburner.AfterburnerModule
+import com.fasterxml.jackson.module.blackbird.BlackbirdModule
+import spock.lang.Specification
+
+class OptimizedAccessorsTest extends Specification {
+
+    def versionStrategy = new FixedVersionStrategy<Vs>()
+    def versionsDescription = new EnumVersionsDescription<>(Vs.class)
+
+    @JsonVersioned(converterClass = CarConverter)
+    static class Car {
+        private String make
+        private int yearMade
+
+        String getMake() { return make }
+
+        void setMake(String make) { this.make = make }
+
+        int getYearMade() { return yearMade }
+
+        void setYearMade(int yearMade) { this.yearMade = yearMade }
+    }
+
+    static class CarConverter extends AbstractVersionConverter<Vs> {
+        CarConverter() {
+            super(Car.class)
+            attributeRenamed(Vs.V3, "company", "make")
+            attributeAdded(Vs.V2, "yearMade", { data -> 2020 })
+        }
+    }
+
+    static class CarSerializer extends JsonSerializer<Car> {
+        @Override
+        void serialize(Car value, JsonGenerator generator, SerializerProvider provider) {
+            generator.writeStartObject()
+            generator.writeStringField("make", value.make.toUpperCase())
+            generator.writeNumberField("yearMade", value.yearMade)
+            generator.writeEndObject()
+        }
+    }
+
+    static class CarDeserializer extends JsonDeserializer<Car> {
+        @Override
+        Car deserialize(JsonParser parser, DeserializationContext context) {
+            def tree = parser.readValueAsTree()
+            return new Car(make: tree.get("make").asText().toLowerCase(), yearMade: tree.get("yearMade").asInt())
+        }
+    }
+
+    def createMapper(optimizingModule, boolean versioningFirst) {
+        def versioningModule = new VersioningModule(versionsDescription, versionStrategy)
+        return versioningFirst
+                ? new ObjectMapper().registerModule(versioningModule).registerModule(optimizingModule)
+                : new ObjectMapper().registerModule(optimizingModule).registerModule(versioningModule)
+    }
+
+    def 'versioned types are converted and keep optimized accessors'() {
+        given:
+        def mapper = createMapper(optimizingModule, versioningFirst)
+        def optimizerPackage = optimizingModule.getClass().package.name
+        versionStrategy.setVersion(Vs.V1)
+
+        when:
+        def json = mapper.writeValueAsString(new Car(make: "volvo", yearMade: 1999))
+        def car = mapper.readValue('{"company":"saab"}', Car)
+        def serializer = mapper.serializerProviderInstance.findValueSerializer(Car)
+        def deserializer = mapper.deserializationContext.createInstance(mapper.deserializationConfig, mapper.createParser('{}'), null)
+                .findRootValueDeserializer(mapper.constructType(Car))
+
+        then:
+        json == '{"company":"volvo"}'
+        car.make == 'saab'
+        car.yearMade == 2020
+        serializer instanceof VersionedSerializer
+        serializer.delegate.properties().toList().every { it.getClass().name.startsWith(optimizerPackage) }
+        deserializer instanceof VersionedDeserializer
+        deserializer.delegate.getClass().name.startsWith(optimizerPackage)
+
+        where:
+        optimizingModule        | versioningFirst
+        new BlackbirdModule()   | true
+        new BlackbirdModule()   | false
+        new AfterburnerModule() | true
+        new AfterburnerModule() | false
+    }
+
+    def 'custom serializers and deserializers are versioned'() {
+        given:
+        def mapper = new ObjectMapper()
+                .registerModule(new VersioningModule(versionsDescription, versionStrategy))
+                .registerModule(new SimpleModule().addSerializer(Car, new CarSerializer()).addDeserializer(Car, new CarDeserializer()))
+        versionStrategy.setVersion(Vs.V2)
+
+        when:
+        def json = mapper.writeValueAsString(new Car(make: "volvo", yearMade: 1999))
+        def car = mapper.readValue('{"company":"SAAB","yearMade":2001}', Car)
+
+        then:
+        json == '{"yearMade":1999,"company":"VOLVO"}'
+        car.make == 'saab'
+        car.yearMade == 2001
+    }
+}
@@ -0,0 +1,218 @@
+/**
+ * The MIT License
+ * Copyright © 2020 Patrik Lilja
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package se.plilja.jacksonversioning
+
+import com.fasterxml.jackson.annotation.JsonTypeInfo
+import com.fasterxml.jackson.core.JsonParser
+import com.fasterxml.jackson.core.type.TypeReference
+import com.fasterxml.jackson.databind.DeserializationContext
+import com.fasterxml.jackson.databind.JsonDeserializer
+import com.fasterxml.jackson.databind.JsonMappingException
+import com.fasterxml.jackson.databind.ObjectMapper
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize
+import spock.lang.Specification
+
+import java.util.concurrent.Executors
+
+class ParallelDeserializationTest extends Specification {
+
+    def executor = Executors.newFixedThreadPool(4)
+    def versionStrategy = new FixedVersionStrategy<Vs>()
+    def versionsDescription = new EnumVersionsDescription<>(Vs.class)
+    def mapper = new ObjectMapper().registerModule(new VersioningModule(versionsDescription, versionStrategy))
+    def parallelMapper = new ObjectMapper().registerModule(new VersioningModule(versionsDescription, versionStrategy)
+            .withParallelDeserialization(executor, 10, 7))
+
+    def cleanup() {
+        executor.shutdown()
+    }
+
+    @JsonVersioned(converterClass = CarConverter)
+    static class Car {
+        String make
+        int yearMade
+        Person owner
+    }
+
+    @JsonVersioned(converterClass = PersonConverter)
+    static class Person {
+        String firstName
+    }
+
+    static class Fleet {
+        List<Car> cars
+    }
+
+    static class CarConverter extends AbstractVersionConverter<Vs> {
+        CarConverter() {
+            super(Car.class)
+            attributeRenamed(Vs.V3, "company", "make")
+            attributeAdded(Vs.V2, "yearMade", { data -> 2020 })
+        }
+    }
+
+    static class PersonConverter extends AbstractVersionConverter<Vs> {
+        PersonConverter() {
+            super(Person.class)
+            attributeRenamed(Vs.V2, "name", "firstName")
+        }
+    }
+
+    @JsonVersioned(converterClass = GarageConverter)
+    static class Garage {
+        String name
+        List<Car> cars
+    }
+
+    static class GarageConverter extends AbstractVersionConverter<Vs> {
+        GarageConverter() {
+            super(Garage.class)
+        }
+    }
+
+    static class Depot {
+        @JsonTypeInfo(use = JsonTypeInfo.Id.CLASS, include = JsonTypeInfo.As.WRAPPER_ARRAY)
+        List<Car> cars
+    }
+
+    @JsonVersioned(converterClass = StickerConverter)
+    static class Sticker {
+        @JsonDeserialize(using = TenantTextDeserializer)
+        String text
+    }
+
+    static class StickerConverter extends AbstractVersionConverter<Vs> {
+        StickerConverter() {
+            super(Sticker.class)
+        }
+    }
+
+    static class TenantTextDeserializer extends JsonDeserializer<String> {
+        @Override
+        String deserialize(JsonParser parser, DeserializationContext context) {
+            return context.getAttribute('tenant') + ':' + parser.text
+        }
+    }
+
+    @JsonDeserialize(using = TenantStickersDeserializer)
+    static class TenantStickers {
+        List<Sticker> stickers
+    }
+
+    static class TenantStickersDeserializer extends JsonDeserializer<TenantStickers> {
+        @Override
+        TenantStickers deserialize(JsonParser parser, DeserializationContext context) {
+            context.setAttribute('tenant', 'acme')
+            return new TenantStickers(stickers: context.readValue(parser, context.typeFactory.constructCollectionType(List, Sticker)))
+        }
+    }
+
+    def createJson(int count) {
+        def cars = (0..<count).collect { it % 5 == 0 ? 'null' : "{\"company\":\"make$it\",\"owner\":{\"name\":\"owner$it\"}}" }
+        return '[' + cars.join(',') + ']'
+    }
+
+    def 'large arrays are converted in parallel and keep their order'() {
+        given:
+        versionStrategy.setVersion(Vs.V1)
+        def json = createJson(100)
+
+        when:
+        def cars = parallelMapper.readValue(json, new TypeReference<List<Car>>() {})
+        def fleet = parallelMapper.readValue('{"cars":' + json + '}', Fleet)
+
+        then:
+        cars.size() == 100
+        cars*.make == mapper.readValue(json, new TypeReference<List<Car>>() {})*.make
+        cars*.owner*.firstName == mapper.readValue(json, new TypeReference<List<Car>>() {})*.owner*.firstName
+        cars[1].yearMade == 2020
+        fleet.cars*.make == cars*.make
+    }
+
+    def 'small arrays are deserialized by the calling thread'() {
+        given:
+        versionStrategy.setVersion(Vs.V1)
+
+        when:
+        def cars = parallelMapper.readValue(createJson(4), new TypeReference<List<Car>>() {})
+
+        then:
+        cars*.make == [null, 'make1', 'make2', 'make3']
+    }
+
+    def 'failures are reported with the index of the element'() {
+        given:
+        versionStrategy.setVersion(Vs.V1)
+        def json = createJson(50).replace('{"company":"make37"', '{"company":{"nested":"object"}')
+
+        when:
+        parallelMapper.readValue(json, new TypeReference<List<Car>>() {})
+
+        then:
+        def e = thrown(JsonMappingException)
+        e.path[0].index == 37
+    }
+
+    def 'nested collections are deserialized by the thread converting the element'() {
+        given:
+        def singleThread = Executors.newSingleThreadExecutor()
+        def fieldMapper = new ObjectMapper().registerModule(new VersioningModule(versionsDescription, new FieldVersionResolutionStrategy<>("_v", versionsDescription))
+                .withParallelDeserialization(singleThread, 2, 2))
+        def cars = (0..<5).collect { '{"_v":"V3","make":"make' + it + '"}' }.join(',')
+        def json = '[' + (0..<5).collect { '{"_v":"V3","name":"garage' + it + '","cars":[' + cars + ']}' }.join(',') + ']'
+
+        when:
+        def garages = fieldMapper.readValue(json, new TypeReference<List<Garage>>() {})
+
+        then:
+        garages*.name == (0..<5).collect { "garage$it" }
+        garages.every { it.cars*.make == (0..<5).collect { "make$it" } }
+
+        cleanup:
+        singleThread.shutdown()
+    }
+
+    def 'elements are deserialized with the attributes of the calling context'() {
+        given:
+        versionStrategy.setVersion(Vs.V3)
+        def json = '[' + (0..<20).collect { '{"text":"sticker' + it + '"}' }.join(',') + ']'
+
+        when:
+        def stickers = parallelMapper.readValue(json, TenantStickers).stickers
+
+        then:
+        stickers*.text == (0..<20).collect { "acme:sticker$it" }
+    }
+
+    def 'type information declared on the property is used for the elements'() {
+        given:
+        versionStrategy.setVersion(Vs.V3)
+        def json = '{"cars":[' + (0..<20).collect { '["' + Car.name + '",{"make":"make' + it + '"}]' }.join(',') + ']}'
+
+        when:
+        def depot = parallelMapper.readValue(json, Depot)
+
+        then:
+        depot.cars*.make == (0..<20).collect { "make$it" }
+    }
+}
@@ -0,0 +1,233 @@
+/**
+ * The MIT License
+ * Copyright © 2020 Patrik Lilja
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package se.plilja.jacksonversioning
+
+import com.fasterxml.jackson.core.JsonGenerator
+import com.fasterxml.jackson.databind.JsonMappingException
+import com.fasterxml.jackson.databind.JsonSerializer
+import com.fasterxml.jackson.databind.ObjectMapper
+import com.fasterxml.jackson.databind.SerializerProvider
+import com.fasterxml.jackson.databind.annotation.JsonSerialize
+import com.fasterxml.jackson.databind.node.ObjectNode
+import spock.lang.Specification
+
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.Executors
+import java.util.concurrent.atomic.AtomicInteger
+
+class ParallelSerializationTest extends Specification {
+
+    def executor = Executors.newFixedThreadPool(4)
+    def versionStrategy = new ThreadRecordingVersionStrategy()
+    def versionsDescription = new EnumVersionsDescription<>(Vs.class)
+    def mapper = new ObjectMapper().registerModule(new VersioningModule(versionsDescription, versionStrategy))
+    def parallelMapper = new ObjectMapper().registerModule(new VersioningModule(versionsDescription, versionStrategy)
+            .withParallelSerialization(executor, 10, 7))
+
+    def cleanup() {
+        executor.shutdown()
+    }
+
+    static class ThreadRecordingVersionStrategy extends FixedVersionStrategy<Vs> {
+        Set<Thread> threads = ConcurrentHashMap.newKeySet()
+
+        @Override
+        Vs getSerializeToVersion(ObjectNode object) {
+            threads << Thread.currentThread()
+            return version
+        }
+    }
+
+    @JsonVersioned(converterClass = CarConverter)
+    static class Car {
+        String make
+        int yearMade
+        Person owner
+    }
+
+    @JsonVersioned(converterClass = PersonConverter)
+    static class Person {
+        String firstName
+    }
+
+    static class Fleet {
+        List<Car> cars
+    }
+
+    static class Garage {
+        @JsonSerialize(contentUsing = MakeOnlySerializer)
+        List<Car> cars
+    }
+
+    static class MakeOnlySerializer extends JsonSerializer<Car> {
+        @Override
+        void serialize(Car value, JsonGenerator generator, SerializerProvider provider) {
+            generator.writeString(value.make)
+        }
+    }
+
+    @JsonVersioned(converterClass = GaugeConverter)
+    static class Gauge {
+        int value
+
+        int getValue() {
+            if (value < 0) {
+                throw new IllegalStateException("negative gauge")
+            }
+            return value
+        }
+    }
+
+    static class GaugeConverter extends AbstractVersionConverter<Vs> {
+        GaugeConverter() {
+            super(Gauge.class)
+        }
+    }
+
+    static class Dashboard {
+        @JsonSerialize(contentUsing = CacheRecordingSerializer)
+        List<Gauge> gauges
+    }
+
+    static Set<Object> writeCaches = ConcurrentHashMap.newKeySet()
+
+    static class CacheRecordingSerializer extends JsonSerializer<Gauge> {
+        @Override
+        void serialize(Gauge value, JsonGenerator generator, SerializerProvider provider) {
+            def cache = provider.getAttribute(WriteScopedConversionCache)
+            writeCaches << (cache == null ? 'none' : cache)
+            generator.writeNumber(value.value)
+        }
+    }
+
+    static AtomicInteger tagConversions = new AtomicInteger()
+
+    @JsonVersioned(converterClass = TagConverter)
+    static class Tag {
+        String label
+    }
+
+    static class TagConverter extends AbstractVersionConverter<Vs> {
+        TagConverter() {
+            super(Tag.class)
+            attributeModified(Vs.V2, "label", { data, value -> tagConversions.incrementAndGet(); value.asText().toLowerCase() }, { data, value -> value.asText() })
+        }
+    }
+
+    static class CarConverter extends AbstractVersionConverter<Vs> {
+        CarConverter() {
+            super(Car.class)
+            attributeRenamed(Vs.V3, "company", "make")
+            attributeAdded(Vs.V2, "yearMade", { data -> 2020 })
+        }
+    }
+
+    static class PersonConverter extends AbstractVersionConverter<Vs> {
+        PersonConverter() {
+            super(Person.class)
+            attributeRenamed(Vs.V2, "name", "firstName")
+        }
+    }
+
+    def createCars(int count) {
+        return (0..<count).collect { new Car(make: "make$it", yearMade: 2000 + it, owner: it % 3 == 0 ? null : new Person(firstName: "owner$it")) } + [null]
+    }
+
+    def 'large collections are converted in parallel and written in order'() {
+        given:
+        def fleet = new Fleet(cars: createCars(100))
+        versionStrategy.setVersion(version)
+
+        expect:
+        parallelMapper.writeValueAsString(fleet) == mapper.writeValueAsString(fleet)
+        parallelMapper.writeValueAsString(fleet.cars) == mapper.writeValueAsString(fleet.cars)
+        versionStrategy.threads.any { it != Thread.currentThread() }
+
+        where:
+        version << [Vs.V1, Vs.V2, Vs.V3]
+    }
+
+    def 'small collections are serialized by the calling thread'() {
+        given:
+        def cars = createCars(3)
+        versionStrategy.setVersion(Vs.V1)
+
+        expect:
+        parallelMapper.writeValueAsString(cars) == mapper.writeValueAsString(cars)
+    }
+
+    def 'property content serializers are used for the elements'() {
+        given:
+        def garage = new Garage(cars: createCars(30).findAll { it != null })
+        versionStrategy.setVersion(Vs.V1)
+
+        expect:
+        parallelMapper.writeValueAsString(garage) == mapper.writeValueAsString(garage)
+        parallelMapper.writeValueAsString(garage).startsWith('{"cars":["make0","make1"')
+    }
+
+    def 'objects referenced many times are converted once across the elements'() {
+        given:
+        tagConversions.set(0)
+        def memoizingMapper = new ObjectMapper().registerModule(new VersioningModule(versionsDescription, versionStrategy)
+                .withParallelSerialization(executor, 10, 7)
+                .withIdentityMemoization())
+        def tag = new Tag(label: 'RED')
+        versionStrategy.setVersion(Vs.V1)
+
+        when:
+        def json = memoizingMapper.writeValueAsString((1..50).collect { tag })
+
+        then:
+        json == '[' + (1..50).collect { '{"label":"red"}' }.join(',') + ']'
+        tagConversions.get() < 50
+    }
+
+    def 'failures are reported with the index of the element in the collection'() {
+        given:
+        def gauges = (0..<20).collect { new Gauge(value: it == 12 ? -1 : it) }
+        versionStrategy.setVersion(Vs.V1)
+
+        when:
+        parallelMapper.writeValueAsString(gauges)
+
+        then:
+        def e = thrown(JsonMappingException)
+        e.cause instanceof IllegalStateException
+        e.path.collect { it.from.is(gauges) ? it.index : it.from.class } == [12, Gauge]
+    }
+
+    def 'no write scoped cache is created without identity memoization'() {
+        given:
+        writeCaches.clear()
+        def dashboard = new Dashboard(gauges: (0..<20).collect { new Gauge(value: it) })
+        versionStrategy.setVersion(Vs.V1)
+
+        when:
+        def json = parallelMapper.writeValueAsString(dashboard)
+
+        then:
+        json == mapper.writeValueAsString(dashboard)
+        writeCaches == ['none'] as Set
+    }
+}
@@ -0,0 +1,100 @@
+/**
+ * The MIT License
+ * Copyright © 2020 Patrik Lilja
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package se.plilja.jacksonversioning
+
+import com.fasterxml.jackson.databind.JsonMappingException
+import com.fasterxml.jackson.databind.ObjectMapper
+import spock.lang.Specification
+
+class PropertyVersionsTest extends Specification {
+
+    def versionsDescription = new EnumVersionsDescription<>(Vs.class)
+
+    def mapper(VersionResolutionStrategy<Vs> versionStrategy) {
+        return new ObjectMapper().registerModule(new VersioningModule(versionsDescription, versionStrategy))
+    }
+
+    static class Car {
+        String make
+        @JsonSince("V2")
+        String color
+        @JsonUntil("V3")
+        Integer yearMade
+    }
+
+    @JsonVersioned(converterClass = TruckConverter)
+    static class Truck {
+        String make
+        @JsonSince("V3")
+        Integer axles
+    }
+
+    static class TruckConverter extends AbstractVersionConverter<Vs> {
+        TruckConverter() {
+            super(Truck.class)
+            attributeRenamed(Vs.V2, "company", "make")
+        }
+    }
+
+    static class Bus {
+        @JsonSince("V7")
+        String make
+    }
+
+    def 'properties are written in the versions they exist in'() {
+        given:
+        def car = new Car(make: 'toyota', color: 'red', yearMade: 1998)
+
+        expect:
+        mapper(new VersionSpecificSerializerTest.IndependentVersionStrategy(version: version)).writeValueAsString(car) == expected
+        mapper(new FixedVersionStrategy<Vs>(version: version)).writeValueAsString(car) == expected
+
+        where:
+        version || expected
+        Vs.V1   || '{"make":"toyota","yearMade":1998}'
+        Vs.V2   || '{"make":"toyota","color":"red","yearMade":1998}'
+        Vs.V3   || '{"make":"toyota","color":"red"}'
+    }
+
+    def 'properties are filtered before versioned objects are converted'() {
+        given:
+        def truck = new Truck(make: 'volvo', axles: 3)
+
+        expect:
+        mapper(new VersionSpecificSerializerTest.IndependentVersionStrategy(version: version)).writeValueAsString(truck) == expected
+
+        where:
+        version || expected
+        Vs.V1   || '{"company":"volvo"}'
+        Vs.V3   || '{"make":"volvo","axles":3}'
+    }
+
+    def 'unknown versions are reported'() {
+        when:
+        mapper(new FixedVersionStrategy<Vs>(version: Vs.V1)).writeValueAsString(new Bus(make: 'scania'))
+
+        then:
+        def e = thrown(JsonMappingException)
+        e.message.contains('Unknown version V7 on property make')
+    }
+}
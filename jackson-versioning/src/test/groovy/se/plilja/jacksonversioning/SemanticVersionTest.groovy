@@ -0,0 +1,149 @@
+/**
+ * The MIT License
+ * Copyright © 2020 Patrik Lilja
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package se.plilja.jacksonversioning
+
+import com.fasterxml.jackson.databind.ObjectMapper
+import com.fasterxml.jackson.databind.node.JsonNodeFactory
+import spock.lang.Specification
+
+class SemanticVersionTest extends Specification {
+
+    def versionsDescription = new SemanticVersionsDescription("2.4.0")
+    def versionStrategy = new FixedVersionStrategy<SemanticVersion>(version: SemanticVersion.parse("1.0"))
+    def mapper = new ObjectMapper().registerModule(new VersioningModule(versionsDescription, versionStrategy))
+
+    @JsonVersioned(converterClass = CarConverter)
+    static class Car {
+        String make
+        String model
+    }
+
+    static class CarConverter extends AbstractVersionConverter<SemanticVersion> {
+        CarConverter() {
+            super(Car.class)
+            attributeRenamed(SemanticVersion.of(1, 2, 0), "company", "make")
+            attributeAdded(SemanticVersion.of(2, 3, 0), "model", { data -> "unknown" })
+        }
+    }
+
+    def 'versions are parsed'() {
+        expect:
+        SemanticVersion.parse(value).toString() == expected
+
+        where:
+        value     | expected
+        '2'       | '2.0.0'
+        '2.3'     | '2.3.0'
+        '2.3.1'   | '2.3.1'
+        '10.0.12' | '10.0.12'
+        '0.0.1'   | '0.0.1'
+    }
+
+    def 'invalid versions are rejected'() {
+        expect:
+        versionsDescription.fromString(value) == null
+
+        when:
+        SemanticVersion.parse(value)
+
+        then:
+        thrown(IllegalArgumentException)
+
+        where:
+        value << ['', '.', '2.', '.2', '2..3', '1.2.3.4', 'v2', '2.3-beta', '99999999', '2.03', '02.3', '2.3.00']
+    }
+
+    def 'versions are ordered by their numbers'() {
+        expect:
+        ['2.10.0', '2.3.1', '10.0', '2.3', '1'].collect { SemanticVersion.parse(it) }.sort()*.toString() == ['1.0.0', '2.3.0', '2.3.1', '2.10.0', '10.0.0']
+    }
+
+    def 'strings resolve to interned instances'() {
+        expect:
+        versionsDescription.fromString('2.3').is(versionsDescription.fromString('2.3'))
+        versionsDescription.fromString('2.3').is(versionsDescription.fromString('2.3.0'))
+        versionsDescription.fromString('2.4').is(versionsDescription.currentVersion)
+    }
+
+    def 'strings not used recently are forgotten'() {
+        given:
+        def description = new SemanticVersionsDescription(SemanticVersion.parse('2.4.0'), 10)
+        def parsed = SemanticVersionsDescription.getDeclaredField('parsed').with { accessible = true; get(description) }
+        def first = description.fromString('1.0.0')
+
+        when:
+        (0..<100).each { description.fromString("1.1.$it") }
+
+        then:
+        parsed.size() <= 10
+        !description.fromString('1.0.0').is(first)
+        description.fromString('1.1.99').toString() == '1.1.99'
+    }
+
+    def 'a single string can be remembered'() {
+        given:
+        def description = new SemanticVersionsDescription(SemanticVersion.parse('2.4.0'), 1)
+
+        expect:
+        description.fromString('1.2.0').is(description.fromString('1.2.0'))
+    }
+
+    def 'versions newer than the current version are unknown'() {
+        expect:
+        versionsDescription.fromString('2.4.1') == null
+        versionsDescription.fromString('3') == null
+    }
+
+    def 'versions between conversion steps convert like the step before them'() {
+        given:
+        versionStrategy.setVersion(versionsDescription.fromString(version))
+
+        expect:
+        mapper.readValue(mapper.writeValueAsString(new Car(make: 'toyota', model: 'corolla')), Map) == expected
+        mapper.readValue(mapper.writeValueAsString(expected), Car).make == 'toyota'
+
+        where:
+        version | expected
+        '1.0'   | [company: 'toyota']
+        '1.1.9' | [company: 'toyota']
+        '1.2'   | [make: 'toyota']
+        '2.2.5' | [make: 'toyota']
+        '2.3.0' | [make: 'toyota', model: 'corolla']
+        '2.4'   | [make: 'toyota', model: 'corolla']
+    }
+
+    def 'conversion plans are shared by versions between the same steps'() {
+        given:
+        def converter = new CarConverter()
+        def nodeFactory = JsonNodeFactory.instance
+
+        when:
+        ['1.2.0', '1.5.3', '2.2.9'].each {
+            converter.convertUp([nodeFactory.objectNode().put('make', 'toyota')], SemanticVersion.parse(it), versionsDescription.currentVersion, nodeFactory)
+        }
+
+        then:
+        def upPlans = AbstractVersionConverter.getDeclaredField('upPlans').with { accessible = true; get(converter) }
+        upPlans.size() == 1
+    }
+}
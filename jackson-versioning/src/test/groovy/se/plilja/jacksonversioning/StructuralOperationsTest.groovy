@@ -0,0 +1,152 @@
+/**
+ * The MIT License
+ * Copyright © 2020 Patrik Lilja
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package se.plilja.jacksonversioning
+
+import com.fasterxml.jackson.databind.ObjectMapper
+import spock.lang.Specification
+
+class StructuralOperationsTest extends Specification {
+
+    def versionStrategy = new FixedVersionStrategy<Vs>(version: Vs.V1)
+    def mapper = new ObjectMapper().registerModule(new VersioningModule(new EnumVersionsDescription<>(Vs.class), versionStrategy))
+
+    @JsonVersioned(converterClass = CustomerConverter)
+    static class Customer {
+        String firstName
+        String lastName
+        Address address
+    }
+
+    static class Address {
+        String street
+        String city
+    }
+
+    static class CustomerConverter extends AbstractVersionConverter<Vs> {
+        CustomerConverter() {
+            super(Customer.class)
+            attributesNested(Vs.V2, "address", "street", "city")
+            attributeSplit(Vs.V3, "name", " ", "firstName", "lastName")
+        }
+    }
+
+    @JsonVersioned(converterClass = ContactConverter)
+    static class Contact {
+        String name
+        String street
+        String city
+    }
+
+    static class ContactConverter extends AbstractVersionConverter<Vs> {
+        ContactConverter() {
+            super(Contact.class)
+            attributesFlattened(Vs.V2, "address", "street", "city")
+            attributesMerged(Vs.V3, "name", " ", "firstName", "lastName")
+        }
+    }
+
+    def 'nested and split attributes are converted up'() {
+        when:
+        def customer = mapper.readValue('{"name":"Per Persson","street":"Storgatan 1","city":"Lund"}', Customer)
+
+        then:
+        customer.firstName == 'Per'
+        customer.lastName == 'Persson'
+        customer.address.street == 'Storgatan 1'
+        customer.address.city == 'Lund'
+    }
+
+    def 'nested and split attributes are converted down'() {
+        given:
+        def customer = new Customer(firstName: 'Per', lastName: 'Persson', address: new Address(street: 'Storgatan 1', city: 'Lund'))
+        versionStrategy.setVersion(version)
+
+        expect:
+        mapper.readValue(mapper.writeValueAsString(customer), Map) == expected
+
+        where:
+        version | expected
+        Vs.V1   | [name: 'Per Persson', street: 'Storgatan 1', city: 'Lund']
+        Vs.V2   | [name: 'Per Persson', address: [street: 'Storgatan 1', city: 'Lund']]
+        Vs.V3   | [firstName: 'Per', lastName: 'Persson', address: [street: 'Storgatan 1', city: 'Lund']]
+    }
+
+    def 'flattened and merged attributes are converted up'() {
+        when:
+        def contact = mapper.readValue('{"firstName":"Per","lastName":"Persson","address":{"street":"Storgatan 1","city":"Lund"}}', Contact)
+
+        then:
+        contact.name == 'Per Persson'
+        contact.street == 'Storgatan 1'
+        contact.city == 'Lund'
+    }
+
+    def 'flattened and merged attributes are converted down'() {
+        given:
+        def contact = new Contact(name: 'Per Persson', street: 'Storgatan 1', city: 'Lund')
+
+        expect:
+        mapper.readValue(mapper.writeValueAsString(contact), Map) == [firstName: 'Per', lastName: 'Persson', address: [street: 'Storgatan 1', city: 'Lund']]
+    }
+
+    def 'split text keeps the remainder in the last attribute'() {
+        when:
+        def customer = mapper.readValue(json, Customer)
+
+        then:
+        customer.firstName == firstName
+        customer.lastName == lastName
+        mapper.readValue(mapper.writeValueAsString(customer), Map).name == name
+
+        where:
+        json                             | firstName | lastName         | name
+        '{"name":"Anna Maria Svensson"}' | 'Anna'    | 'Maria Svensson' | 'Anna Maria Svensson'
+        '{"name":"Cher"}'                | 'Cher'    | null             | 'Cher'
+        '{"name":null}'                  | null      | null             | null
+    }
+
+    def 'missing attributes are left out'() {
+        when:
+        def customer = mapper.readValue('{"street":"Storgatan 1"}', Customer)
+
+        then:
+        customer.firstName == null
+        customer.address.street == 'Storgatan 1'
+        customer.address.city == null
+        mapper.readValue(mapper.writeValueAsString(customer), Map) == [name: null, street: 'Storgatan 1', city: null]
+    }
+
+    def 'projections only convert the operations needed'() {
+        given:
+        def customer = new Customer(firstName: 'Per', lastName: 'Persson', address: new Address(street: 'Storgatan 1', city: 'Lund'))
+
+        expect:
+        mapper.readValue(FieldProjection.of(Customer, fields as String[]).applyTo(mapper.writer()).writeValueAsString(customer), Map) == expected
+
+        where:
+        fields           | expected
+        ['street']       | [street: 'Storgatan 1']
+        ['name']         | [name: 'Per Persson']
+        ['name', 'city'] | [name: 'Per Persson', city: 'Lund']
+    }
+}
@@ -0,0 +1,171 @@
+/**
+ * The MIT License
+ * Copyright © 2020 Patrik Lilja
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package se.plilja.jacksonversioning
+
+import com.fasterxml.jackson.core.JsonGenerator
+import com.fasterxml.jackson.databind.JsonMappingException
+import com.fasterxml.jackson.databind.JsonSerializer
+import com.fasterxml.jackson.databind.SerializerProvider
+import com.fasterxml.jackson.databind.annotation.JsonSerialize
+import com.fasterxml.jackson.databind.JsonNode
+import com.fasterxml.jackson.databind.ObjectMapper
+import spock.lang.Specification
+
+class TreeLimitsTest extends Specification {
+
+    def versionsDescription = new EnumVersionsDescription<>(Vs.class)
+    def versionStrategy = new FixedVersionStrategy<Vs>(version: Vs.V1)
+    def mapper = new ObjectMapper().registerModule(new VersioningModule(versionsDescription, versionStrategy)
+            .withTreeLimits(1000, 5, 50))
+
+    @JsonVersioned(converterClass = DocumentConverter)
+    static class Document {
+        String title
+        JsonNode body
+    }
+
+    static class DocumentConverter extends AbstractVersionConverter<Vs> {
+        DocumentConverter() {
+            super(Document.class)
+            attributeRenamed(Vs.V2, "name", "title")
+        }
+    }
+
+    static String nested(int depth) {
+        depth == 0 ? '1' : '[' + nested(depth - 1) + ']'
+    }
+
+    def 'values within the limits are converted'() {
+        when:
+        def document = mapper.readValue('{"name":"report","body":{"pages":[1,2,3]}}', Document)
+
+        then:
+        document.title == 'report'
+        document.body.get('pages').size() == 3
+    }
+
+    def 'values exceeding a limit fail'() {
+        when:
+        mapper.readValue(json, Document)
+
+        then:
+        def e = thrown(JsonMappingException)
+        e.message.contains(limit)
+
+        where:
+        json                                                                | limit
+        '{"name":"report","body":' + nested(5) + '}'                        | 'maximum nesting depth of 5'
+        '{"name":"report","body":[' + (1..60).join(',') + ']}'              | 'maximum node count of 50'
+        '{"name":"report","body":"' + ('x' * 2000) + '"}'                   | 'maximum size of 1000 bytes'
+    }
+
+    def 'oversized values fail before the rest of the input is read'() {
+        when:
+        mapper.readValue('{"name":"report","body":[' + (1..60).join(',') + ', this is not json', Document)
+
+        then:
+        def e = thrown(JsonMappingException)
+        e.message.contains('maximum node count of 50')
+    }
+
+    def 'limits apply to each versioned object'() {
+        when:
+        def documents = mapper.readValue('[' + (1..10).collect { '{"name":"report","body":[1,2,3,4,5,6,7,8]}' }.join(',') + ']', Document[])
+
+        then:
+        documents.length == 10
+        documents*.title.every { it == 'report' }
+    }
+
+    def 'serializing a value exceeding a limit fails'() {
+        given:
+        def document = new Document(title: 'report', body: mapper.readTree('[' + (1..60).join(',') + ']'))
+
+        when:
+        mapper.writeValueAsString(document)
+
+        then:
+        def e = thrown(JsonMappingException)
+        e.message.contains('maximum node count of 50')
+    }
+
+    @JsonVersioned(converterClass = DocumentConverter)
+    static class Log {
+        @JsonSerialize(using = LinesSerializer)
+        Object lines
+    }
+
+    static class LinesSerializer extends JsonSerializer<Object> {
+        static int written
+
+        @Override
+        void serialize(Object value, JsonGenerator gen, SerializerProvider serializers) throws IOException {
+            gen.writeStartArray()
+            for (int i = 0; i < 100_000; i++) {
+                gen.writeString('line')
+                written++
+            }
+            gen.writeEndArray()
+        }
+    }
+
+    def 'serializing fails before an oversized value has been written in full'() {
+        given:
+        LinesSerializer.written = 0
+
+        when:
+        mapper.writeValueAsString(new Log(lines: 'any'))
+
+        then:
+        def e = thrown(JsonMappingException)
+        e.message.contains('maximum node count of 50')
+        LinesSerializer.written < 50
+    }
+
+    def 'fields preceding a version field are limited'() {
+        given:
+        def fieldMapper = new ObjectMapper().registerModule(new VersioningModule(versionsDescription, new FieldVersionResolutionStrategy<>("_v", versionsDescription, Vs.V3))
+                .withTreeLimits(1000, 5, 50))
+
+        when:
+        fieldMapper.readValue('{"body":[' + (1..60).join(',') + '], this is not json', Document)
+
+        then:
+        def e = thrown(JsonMappingException)
+        e.message.contains('maximum node count of 50')
+    }
+
+    def 'limits must be positive'() {
+        when:
+        new VersioningModule(versionsDescription, versionStrategy).withTreeLimits(maxBytes, maxDepth, maxNodeCount)
+
+        then:
+        thrown(IllegalArgumentException)
+
+        where:
+        maxBytes | maxDepth | maxNodeCount
+        0        | 5        | 50
+        1000     | 0        | 50
+        1000     | 5        | 0
+    }
+}
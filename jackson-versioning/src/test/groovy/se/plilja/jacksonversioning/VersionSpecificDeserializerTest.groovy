@@ -0,0 +1,171 @@
+/**
+ * The MIT License
+ * Copyright © 2020 Patrik Lilja
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package se.plilja.jacksonversioning
+
+import com.fasterxml.jackson.databind.ObjectMapper
+import com.fasterxml.jackson.databind.node.JsonNodeFactory
+import com.fasterxml.jackson.databind.node.ObjectNode
+import spock.lang.Specification
+
+class VersionSpecificDeserializerTest extends Specification {
+
+    def versionsDescription = new EnumVersionsDescription<>(Vs.class)
+    def versionStrategy = new VersionSpecificSerializerTest.IndependentVersionStrategy()
+    def mapper = new ObjectMapper().registerModule(new VersioningModule(versionsDescription, versionStrategy).withVersionSpecificDeserializers())
+
+    def setup() {
+        CarConverter.treeConversions = 0
+    }
+
+    @JsonVersioned(converterClass = CarConverter)
+    static class Car {
+        String make
+        String model
+        Owner owner
+    }
+
+    @JsonVersioned(converterClass = OwnerConverter)
+    static class Owner {
+        String name
+    }
+
+    @JsonVersioned(converterClass = TruckConverter)
+    static class Truck {
+        String make = 'unknown'
+        int axles = 2
+        Owner owner
+    }
+
+    static class TruckConverter extends AbstractVersionConverter<Vs> {
+        TruckConverter() {
+            super(Truck.class)
+            attributeRenamed(Vs.V2, "brand", "company")
+            attributeRenamed(Vs.V3, "company", "make")
+            attributeRenamed(Vs.V3, "wheelsets", "axles")
+        }
+    }
+
+    static class CarConverter extends AbstractVersionConverter<Vs> {
+        static int treeConversions
+
+        CarConverter() {
+            super(Car.class)
+            attributeRemoved(Vs.V2, "yearMade", { data -> 2020 })
+            attributeRenamed(Vs.V3, "company", "make")
+        }
+
+        @Override
+        void convertUp(ObjectNode modelData, Vs fromVersion, Vs toVersion, JsonNodeFactory nodeFactory) {
+            treeConversions++
+            super.convertUp(modelData, fromVersion, toVersion, nodeFactory)
+        }
+    }
+
+    static class OwnerConverter extends AbstractVersionConverter<Vs> {
+        OwnerConverter() {
+            super(Owner.class)
+            attributeAdded(Vs.V2, "name", { data -> "unknown" })
+        }
+    }
+
+    def 'renamed and removed attributes are read without converting a tree'() {
+        given:
+        versionStrategy.setVersion(version)
+
+        when:
+        def car = mapper.readValue(json, Car)
+
+        then:
+        car.make == 'toyota'
+        car.model == 'camry'
+        CarConverter.treeConversions == 0
+
+        where:
+        version | json
+        Vs.V3   | '{"make":"toyota","model":"camry"}'
+        Vs.V2   | '{"company":"toyota","model":"camry"}'
+        Vs.V1   | '{"company":"toyota","yearMade":1998,"model":"camry"}'
+    }
+
+    def 'added attributes are converted on the tree'() {
+        given:
+        versionStrategy.setVersion(Vs.V1)
+
+        when:
+        def car = mapper.readValue('{"company":"toyota","yearMade":1998,"owner":{}}', Car)
+
+        then:
+        car.make == 'toyota'
+        car.owner.name == 'unknown'
+    }
+
+    def 'old versions are read from the version field'() {
+        given:
+        def fieldStrategy = new FieldVersionResolutionStrategy<>("_v", versionsDescription)
+        def fieldMapper = new ObjectMapper().registerModule(new VersioningModule(versionsDescription, fieldStrategy).withVersionSpecificDeserializers())
+
+        when:
+        def car = fieldMapper.readValue('{"company":"toyota","_v":"V1","yearMade":1998,"model":"camry"}', Car)
+
+        then:
+        car.make == 'toyota'
+        car.model == 'camry'
+        CarConverter.treeConversions == 0
+    }
+
+    def 'strategies that depend on the model data convert a tree'() {
+        given:
+        def dependentMapper = new ObjectMapper().registerModule(new VersioningModule(versionsDescription, new FixedVersionStrategy<Vs>(version: Vs.V2)).withVersionSpecificDeserializers())
+
+        when:
+        def car = dependentMapper.readValue('{"company":"toyota"}', Car)
+
+        then:
+        car.make == 'toyota'
+        CarConverter.treeConversions == 1
+    }
+
+    def 'renamed attributes are read the same way as when converting a tree'() {
+        given:
+        def treeMapper = new ObjectMapper().registerModule(new VersioningModule(versionsDescription, versionStrategy))
+        def plainMapper = new ObjectMapper()
+        versionStrategy.setVersion(version)
+
+        when:
+        def streamed = mapper.readValue(json, Truck)
+        def converted = treeMapper.readValue(json, Truck)
+
+        then:
+        plainMapper.writeValueAsString(streamed) == plainMapper.writeValueAsString(converted)
+        [streamed.make, streamed.axles] == expected
+
+        where:
+        version | json                                           | expected
+        Vs.V2   | '{"company":"volvo","wheelsets":3}'            | ['volvo', 3]
+        Vs.V2   | '{}'                                           | [null, 0]
+        Vs.V2   | '{"make":"saab","axles":4}'                    | [null, 0]
+        Vs.V2   | '{"make":"saab","company":"volvo","axles":4}'  | ['volvo', 0]
+        Vs.V1   | '{"brand":"volvo","company":"saab"}'           | ['volvo', 0]
+        Vs.V1   | '{"company":"saab","make":"fiat","owner":{}}'  | [null, 0]
+    }
+}
@@ -0,0 +1,139 @@
+/**
+ * The MIT License
+ * Copyright © 2020 Patrik Lilja
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package se.plilja.jacksonversioning
+
+import com.fasterxml.jackson.databind.ObjectMapper
+import com.fasterxml.jackson.databind.node.JsonNodeFactory
+import com.fasterxml.jackson.databind.node.ObjectNode
+import spock.lang.Specification
+
+class VersionSpecificSerializerTest extends Specification {
+
+    def versionsDescription = new EnumVersionsDescription<>(Vs.class)
+    def versionStrategy = new IndependentVersionStrategy()
+    def mapper = new ObjectMapper().registerModule(new VersioningModule(versionsDescription, versionStrategy).withVersionSpecificSerializers())
+    def treeMapper = new ObjectMapper().registerModule(new VersioningModule(versionsDescription, versionStrategy))
+
+    def setup() {
+        CarConverter.treeConversions = 0
+    }
+
+    static class IndependentVersionStrategy extends FixedVersionStrategy<Vs> {
+        @Override
+        boolean isIndependentOfModelData() {
+            return true
+        }
+    }
+
+    @JsonVersioned(converterClass = CarConverter)
+    static class Car {
+        String make
+        String color
+        Owner owner
+    }
+
+    @JsonVersioned(converterClass = OwnerConverter)
+    static class Owner {
+        String firstName
+        String lastName
+    }
+
+    static class CarConverter extends AbstractVersionConverter<Vs> {
+        static int treeConversions
+
+        CarConverter() {
+            super(Car.class)
+            attributeAdded(Vs.V2, "color", { data -> "black" })
+            attributeRenamed(Vs.V3, "company", "make")
+        }
+
+        @Override
+        void convertDown(ObjectNode modelData, Vs fromVersion, Vs toVersion, JsonNodeFactory nodeFactory) {
+            treeConversions++
+            super.convertDown(modelData, fromVersion, toVersion, nodeFactory)
+        }
+    }
+
+    static class OwnerConverter extends AbstractVersionConverter<Vs> {
+        OwnerConverter() {
+            super(Owner.class)
+            attributeRemoved(Vs.V2, "ssn", { data -> "1234567890" })
+        }
+    }
+
+    def car = new Car(make: 'toyota', color: 'red', owner: new Owner(firstName: 'Per', lastName: 'Persson'))
+
+    def 'renamed and added attributes are written without converting a tree'() {
+        given:
+        versionStrategy.setVersion(version)
+
+        when:
+        def json = mapper.writeValueAsString(car)
+
+        then:
+        json == expected
+        CarConverter.treeConversions == 0
+        mapper.readValue(json, Map) == treeMapper.readValue(treeMapper.writeValueAsString(car), Map)
+
+        where:
+        version || expected
+        Vs.V3   || '{"make":"toyota","color":"red","owner":{"firstName":"Per","lastName":"Persson"}}'
+        Vs.V2   || '{"company":"toyota","color":"red","owner":{"firstName":"Per","lastName":"Persson"}}'
+        Vs.V1   || '{"company":"toyota","owner":{"firstName":"Per","lastName":"Persson","ssn":"1234567890"}}'
+    }
+
+    def 'removed attributes are converted on the tree'() {
+        given:
+        versionStrategy.setVersion(Vs.V1)
+
+        expect:
+        mapper.writeValueAsString(car.owner) == '{"firstName":"Per","lastName":"Persson","ssn":"1234567890"}'
+    }
+
+    def 'strategies that depend on the model data convert a tree'() {
+        given:
+        def dependentStrategy = new FixedVersionStrategy<Vs>(version: Vs.V2)
+        def dependentMapper = new ObjectMapper().registerModule(new VersioningModule(versionsDescription, dependentStrategy).withVersionSpecificSerializers())
+
+        when:
+        def json = dependentMapper.writeValueAsString(car)
+
+        then:
+        json == '{"color":"red","owner":{"firstName":"Per","lastName":"Persson"},"company":"toyota"}'
+        CarConverter.treeConversions == 1
+    }
+
+    def 'the version field is written first'() {
+        given:
+        def fieldStrategy = new FieldVersionResolutionStrategy<>("_v", versionsDescription, Vs.V2)
+        def fieldMapper = new ObjectMapper().registerModule(new VersioningModule(versionsDescription, fieldStrategy).withVersionSpecificSerializers())
+
+        when:
+        def json = fieldMapper.writeValueAsString(car)
+
+        then:
+        json == '{"_v":"V2","company":"toyota","color":"red","owner":{"_v":"V2","firstName":"Per","lastName":"Persson"}}'
+        CarConverter.treeConversions == 0
+        fieldMapper.readValue(json, Car).make == 'toyota'
+    }
+}
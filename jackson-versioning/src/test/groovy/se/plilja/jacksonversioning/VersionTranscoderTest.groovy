@@ -0,0 +1,82 @@
+/**
+ * The MIT License
+ * Copyright © 2020 Patrik Lilja
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package se.plilja.jacksonversioning
+
+import com.fasterxml.jackson.core.type.TypeReference
+import com.fasterxml.jackson.databind.ObjectMapper
+import se.plilja.jacksonversioning.NestedConversionTest.Car
+import se.plilja.jacksonversioning.NestedConversionTest.Garage
+import spock.lang.Specification
+
+class VersionTranscoderTest extends Specification {
+
+    def transcoder = new VersionTranscoder<Vs>(new ObjectMapper())
+
+    static final String CURRENT = '{"name":"Downtown","cars":[{"make":"toyota","owner":{"firstName":"Per"}},{"make":"volvo","owner":null}]}'
+    static final String V1 = '{"cars":[{"owner":{"name":"Per"},"company":"toyota"},{"owner":null,"company":"volvo"}],"title":"Downtown"}'
+
+    def 'stored json is converted down including nested objects'() {
+        when:
+        def result = new String(transcoder.transcode(CURRENT.bytes, Garage, Vs.V3, Vs.V1), 'UTF-8')
+
+        then:
+        result == V1
+    }
+
+    def 'old json is converted up to the current version'() {
+        when:
+        def out = new ByteArrayOutputStream()
+        transcoder.transcode(new ByteArrayInputStream(V1.bytes), Garage, Vs.V1, Vs.V3, out)
+
+        then:
+        new ObjectMapper().readTree(out.toByteArray()) == new ObjectMapper().readTree(CURRENT)
+    }
+
+    def 'arrays at the root are converted element by element'() {
+        given:
+        def cars = '[{"make":"toyota","owner":{"firstName":"Per"}},null,{"make":"volvo"}]'
+        def type = new TypeReference<List<Car>>() {}.type
+
+        when:
+        def result = new String(transcoder.transcode(cars.bytes, type, Vs.V3, Vs.V2), 'UTF-8')
+
+        then:
+        result == '[{"owner":{"firstName":"Per"},"company":"toyota"},null,{"company":"volvo"}]'
+    }
+
+    def 'json is unchanged when versions are equal'() {
+        expect:
+        new String(transcoder.transcode(CURRENT.bytes, Garage, Vs.V3, Vs.V3), 'UTF-8') == CURRENT
+    }
+
+    def 'trees are converted in place'() {
+        given:
+        def tree = new ObjectMapper().readTree('{"make":"toyota","owner":{"firstName":"Per"}}')
+
+        when:
+        transcoder.transcode(tree, Car, Vs.V3, Vs.V1)
+
+        then:
+        tree.toString() == '{"owner":{"name":"Per"},"company":"toyota"}'
+    }
+}
@@ -0,0 +1,117 @@
+/**
+ * The MIT License
+ * Copyright © 2020 Patrik Lilja
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package se.plilja.jacksonversioning
+
+import com.fasterxml.jackson.core.JsonParseException
+import com.fasterxml.jackson.databind.ObjectMapper
+import se.plilja.jacksonversioning.NestedConversionTest.Car
+import spock.lang.Specification
+
+import java.nio.charset.StandardCharsets
+
+class VersionedAsyncDecoderTest extends Specification {
+
+    def versionStrategy = new FixedVersionStrategy<Vs>(version: Vs.V1)
+    def mapper = new ObjectMapper().registerModule(new VersioningModule(new EnumVersionsDescription<>(Vs.class), versionStrategy))
+
+    def decodeInChunks(String json, int chunkSize) {
+        def decoder = new VersionedAsyncDecoder<>(mapper, Car)
+        def bytes = json.getBytes(StandardCharsets.UTF_8)
+        def result = []
+        for (int offset = 0; offset < bytes.length; offset += chunkSize) {
+            result.addAll(decoder.feed(bytes, offset, Math.min(chunkSize, bytes.length - offset)))
+        }
+        result.addAll(decoder.endOfInput())
+        decoder.close()
+        return result
+    }
+
+    def 'values are converted as they complete'() {
+        when:
+        def cars = decodeInChunks(json, chunkSize)
+
+        then:
+        cars*.make == ['toyota', 'volvo']
+        cars*.owner*.firstName == ['Per', 'Sten']
+
+        where:
+        json                                                                                                           | chunkSize
+        '{"company":"toyota","owner":{"name":"Per"}}\n{"company":"volvo","owner":{"name":"Sten"}}\n'                   | 1
+        '{"company":"toyota","owner":{"name":"Per"}}\n{"company":"volvo","owner":{"name":"Sten"}}\n'                   | 7
+        '[{"company":"toyota","owner":{"name":"Per"}},{"company":"volvo","owner":{"name":"Sten"}}]'                    | 5
+        '[{"company":"toyota","owner":{"name":"Per"}},{"company":"volvo","owner":{"name":"Sten"}}]'                    | 1000
+    }
+
+    def 'completed values are returned by the chunk that completes them'() {
+        given:
+        def decoder = new VersionedAsyncDecoder<>(mapper, Car)
+
+        expect:
+        decoder.feed('[{"company":"toyota"},{"comp'.getBytes(StandardCharsets.UTF_8))*.make == ['toyota']
+        decoder.feed('any":"volvo"}'.getBytes(StandardCharsets.UTF_8))*.make == ['volvo']
+        decoder.feed(']'.getBytes(StandardCharsets.UTF_8)) == []
+        decoder.endOfInput() == []
+    }
+
+    def 'input ending inside a value is reported'() {
+        when:
+        decodeInChunks('[{"company":"toyota"},{"company":', 4)
+
+        then:
+        def e = thrown(VersionedAsyncDecoder.DecodingException)
+        e.cause instanceof JsonParseException
+    }
+
+    def 'values are buffered within the tree limits'() {
+        given:
+        def limitedMapper = new ObjectMapper().registerModule(new VersioningModule(new EnumVersionsDescription<>(Vs.class), versionStrategy)
+                .withTreeLimits(100, 10, 100))
+        def decoder = new VersionedAsyncDecoder<>(limitedMapper, Car)
+
+        when:
+        decoder.feed(('{"company":"toyota"}\n{"company":"' + 'v' * 200 + '",').getBytes(StandardCharsets.UTF_8))
+
+        then:
+        def e = thrown(VersionedAsyncDecoder.DecodingException)
+        e.message.contains('maximum size of 100 bytes')
+        e.decodedValues*.make == ['toyota']
+    }
+
+    def 'values decoded before a failing value are kept by the failure'() {
+        given:
+        def decoder = new VersionedAsyncDecoder<>(mapper, Car)
+
+        when:
+        decoder.feed('{"company":"toyota"}\n{"company":["volvo"]}\n{"company":"saab"}\n'.getBytes(StandardCharsets.UTF_8))
+
+        then:
+        def e = thrown(VersionedAsyncDecoder.DecodingException)
+        e.decodedValues*.make == ['toyota']
+
+        when:
+        decoder.feed('{"company":"saab"}'.getBytes(StandardCharsets.UTF_8))
+
+        then:
+        thrown(IllegalStateException)
+    }
+}